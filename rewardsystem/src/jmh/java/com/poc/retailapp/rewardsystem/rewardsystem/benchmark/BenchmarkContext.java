@@ -0,0 +1,70 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+
+/** Starts the application against its in-memory H2 store for the database benchmarks */
+final class BenchmarkContext {
+
+  private BenchmarkContext() {}
+
+  /**
+   * Start the application without the web server. The reward cache is sized to zero so every
+   * rewards query reaches the database.
+   * @return
+   */
+  static ConfigurableApplicationContext start() {
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    return new SpringApplicationBuilder(RewardsystemApplication.class)
+        .web(WebApplicationType.NONE)
+        .run(
+            "--reward.cache.maximum-size=0",
+            "--spring.h2.console.enabled=false",
+            "--logging.level.root=WARN");
+  }
+
+  /**
+   * @param context
+   * @return the id of a new customer
+   */
+  static UUID newCustomer(ConfigurableApplicationContext context) {
+    Customer customer = new Customer();
+    customer.setName("Benchmark");
+    customer.setEmail("benchmark@example.com");
+    customer.setPhoneNumber("5550000000");
+    return context.getBean(CustomerRepository.class).save(customer).getId();
+  }
+
+  /**
+   * Transactions of up to $250 spread over the last {@code days} days
+   * @param count
+   * @param days
+   * @param seed
+   * @return
+   */
+  static List<BulkSubTransaction> transactions(int count, int days, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    LocalDate today = LocalDate.now();
+    List<BulkSubTransaction> transactions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      transactions.add(
+          new BulkSubTransaction(
+              BigDecimal.valueOf(random.nextLong(1, 25_000), 2),
+              today.minusDays(random.nextInt(days))));
+    }
+    return transactions;
+  }
+}
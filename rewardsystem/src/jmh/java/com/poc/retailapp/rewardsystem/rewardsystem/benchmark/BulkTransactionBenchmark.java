@@ -0,0 +1,71 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.benchmark;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+
+/**
+ * Writes one bulk request of the given size against the in-memory H2 store. The tables are emptied
+ * before every iteration so the store does not grow across the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkTransactionBenchmark {
+
+  @Param({"10", "100", "1000"})
+  private int batchSize;
+
+  private ConfigurableApplicationContext context;
+  private RewardService rewardService;
+  private UUID customerId;
+  private List<BulkSubTransaction> batch;
+
+  @Setup
+  public void setUp() {
+    context = BenchmarkContext.start();
+    rewardService = context.getBean(RewardService.class);
+    customerId = BenchmarkContext.newCustomer(context);
+    batch = BenchmarkContext.transactions(batchSize, 90, 11);
+  }
+
+  @Setup(Level.Iteration)
+  public void emptyStore() {
+    context.getBean(TransactionRepository.class).deleteAllInBatch();
+    context.getBean(RewardLedgerRepository.class).deleteAllInBatch();
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public BulkTransactionResponse handleBulkTransactions() {
+    return rewardService.handleBulkTransactions(customerId, batch);
+  }
+}
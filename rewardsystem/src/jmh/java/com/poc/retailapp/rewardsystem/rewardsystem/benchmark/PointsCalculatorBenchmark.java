@@ -0,0 +1,89 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TieredPointsCalculator;
+
+/**
+ * Scores purchase amounts the way {@code RewardService.calculatePoints} does, one amount at a time
+ * and through the batch method, for amounts drawn from different tiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointsCalculatorBenchmark {
+
+  private static final int AMOUNTS = 1024;
+
+  /** Ranges of purchase amounts in cents */
+  public enum Distribution {
+    BELOW_FIRST_TIER(1, 5_000),
+    FIRST_TIER(5_000, 10_000),
+    SECOND_TIER(10_000, 100_000),
+    MIXED(1, 50_000);
+
+    private final long minCents;
+    private final long maxCents;
+
+    Distribution(long minCents, long maxCents) {
+      this.minCents = minCents;
+      this.maxCents = maxCents;
+    }
+  }
+
+  @Param private Distribution distribution;
+
+  private final PointsCalculator pointsCalculator = new TieredPointsCalculator("50:1,100:2");
+
+  private BigDecimal[] amounts;
+  private long[] amountsCents;
+  private int[] points;
+
+  @Setup
+  public void setUp() {
+    SplittableRandom random = new SplittableRandom(42);
+    amounts = new BigDecimal[AMOUNTS];
+    amountsCents = new long[AMOUNTS];
+    points = new int[AMOUNTS];
+    for (int i = 0; i < AMOUNTS; i++) {
+      amountsCents[i] = random.nextLong(distribution.minCents, distribution.maxCents);
+      amounts[i] = BigDecimal.valueOf(amountsCents[i], 2);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(AMOUNTS)
+  public int calculatePoints() {
+    int total = 0;
+    for (BigDecimal amount : amounts) {
+      total += pointsCalculator.calculate(PointsCalculator.toCents(amount));
+    }
+    return total;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(AMOUNTS)
+  public int[] calculatePointsBatch() {
+    pointsCalculator.calculate(amountsCents, points, AMOUNTS);
+    return points;
+  }
+}
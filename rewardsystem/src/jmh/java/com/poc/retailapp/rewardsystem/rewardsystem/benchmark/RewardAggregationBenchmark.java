@@ -0,0 +1,73 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.benchmark;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+
+/**
+ * Builds the three month rewards report of one customer holding the given number of transactions,
+ * with and without the per transaction details. The reward cache is disabled so every call runs
+ * the queries and the aggregation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RewardAggregationBenchmark {
+
+  private static final int SEED_BATCH = 10_000;
+
+  @Param({"10", "1000", "100000"})
+  private int transactions;
+
+  @Param({"true", "false"})
+  private boolean details;
+
+  private ConfigurableApplicationContext context;
+  private RewardService rewardService;
+  private UUID customerId;
+
+  @Setup
+  public void setUp() {
+    context = BenchmarkContext.start();
+    rewardService = context.getBean(RewardService.class);
+    customerId = BenchmarkContext.newCustomer(context);
+    // spread over 80 days so the window covers full ledger months and a partial first month
+    List<BulkSubTransaction> seed = BenchmarkContext.transactions(transactions, 80, 7);
+    for (int from = 0; from < seed.size(); from += SEED_BATCH) {
+      rewardService.handleBulkTransactions(
+          customerId, seed.subList(from, Math.min(seed.size(), from + SEED_BATCH)));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public CustomerRewardResponse getCustomerRewards() throws RewardServiceException {
+    return rewardService.getCustomerRewards(customerId, 3, details);
+  }
+}
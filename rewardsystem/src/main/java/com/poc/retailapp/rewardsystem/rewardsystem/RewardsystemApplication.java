@@ -1,7 +1,10 @@
 package com.poc.retailapp.rewardsystem.rewardsystem;
 
+import java.time.Clock;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class RewardsystemApplication {
@@ -10,4 +13,10 @@ public class RewardsystemApplication {
 		SpringApplication.run(RewardsystemApplication.class, args);
 	}
 
+	/** The clock reporting windows and default transaction dates are taken from */
+	@Bean
+	public Clock clock() {
+		return Clock.systemDefaultZone();
+	}
+
 }
@@ -1,12 +1,18 @@
 package com.poc.retailapp.rewardsystem.rewardsystem.advice;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Transaction;
 import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.TooManyRequestsException;
 
 @RestControllerAdvice
 @Slf4j
@@ -15,10 +21,42 @@ public class RestControllerExceptionHandler {
 
     @ExceptionHandler(value = RewardServiceException.class)
     public ResponseEntity<?> handleRewardServiceException(
-            RuntimeException e) {
+            RewardServiceException e) {
       
         return new ResponseEntity<>(e.getLocalizedMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(value = TooManyRequestsException.class)
+    public ResponseEntity<?> handleTooManyRequestsException(TooManyRequestsException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getLocalizedMessage());
+    }
+
+    /**
+     * A concurrent request wrote the same idempotency key first and the service could not tell,
+     * any other constraint violation is a bug and answered as such
+     */
+    @ExceptionHandler(value = DataIntegrityViolationException.class)
+    public ResponseEntity<?> handleDataIntegrityViolationException(
+            DataIntegrityViolationException e) {
+        String cause = String.valueOf(e.getMostSpecificCause().getMessage());
+        if (cause.toLowerCase().contains(Transaction.IDEMPOTENCY_KEY_CONSTRAINT)) {
+            log.warn("Write rejected by the idempotency key constraint: {}", cause);
+            return new ResponseEntity<>("Transaction conflicts with one written concurrently", HttpStatus.CONFLICT);
+        }
+        log.error("Write rejected by a database constraint", e);
+        return new ResponseEntity<>("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    /** No database connection could be had within the pool's connection timeout */
+    @ExceptionHandler(value = {CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<?> handleDatabaseUnavailable(RuntimeException e) {
+        log.warn("Database unavailable: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Service busy, retry later");
+    }
+
   
 }
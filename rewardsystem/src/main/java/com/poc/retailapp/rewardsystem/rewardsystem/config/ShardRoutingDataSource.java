@@ -0,0 +1,52 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.config;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Hands out connections from the pool of the shard bound to the calling thread by
+ * {@link ShardRouter}, or of shard 0 when none is bound
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+  private final List<HikariDataSource> shards;
+
+  /**
+   * @param shards one pool per shard, in shard order
+   */
+  public ShardRoutingDataSource(List<HikariDataSource> shards) {
+    this.shards = List.copyOf(shards);
+    Map<Object, Object> targets = new HashMap<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      targets.put(shard, shards.get(shard));
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(shards.get(0));
+    // a shard that does not exist is a bug, not a reason to write to shard 0
+    setLenientFallback(false);
+  }
+
+  /**
+   * @return the pool of every shard, in shard order
+   */
+  public List<HikariDataSource> shards() {
+    return shards;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return ShardRouter.currentShard();
+  }
+
+  @Override
+  public void close() {
+    shards.forEach(HikariDataSource::close);
+  }
+}
@@ -0,0 +1,90 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Replaces the single datasource with one pool per database of {@code reward.sharding.urls}.
+ * Every pool takes the driver, credentials and {@code spring.datasource.hikari} settings of the
+ * single datasource, its pool name suffixed with the shard, and every shard is migrated by
+ * Flyway at startup.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "reward.sharding.enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+  @Bean
+  public ShardRoutingDataSource dataSource(
+      DataSourceProperties properties,
+      Environment environment,
+      @Value("${reward.sharding.urls}") String[] urls,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    if (environment.getProperty("reward.event-log.enabled", Boolean.class, false)) {
+      // the projector keeps one checkpoint and writes the ledger of every customer in one place
+      throw new IllegalStateException("reward.event-log.enabled cannot be used with sharding");
+    }
+    List<HikariDataSource> shards = new ArrayList<>(urls.length);
+    for (int shard = 0; shard < urls.length; shard++) {
+      HikariDataSource dataSource =
+          properties
+              .initializeDataSourceBuilder()
+              .type(HikariDataSource.class)
+              .url(urls[shard].trim())
+              .build();
+      Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+      dataSource.setPoolName(
+          (dataSource.getPoolName() == null ? "reward-pool" : dataSource.getPoolName())
+              + "-"
+              + shard);
+      meterRegistry.ifAvailable(
+          registry ->
+              dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+      shards.add(dataSource);
+    }
+    return new ShardRoutingDataSource(shards);
+  }
+
+  /**
+   * Runs the migrations Spring Boot configured on every shard instead of on shard 0 only, with
+   * the {@code shard} and {@code shards} placeholders set so the sample data lands on its shard
+   * @param dataSource
+   * @return
+   */
+  @Bean
+  public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource dataSource) {
+    return flyway -> {
+      List<HikariDataSource> shards = dataSource.shards();
+      for (int shard = 0; shard < shards.size(); shard++) {
+        Map<String, String> placeholders =
+            new HashMap<>(flyway.getConfiguration().getPlaceholders());
+        placeholders.put("shard", String.valueOf(shard));
+        placeholders.put("shards", String.valueOf(shards.size()));
+        Flyway.configure()
+            .configuration(flyway.getConfiguration())
+            .dataSource(shards.get(shard))
+            .placeholders(placeholders)
+            .load()
+            .migrate();
+      }
+    };
+  }
+}
@@ -1,56 +1,213 @@
 package com.poc.retailapp.rewardsystem.rewardsystem.controller;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardsBatchRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardsBatchResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionStreamResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.BulkJobService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.IdempotencyIndex;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsAwardedBroadcaster;
 import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionWriteBuffer;
+
+import io.micrometer.core.annotation.Timed;
 
 @RestController
 @RequestMapping("/api")
 public class Controller {
+  private static final String NDJSON = "application/x-ndjson";
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private static final int MAX_TOP_CUSTOMERS = 100;
+
+  private static final int MAX_BATCH_CUSTOMERS = 1000;
+
   @Autowired private RewardService rewardService;
 
+  @Autowired private BulkJobService bulkJobService;
+
+  @Autowired private Clock clock;
+
+  @Autowired(required = false)
+  private TransactionWriteBuffer transactionWriteBuffer;
 
+  @Autowired(required = false)
+  private PointsAwardedBroadcaster pointsAwardedBroadcaster;
 
   /**
-   * Get rewards for a customer
+   * Get rewards for a customer. Passing a page size or a cursor lists the transactions one page
+   * at a time, the response then carries the cursor of the next page.
    * @param customerId
    * @param months
+   * @param details whether to list every transaction, the totals alone are much cheaper
+   * @param pageSize transactions per page
+   * @param cursor {@code nextCursor} of the previous page
    * @return
+   * @throws RewardServiceException
    */
   @GetMapping("reward/customer/{customerId}")
+  @Timed(value = "reward.api.customer-rewards", histogram = true)
   public ResponseEntity<CustomerRewardResponse> getCustomerRewards(
       @PathVariable UUID customerId,
-      @RequestParam(value = "months", defaultValue = "3") int months) {
-    if (months < 1 || months > 12) {
-      try {
-        throw new RewardServiceException("Invalid months. Months must be between 1 and 12.");
-      } catch (RewardServiceException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+      @RequestParam(value = "months", defaultValue = "3") int months,
+      @RequestParam(value = "details", defaultValue = "true") boolean details,
+      @RequestParam(value = "pageSize", required = false) Integer pageSize,
+      @RequestParam(value = "cursor", required = false) String cursor)
+      throws RewardServiceException {
+    validateMonths(months);
+    if (pageSize != null || cursor != null) {
+      int size = pageSize == null ? DEFAULT_PAGE_SIZE : pageSize;
+      if (size < 1 || size > MAX_PAGE_SIZE) {
+        throw new RewardServiceException(
+            "Invalid pageSize. Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
       }
+      return ResponseEntity.ok(
+          rewardService.getCustomerRewardsPage(customerId, months, cursor, size));
     }
-    CustomerRewardResponse response = rewardService.getCustomerRewards(customerId, months);
+    CustomerRewardResponse response = rewardService.getCustomerRewards(customerId, months, details);
     return ResponseEntity.ok(response);
   }
 
-  
+  /**
+   * Get rewards for a customer with every transaction, written while the transactions are read
+   * rather than built in memory first. Suited to customers with very many transactions.
+   * @param customerId
+   * @param months
+   * @return
+   * @throws RewardServiceException
+   */
+  @GetMapping("reward/customer/{customerId}/stream")
+  @Timed(value = "reward.api.customer-rewards-stream", histogram = true)
+  public ResponseEntity<StreamingResponseBody> streamCustomerRewards(
+      @PathVariable UUID customerId,
+      @RequestParam(value = "months", defaultValue = "3") int months)
+      throws RewardServiceException {
+    validateMonths(months);
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(rewardService.streamCustomerRewards(customerId, months));
+  }
+
+  /**
+   * Get the customers with the most points over the last calendar months, the current month
+   * included
+   * @param n number of customers, at most 100
+   * @param months
+   * @return
+   * @throws RewardServiceException
+   */
+  @GetMapping("reward/top")
+  @Timed(value = "reward.api.top-customers", histogram = true)
+  public ResponseEntity<LeaderboardResponse> getTopCustomers(
+      @RequestParam(value = "n", defaultValue = "10") int n,
+      @RequestParam(value = "months", defaultValue = "3") int months)
+      throws RewardServiceException {
+    validateMonths(months);
+    if (n < 1 || n > MAX_TOP_CUSTOMERS) {
+      throw new RewardServiceException(
+          "Invalid n. Number of customers must be between 1 and " + MAX_TOP_CUSTOMERS + ".");
+    }
+    return ResponseEntity.ok(rewardService.getTopCustomers(n, months));
+  }
+
+  /**
+   * Get the points per calendar month of several customers at once, the current month included
+   * @param request at most 1000 customer ids and the number of months
+   * @return
+   * @throws RewardServiceException
+   */
+  @PostMapping("reward/customers")
+  @Timed(value = "reward.api.customers-rewards", histogram = true)
+  public ResponseEntity<CustomerRewardsBatchResponse> getCustomersRewards(
+      @RequestBody CustomerRewardsBatchRequest request) throws RewardServiceException {
+    if (request == null
+        || request.getCustomerIds() == null
+        || request.getCustomerIds().isEmpty()
+        || request.getCustomerIds().contains(null)) {
+      throw new RewardServiceException("Invalid request. Customer ids are required.");
+    }
+    if (request.getCustomerIds().size() > MAX_BATCH_CUSTOMERS) {
+      throw new RewardServiceException(
+          "Invalid request. At most " + MAX_BATCH_CUSTOMERS + " customer ids are accepted.");
+    }
+    validateMonths(request.getMonths());
+    return ResponseEntity.ok(
+        rewardService.getCustomersRewards(request.getCustomerIds(), request.getMonths()));
+  }
+
+  /**
+   * Follow the points awarded by every committed write as Server-Sent Events named
+   * {@code PointsAwarded}, instead of polling each customer's rewards. Only events published
+   * while connected are sent.
+   * @param customerId only this customer's points, every customer's when absent
+   * @return
+   * @throws RewardServiceException when the points feed is not enabled
+   */
+  @GetMapping(value = "reward/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamPointsAwarded(@RequestParam(required = false) UUID customerId)
+      throws RewardServiceException {
+    if (pointsAwardedBroadcaster == null) {
+      throw new RewardServiceException("Points feed is not enabled");
+    }
+    return pointsAwardedBroadcaster.subscribe(customerId);
+  }
+
+  private static void validateMonths(int months) throws RewardServiceException {
+    if (months < 1 || months > 12) {
+      throw new RewardServiceException("Invalid months. Months must be between 1 and 12.");
+    }
+  }
+
+  /** Waits for a buffered transaction's group commit, rethrowing what failed it */
+  private static boolean awaitWrite(CompletableFuture<Boolean> written) {
+    try {
+      return written.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
 
   /**
-   * Process a single transaction
+   * Process a single transaction. With the write-behind buffer enabled the transaction is queued
+   * for a group commit and answered 202 once queued, or like without it once its group committed,
+   * depending on {@code reward.write-behind.acknowledge}; 429 when the buffer is full.
    * @param transactionRequest
    * @return
-   * @throws RewardServiceException 
+   * @throws RewardServiceException
    */
   @PostMapping("transaction/createTransaction")
+  @Timed(value = "reward.api.transaction", histogram = true)
   public ResponseEntity<String> handleTransaction(
       @RequestBody TransactionRequest transactionRequest) throws RewardServiceException {
     if (transactionRequest == null
@@ -58,9 +215,37 @@ public class Controller {
         || transactionRequest.getCustomerId() == null) {
       throw new RewardServiceException("Invalid transaction Request");
     }
+    String idempotencyKey = transactionRequest.getIdempotencyKey();
+    if (idempotencyKey != null
+        && (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyIndex.MAX_KEY_LENGTH)) {
+      throw new RewardServiceException(
+          "Invalid idempotency key. Must be 1 to " + IdempotencyIndex.MAX_KEY_LENGTH + " characters");
+    }
 
-    rewardService.handleTransaction(
-        transactionRequest.getCustomerId(), transactionRequest.getAmount(), LocalDateTime.now());
+    if (transactionWriteBuffer != null) {
+      CompletableFuture<Boolean> written =
+          transactionWriteBuffer.submit(
+              transactionRequest.getCustomerId(),
+              transactionRequest.getAmount(),
+              LocalDateTime.now(clock),
+              idempotencyKey);
+      if (!transactionWriteBuffer.acknowledgesOnCommit()) {
+        return ResponseEntity.accepted().body("Transaction accepted");
+      }
+      if (!awaitWrite(written)) {
+        return ResponseEntity.ok("Transaction already processed");
+      }
+      return ResponseEntity.ok("Transaction processed and rewards awarded");
+    }
+
+    // a retried request gets a success answer, its transaction is not written twice
+    if (!rewardService.handleTransaction(
+        transactionRequest.getCustomerId(),
+        transactionRequest.getAmount(),
+        LocalDateTime.now(clock),
+        idempotencyKey)) {
+      return ResponseEntity.ok("Transaction already processed");
+    }
     return ResponseEntity.ok("Transaction processed and rewards awarded");
   }
 
@@ -68,19 +253,72 @@ public class Controller {
    * Process bulk transactions for a customer
    * @param bulkTransactionRequest
    * @return
-   * @throws RewardServiceException 
+   * @throws RewardServiceException
    */
   @PostMapping("transaction/createBulkTransaction")
-  public ResponseEntity<BulkTransactionRequest> handleBulkTransaction(
+  @Timed(value = "reward.api.bulk-transaction", histogram = true)
+  public ResponseEntity<BulkTransactionResponse> handleBulkTransaction(
       @RequestBody BulkTransactionRequest bulkTransactionRequest) throws RewardServiceException {
-    if (bulkTransactionRequest.getCustomerId() == null
-        || bulkTransactionRequest.getTransactions().isEmpty()) {
-      throw new RewardServiceException("Invalid transaction Request");
-    }
+    validate(bulkTransactionRequest);
     return ResponseEntity.ok(
         rewardService.handleBulkTransactions(
             bulkTransactionRequest.getCustomerId(), bulkTransactionRequest.getTransactions()));
   }
 
+  /**
+   * Accept bulk transactions for a customer and process them in the background. Responds right
+   * away with the job, whose progress is polled at the returned location.
+   * @param bulkTransactionRequest
+   * @return
+   * @throws RewardServiceException
+   */
+  @PostMapping("transaction/createBulkTransactionAsync")
+  @Timed(value = "reward.api.bulk-transaction-async", histogram = true)
+  public ResponseEntity<BulkJobResponse> handleBulkTransactionAsync(
+      @RequestBody BulkTransactionRequest bulkTransactionRequest) throws RewardServiceException {
+    validate(bulkTransactionRequest);
+    BulkJobResponse job =
+        bulkJobService.submit(
+            bulkTransactionRequest.getCustomerId(), bulkTransactionRequest.getTransactions());
+    return ResponseEntity.accepted()
+        .location(URI.create("/api/transaction/bulkJobs/" + job.getJobId()))
+        .body(job);
+  }
+
+  /**
+   * Get the progress of a background bulk job, and its result once completed
+   * @param jobId
+   * @return
+   * @throws RewardServiceException
+   */
+  @GetMapping("transaction/bulkJobs/{jobId}")
+  public ResponseEntity<BulkJobResponse> getBulkJob(@PathVariable UUID jobId)
+      throws RewardServiceException {
+    return ResponseEntity.ok(bulkJobService.getJob(jobId));
+  }
 
+  private static void validate(BulkTransactionRequest bulkTransactionRequest)
+      throws RewardServiceException {
+    if (bulkTransactionRequest.getCustomerId() == null
+        || bulkTransactionRequest.getTransactions() == null
+        || bulkTransactionRequest.getTransactions().isEmpty()) {
+      throw new RewardServiceException("Invalid transaction Request");
+    }
+  }
+
+  /**
+   * Process a newline-delimited JSON upload of transactions for any number of customers, one
+   * transaction per line. The body is read line by line and never held in memory as a whole.
+   * @param requestBody
+   * @return
+   * @throws IOException
+   */
+  @PostMapping(value = "transaction/streamTransactions", consumes = NDJSON)
+  @Timed(value = "reward.api.transaction-stream", histogram = true)
+  public ResponseEntity<TransactionStreamResponse> handleTransactionStream(
+      InputStream requestBody) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(requestBody, StandardCharsets.UTF_8));
+    return ResponseEntity.ok(rewardService.handleTransactionStream(reader));
+  }
 }
@@ -0,0 +1,44 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.RescoreStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RescoreService;
+
+/**
+ * {@code /actuator/rescore}: GET shows the progress of the rescore job, POST starts it, optionally
+ * with new {@code tiers}, and DELETE stops it
+ */
+@Component
+@Endpoint(id = "rescore")
+public class RescoreEndpoint {
+
+  @Autowired private RescoreService rescoreService;
+
+  @ReadOperation
+  public RescoreStatus status() {
+    return rescoreService.status();
+  }
+
+  @WriteOperation
+  public RescoreStatus start(@Nullable String tiers) {
+    try {
+      return rescoreService.start(tiers);
+    } catch (RewardServiceException e) {
+      throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+    }
+  }
+
+  @DeleteOperation
+  public RescoreStatus stop() {
+    return rescoreService.stop();
+  }
+}
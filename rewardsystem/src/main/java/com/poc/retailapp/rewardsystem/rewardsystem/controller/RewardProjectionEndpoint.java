@@ -0,0 +1,48 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.ProjectionStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardProjector;
+
+/**
+ * {@code /actuator/rewardprojection}: GET shows how far the reward ledger is behind the event
+ * log, POST rebuilds the ledger from the whole log with the current point tiers, optionally
+ * applying new {@code tiers} first
+ */
+@Component
+@Endpoint(id = "rewardprojection")
+@ConditionalOnProperty(name = "reward.event-log.enabled", havingValue = "true")
+public class RewardProjectionEndpoint {
+
+  @Autowired private RewardProjector rewardProjector;
+
+  @Autowired private PointsCalculator pointsCalculator;
+
+  @ReadOperation
+  public ProjectionStatus status() {
+    return rewardProjector.status();
+  }
+
+  @WriteOperation
+  public ProjectionStatus rebuild(@Nullable String tiers) {
+    if (tiers != null) {
+      try {
+        pointsCalculator.setTiers(tiers);
+      } catch (IllegalArgumentException e) {
+        String message = "Invalid tiers: " + e.getMessage();
+        throw new InvalidEndpointRequestException(message, message);
+      }
+    }
+    rewardProjector.rebuild();
+    return rewardProjector.status();
+  }
+}
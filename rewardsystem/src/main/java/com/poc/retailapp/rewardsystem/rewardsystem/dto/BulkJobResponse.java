@@ -0,0 +1,24 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+@Data
+public class BulkJobResponse {
+    private UUID jobId;
+    private UUID customerId;
+    private BulkJobStatus status;
+    private int totalCount;
+    private int processedCount;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+    private String message;
+
+    /** Outcome of every row, set once the job has completed */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BulkTransactionResponse result;
+}
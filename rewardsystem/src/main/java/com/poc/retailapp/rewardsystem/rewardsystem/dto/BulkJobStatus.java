@@ -0,0 +1,8 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+public enum BulkJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
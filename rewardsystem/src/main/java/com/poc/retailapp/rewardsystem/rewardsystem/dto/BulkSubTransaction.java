@@ -5,10 +5,20 @@ import java.time.LocalDate;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class BulkSubTransaction {
     private BigDecimal amount;
     private LocalDate transactionDate;
+
+    /** Optional client key, a row repeating a key already written for the customer is skipped */
+    private String idempotencyKey;
+
+    public BulkSubTransaction(BigDecimal amount, LocalDate transactionDate) {
+        this.amount = amount;
+        this.transactionDate = transactionDate;
+    }
 }
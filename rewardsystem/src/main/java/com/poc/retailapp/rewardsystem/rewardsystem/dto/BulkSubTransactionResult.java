@@ -0,0 +1,39 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.UUID;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Outcome of one row of a bulk request, {@code index} is its position in the request */
+@Data
+@NoArgsConstructor
+public class BulkSubTransactionResult {
+    private int index;
+    private BulkTransactionStatus status;
+    private UUID transactionId;
+    private String message;
+
+    public BulkSubTransactionResult(int index) {
+        this.index = index;
+    }
+
+    public void accept(UUID transactionId) {
+        this.status = BulkTransactionStatus.ACCEPTED;
+        this.transactionId = transactionId;
+        this.message = null;
+    }
+
+    public void reject(String message) {
+        this.status = BulkTransactionStatus.REJECTED;
+        this.transactionId = null;
+        this.message = message;
+    }
+
+    /** @param transactionId the transaction written earlier with the same idempotency key */
+    public void duplicate(UUID transactionId) {
+        this.status = BulkTransactionStatus.DUPLICATE;
+        this.transactionId = transactionId;
+        this.message = "Duplicate idempotency key";
+    }
+}
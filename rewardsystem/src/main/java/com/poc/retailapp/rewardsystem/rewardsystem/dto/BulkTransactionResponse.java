@@ -0,0 +1,15 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class BulkTransactionResponse {
+    private UUID customerId;
+    private int acceptedCount;
+    private int rejectedCount;
+    private int duplicateCount;
+    private List<BulkSubTransactionResult> results;
+}
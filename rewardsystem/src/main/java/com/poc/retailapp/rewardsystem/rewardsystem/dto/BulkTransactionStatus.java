@@ -0,0 +1,7 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+public enum BulkTransactionStatus {
+    ACCEPTED,
+    REJECTED,
+    DUPLICATE
+}
@@ -0,0 +1,17 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerPointsSummary {
+    private UUID customerId;
+    private long totalPoints;
+    /** Points per calendar month, oldest first */
+    private int[] monthlyPoints;
+}
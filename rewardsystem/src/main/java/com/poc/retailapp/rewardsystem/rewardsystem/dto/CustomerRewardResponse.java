@@ -3,6 +3,8 @@ package com.poc.retailapp.rewardsystem.rewardsystem.dto;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,5 +15,16 @@ import lombok.NoArgsConstructor;
 public class CustomerRewardResponse {
     private CustomerResponse customer;
     private int totalPoints;
-    private List<RewardResponse> Rewards;
+
+    /** Points, transactions and spend of each month of the window with transactions, oldest first */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<MonthlyReward> monthly;
+
+    /** Per-transaction detail, left out when only the totals were requested */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<RewardResponse> rewards;
+
+    /** Cursor of the next page of rewards, set only when paging and more transactions follow */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 }
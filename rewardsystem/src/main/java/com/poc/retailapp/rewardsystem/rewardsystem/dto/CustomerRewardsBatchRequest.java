@@ -0,0 +1,11 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.Data;
+
+@Data
+public class CustomerRewardsBatchRequest {
+    private List<UUID> customerIds;
+    private int months = 3;
+}
@@ -0,0 +1,20 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerRewardsBatchResponse {
+    /** First day of the oldest month, {@code monthlyPoints} run from it to the current month */
+    private LocalDate firstMonth;
+    private int months;
+    private List<CustomerPointsSummary> customers;
+    private List<UUID> unknownCustomerIds;
+}
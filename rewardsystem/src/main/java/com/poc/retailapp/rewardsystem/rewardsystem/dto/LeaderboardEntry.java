@@ -0,0 +1,16 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardEntry {
+    private int rank;
+    private UUID customerId;
+    private long points;
+}
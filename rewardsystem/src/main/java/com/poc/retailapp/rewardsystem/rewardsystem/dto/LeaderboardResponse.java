@@ -0,0 +1,15 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardResponse {
+    private int months;
+    private List<LeaderboardEntry> entries;
+}
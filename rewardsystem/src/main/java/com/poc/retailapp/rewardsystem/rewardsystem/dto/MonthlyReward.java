@@ -0,0 +1,18 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MonthlyReward {
+    private YearMonth month;
+    private int points;
+    private int transactionCount;
+    private BigDecimal totalAmount;
+}
@@ -0,0 +1,25 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Points a customer earned in one month from the transactions of one write */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PointsAwarded {
+    /** Repeated when the event is delivered again, so consumers can skip it */
+    private UUID eventId;
+    private UUID customerId;
+    private YearMonth month;
+    private int points;
+    private int transactionCount;
+    private BigDecimal totalAmount;
+    private LocalDateTime awardedAt;
+}
@@ -0,0 +1,18 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProjectionStatus {
+    /** Offset the next event is appended at */
+    private long logEndOffset;
+    /** Offset of the first event not yet in the ledger */
+    private long position;
+    private long lag;
+    private int segments;
+    private boolean running;
+}
@@ -0,0 +1,10 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+public enum RescoreState {
+    IDLE,
+    RUNNING,
+    STOPPING,
+    STOPPED,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,24 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.Data;
+
+@Data
+public class RescoreStatus {
+    private RescoreState state;
+    private String tiers;
+    private int partitions;
+    /** Partitions rescored by this run */
+    private int partitionsCompleted;
+    /** Partitions an interrupted run with the same tiers had already finished */
+    private int partitionsResumed;
+    private int partitionsFailed;
+    private long transactionsScored;
+    private long monthsUpdated;
+    /** Customers whose ledger kept changing under the job and were left as they were */
+    private int conflicts;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+    private String message;
+}
@@ -0,0 +1,19 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One line of a newline-delimited transaction upload */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamedTransaction {
+    private UUID customerId;
+    private BigDecimal amount;
+    private LocalDate transactionDate;
+}
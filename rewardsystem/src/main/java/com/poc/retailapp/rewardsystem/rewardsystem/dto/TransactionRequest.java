@@ -8,4 +8,7 @@ import lombok.Data;
 public class TransactionRequest {
     private UUID customerId;
     private BigDecimal amount;
+
+    /** Optional client key, a request repeating a key already written for the customer is skipped */
+    private String idempotencyKey;
 }
@@ -0,0 +1,16 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionStreamRejection {
+    private long line;
+    private UUID customerId;
+    private String message;
+}
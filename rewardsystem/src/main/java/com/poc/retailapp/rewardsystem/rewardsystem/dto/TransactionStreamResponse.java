@@ -0,0 +1,18 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Summary of a streamed upload. Only the first rejected lines are listed so the response stays
+ * small whatever the size of the upload, the counts cover every line.
+ */
+@Data
+public class TransactionStreamResponse {
+    private long linesRead;
+    private long acceptedCount;
+    private long rejectedCount;
+    private List<TransactionStreamRejection> rejections = new ArrayList<>();
+}
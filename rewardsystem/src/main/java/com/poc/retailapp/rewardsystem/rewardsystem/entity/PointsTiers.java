@@ -0,0 +1,23 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Point tiers set at runtime, so a restart keeps scoring with them rather than going back to the
+ * configured ones.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PointsTiers {
+  @Id
+  private String name;
+
+  /** Comma separated {@code threshold:pointsPerDollar} pairs */
+  private String tiers;
+}
@@ -0,0 +1,23 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far a projection has read the transaction event log. Saved in the same database transaction
+ * as the rows the projection writes, so the two never disagree.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectionCheckpoint {
+  @Id
+  private String name;
+
+  /** Offset of the first event not yet applied */
+  private long position;
+}
@@ -0,0 +1,26 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A customer partition the rescore job has finished, saved in the same database transaction as
+ * the partition's ledger updates. Only counts for a later run with the same tiers and partitions.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RescoreCheckpoint {
+  @Id
+  private Integer partitionIndex;
+
+  private int partitions;
+  private String tiers;
+  private LocalDateTime completedAt;
+}
@@ -0,0 +1,41 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Points earned by a customer in one calendar month, kept up to date on every ingest so the
+ * rewards summary never has to re-score individual transactions.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(
+    uniqueConstraints =
+        @UniqueConstraint(
+            name = "uk_reward_ledger_customer_month",
+            columnNames = {"customer_id", "reward_month"}))
+public class RewardLedger {
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  private UUID id;
+
+  private UUID customerId;
+
+  /** First day of the month the points belong to */
+  private LocalDate rewardMonth;
+
+  private int points;
+  private int transactionCount;
+  private BigDecimal totalAmount;
+}
@@ -4,26 +4,74 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
+import org.springframework.data.domain.Persistable;
+
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 
+/**
+ * The id is assigned by the application before saving, so inserts need no id round trip and can
+ * be batched. {@link Persistable} tells Spring Data the entity is new so it persists instead of
+ * merging, which would first select the row.
+ */
 @Entity
 @Data
 @NoArgsConstructor
-public class Transaction {
-@Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+@Table(
+    indexes =
+        @Index(name = "idx_transaction_customer_date", columnList = "customer_id, transaction_date, id"),
+    uniqueConstraints =
+        @UniqueConstraint(
+            name = Transaction.IDEMPOTENCY_KEY_CONSTRAINT,
+            columnNames = {"customer_id", "idempotency_key"}))
+public class Transaction implements Persistable<UUID> {
+
+  /** Unique constraint on the customer and idempotency key */
+  public static final String IDEMPOTENCY_KEY_CONSTRAINT = "uk_transaction_customer_idempotency_key";
+
+  @Id
   private UUID id;
 
-  @ManyToOne 
+  /** Lazy, the rewards read path works on the foreign key and never needs the customer row */
+  @ManyToOne(fetch = FetchType.LAZY)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
   private Customer customer;
 
   private BigDecimal amount;
   private LocalDateTime transactionDate;
+
+  /** Client supplied key, unique per customer when present */
+  private String idempotencyKey;
+
+  @Transient
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  private boolean loaded;
+
+  @Override
+  public boolean isNew() {
+    return !loaded;
+  }
+
+  @PostLoad
+  void markLoaded() {
+    loaded = true;
+  }
 }
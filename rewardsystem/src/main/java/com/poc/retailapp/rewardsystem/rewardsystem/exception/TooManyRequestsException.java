@@ -0,0 +1,10 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.exception;
+
+/** The request was refused because the service is at capacity, it may be retried later */
+public class TooManyRequestsException extends RewardServiceException {
+
+    /** @param message */
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.util.UUID;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+
+/**
+ * Read-only copy of a customer row, safe to share between requests
+ */
+public record CustomerDetails(UUID id, String name, String email, String phoneNumber) {
+
+    public static CustomerDetails of(Customer customer) {
+        return new CustomerDetails(
+                customer.getId(), customer.getName(), customer.getEmail(), customer.getPhoneNumber());
+    }
+}
@@ -2,10 +2,26 @@ package com.poc.retailapp.rewardsystem.rewardsystem.repository;
 
 
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
 
+import jakarta.persistence.QueryHint;
+
 public interface CustomerRepository extends JpaRepository<Customer, UUID> {
 
-}
\ No newline at end of file
+    /**
+     * Streams every customer as a detached copy, for warming the customer registry. Must be
+     * consumed inside a transaction and closed.
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerDetails("
+            + "c.id, c.name, c.email, c.phoneNumber) from Customer c")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<CustomerDetails> streamAllDetails();
+}
@@ -0,0 +1,11 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A {@link TransactionSummary} that also carries the customer, for reads across customers
+ */
+public record CustomerTransactionSummary(
+        UUID id, UUID customerId, BigDecimal amount, LocalDateTime transactionDate) {}
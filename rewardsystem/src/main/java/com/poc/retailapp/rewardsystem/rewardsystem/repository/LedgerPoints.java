@@ -0,0 +1,7 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/** Points of one customer and month of the reward ledger */
+public record LedgerPoints(UUID customerId, LocalDate rewardMonth, int points) {}
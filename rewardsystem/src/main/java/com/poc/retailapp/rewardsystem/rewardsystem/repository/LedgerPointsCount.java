@@ -0,0 +1,8 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/** Points of one customer and month of the reward ledger and the transactions counted in it */
+public record LedgerPointsCount(
+    UUID customerId, LocalDate rewardMonth, int points, int transactionCount) {}
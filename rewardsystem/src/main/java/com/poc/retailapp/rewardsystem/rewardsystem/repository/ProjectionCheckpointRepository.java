@@ -0,0 +1,9 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.ProjectionCheckpoint;
+
+public interface ProjectionCheckpointRepository extends JpaRepository<ProjectionCheckpoint, String> {
+
+}
@@ -0,0 +1,18 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RescoreCheckpoint;
+
+public interface RescoreCheckpointRepository extends JpaRepository<RescoreCheckpoint, Integer> {
+
+    /**
+     * Finds the partitions finished by a run with the given tiers and number of partitions
+     * @param partitions
+     * @param tiers
+     * @return
+     */
+    List<RescoreCheckpoint> findByPartitionsAndTiers(int partitions, String tiers);
+}
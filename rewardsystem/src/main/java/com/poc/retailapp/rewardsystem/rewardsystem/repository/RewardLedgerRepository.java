@@ -0,0 +1,100 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RewardLedger;
+
+import jakarta.persistence.QueryHint;
+import jakarta.transaction.Transactional;
+
+public interface RewardLedgerRepository extends JpaRepository<RewardLedger, UUID> {
+
+    /**
+     * Finds the monthly ledger rows of a customer for the months after the given month
+     * @param customerId
+     * @param rewardMonth
+     * @return
+     */
+    List<RewardLedger> findByCustomerIdAndRewardMonthAfter(UUID customerId, LocalDate rewardMonth);
+
+    /**
+     * Checks whether the customer has a ledger row for the month
+     * @param customerId
+     * @param rewardMonth
+     * @return
+     */
+    boolean existsByCustomerIdAndRewardMonth(UUID customerId, LocalDate rewardMonth);
+
+    /**
+     * Reads how many transactions the customer's ledger row for the month counts
+     * @param customerId
+     * @param rewardMonth
+     * @return
+     */
+    @Query("select l.transactionCount from RewardLedger l"
+            + " where l.customerId = :customerId and l.rewardMonth = :rewardMonth")
+    int findTransactionCount(
+            @Param("customerId") UUID customerId, @Param("rewardMonth") LocalDate rewardMonth);
+
+    /**
+     * Streams the points and transaction counts of every customer for the given month and the
+     * months after it. Must be read inside a transaction and closed.
+     * @param rewardMonth
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.LedgerPointsCount("
+            + "l.customerId, l.rewardMonth, l.points, l.transactionCount) from RewardLedger l"
+            + " where l.rewardMonth >= :rewardMonth")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<LedgerPointsCount> streamPointsFromMonth(@Param("rewardMonth") LocalDate rewardMonth);
+
+    /**
+     * Sums the points of each of the customers per month, for the given month and the months
+     * after it, in one grouped query
+     * @param customerIds
+     * @param rewardMonth
+     * @return one row per customer and month with points, in no particular order
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.LedgerPoints("
+            + "l.customerId, l.rewardMonth, cast(sum(l.points) as Integer)) from RewardLedger l"
+            + " where l.customerId in :customerIds and l.rewardMonth >= :rewardMonth"
+            + " group by l.customerId, l.rewardMonth")
+    List<LedgerPoints> sumPointsByCustomerIdInFromMonth(
+            @Param("customerIds") Collection<UUID> customerIds,
+            @Param("rewardMonth") LocalDate rewardMonth);
+
+    /**
+     * Adds points to an existing ledger row
+     * @param customerId
+     * @param rewardMonth
+     * @param points
+     * @param transactionCount
+     * @param amount
+     * @return number of rows updated, 0 when the customer has no row for that month yet
+     */
+    @Transactional
+    @Modifying
+    @Query("update RewardLedger l set l.points = l.points + :points,"
+            + " l.transactionCount = l.transactionCount + :transactionCount,"
+            + " l.totalAmount = l.totalAmount + :amount"
+            + " where l.customerId = :customerId and l.rewardMonth = :rewardMonth")
+    int addToMonth(
+            @Param("customerId") UUID customerId,
+            @Param("rewardMonth") LocalDate rewardMonth,
+            @Param("points") int points,
+            @Param("transactionCount") int transactionCount,
+            @Param("amount") BigDecimal amount);
+}
@@ -0,0 +1,8 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.util.UUID;
+
+/**
+ * The idempotency key of a transaction, with the customer it is unique for
+ */
+public record TransactionKey(UUID transactionId, UUID customerId, String idempotencyKey) {}
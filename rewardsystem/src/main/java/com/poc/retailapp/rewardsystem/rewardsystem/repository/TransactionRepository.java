@@ -2,12 +2,22 @@ package com.poc.retailapp.rewardsystem.rewardsystem.repository;
 
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import com.poc.retailapp.rewardsystem.rewardsystem.entity.Transaction;
 
+import jakarta.persistence.QueryHint;
+
 public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
 
     /**
@@ -17,4 +27,126 @@ public interface TransactionRepository extends JpaRepository<Transaction, UUID>
      * @return
      */
     List<Transaction> findByCustomerIdAndTransactionDateAfter(UUID customerId, LocalDateTime date);
-}
\ No newline at end of file
+
+    /**
+     * Finds id, amount and date of the transactions for a customer after given date-time, served
+     * by the customer/date index
+     * @param customerId
+     * @param date
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary("
+            + "t.id, t.amount, t.transactionDate) from Transaction t"
+            + " where t.customer.id = :customerId and t.transactionDate > :date"
+            + " order by t.transactionDate")
+    List<TransactionSummary> findSummariesByCustomerIdAndTransactionDateAfter(
+            @Param("customerId") UUID customerId, @Param("date") LocalDateTime date);
+
+    /**
+     * Streams id, amount and date of the transactions for a customer after given date-time, in
+     * date order. Must be read inside a transaction and closed.
+     * @param customerId
+     * @param date
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary("
+            + "t.id, t.amount, t.transactionDate) from Transaction t"
+            + " where t.customer.id = :customerId and t.transactionDate > :date"
+            + " order by t.transactionDate, t.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<TransactionSummary> streamSummariesByCustomerIdAndTransactionDateAfter(
+            @Param("customerId") UUID customerId, @Param("date") LocalDateTime date);
+
+    /**
+     * Finds the first page of transaction summaries for a customer after given date-time, ordered
+     * by date and id
+     * @param customerId
+     * @param date
+     * @param limit
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary("
+            + "t.id, t.amount, t.transactionDate) from Transaction t"
+            + " where t.customer.id = :customerId and t.transactionDate > :date"
+            + " order by t.transactionDate, t.id")
+    List<TransactionSummary> findSummaryPage(
+            @Param("customerId") UUID customerId, @Param("date") LocalDateTime date, Limit limit);
+
+    /**
+     * Finds the page of transaction summaries for a customer that follows the given date and id,
+     * ordered by date and id
+     * @param customerId
+     * @param date
+     * @param afterDate date of the last transaction of the previous page
+     * @param afterId id of the last transaction of the previous page
+     * @param limit
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary("
+            + "t.id, t.amount, t.transactionDate) from Transaction t"
+            + " where t.customer.id = :customerId and t.transactionDate > :date"
+            + " and (t.transactionDate > :afterDate"
+            + " or (t.transactionDate = :afterDate and t.id > :afterId))"
+            + " order by t.transactionDate, t.id")
+    List<TransactionSummary> findSummaryPageAfter(
+            @Param("customerId") UUID customerId,
+            @Param("date") LocalDateTime date,
+            @Param("afterDate") LocalDateTime afterDate,
+            @Param("afterId") UUID afterId,
+            Limit limit);
+
+    /**
+     * Streams every transaction with its customer, in no particular order. Must be read inside a
+     * transaction and closed.
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerTransactionSummary("
+            + "t.id, t.customer.id, t.amount, t.transactionDate) from Transaction t")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<CustomerTransactionSummary> streamAllSummaries();
+
+    /**
+     * Streams the transactions of the customers with ids from {@code from} to {@code to}, both
+     * included, in the database's UUID order. Must be read inside a transaction and closed.
+     * @param from
+     * @param to
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerTransactionSummary("
+            + "t.id, t.customer.id, t.amount, t.transactionDate) from Transaction t"
+            + " where t.customer.id >= :from and t.customer.id <= :to")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<CustomerTransactionSummary> streamSummariesByCustomerIdBetween(
+            @Param("from") UUID from, @Param("to") UUID to);
+
+    /**
+     * Finds the transactions of a customer written with any of the given idempotency keys
+     * @param customerId
+     * @param keys
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionKey("
+            + "t.id, t.customer.id, t.idempotencyKey) from Transaction t"
+            + " where t.customer.id = :customerId and t.idempotencyKey in :keys")
+    List<TransactionKey> findKeys(
+            @Param("customerId") UUID customerId, @Param("keys") Collection<String> keys);
+
+    /**
+     * Finds which of the given transactions exist
+     * @param ids
+     * @return the ids of those that do
+     */
+    @Query("select t.id from Transaction t where t.id in :ids")
+    List<UUID> findIdsByIdIn(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Streams the idempotency keys of every transaction written with one. Must be read inside a
+     * transaction and closed.
+     * @return
+     */
+    @Query("select new com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionKey("
+            + "t.id, t.customer.id, t.idempotencyKey) from Transaction t"
+            + " where t.idempotencyKey is not null")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<TransactionKey> streamKeys();
+}
@@ -0,0 +1,11 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The columns of a transaction the rewards read path needs, selected without loading the
+ * {@code Transaction} entity or its customer
+ */
+public record TransactionSummary(UUID id, BigDecimal amount, LocalDateTime transactionDate) {}
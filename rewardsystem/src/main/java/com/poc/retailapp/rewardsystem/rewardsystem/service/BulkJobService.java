@@ -0,0 +1,197 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.TooManyRequestsException;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs bulk requests in the background so the request thread is released as soon as the job is
+ * accepted. A fixed pool of {@code reward.bulk.async.max-running-jobs} threads writes them and at
+ * most {@code reward.bulk.async.max-active-jobs} may be queued or running, so an ingest burst
+ * queues here rather than exhausting the connection pool, and is refused with 429 beyond that.
+ * Finished jobs are kept for polling until the retention passes, and swept once a minute or once
+ * per retention when that is shorter.
+ */
+@Service
+@Slf4j
+public class BulkJobService {
+
+  @Autowired private RewardService rewardService;
+
+  @Autowired private CustomerRegistry customerRegistry;
+
+  @Autowired private Clock clock;
+
+  private final Map<UUID, BulkJob> jobs = new ConcurrentHashMap<>();
+
+  private final ThreadPoolExecutor executor;
+
+  private final ScheduledExecutorService sweeper =
+      Executors.newSingleThreadScheduledExecutor(
+          Thread.ofPlatform().name("bulk-job-sweeper").daemon().factory());
+
+  private final AtomicInteger activeJobs = new AtomicInteger();
+
+  private final int maxActiveJobs;
+
+  private final Duration retention;
+
+  public BulkJobService(
+      @Value("${reward.bulk.async.max-running-jobs:4}") int maxRunningJobs,
+      @Value("${reward.bulk.async.max-active-jobs:100}") int maxActiveJobs,
+      @Value("${reward.bulk.async.retention:1h}") Duration retention) {
+    int threads = Math.max(1, maxRunningJobs);
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            // the active job limit keeps it from filling, the bound is a backstop
+            new LinkedBlockingQueue<>(Math.max(1, maxActiveJobs)),
+            Thread.ofPlatform().name("bulk-job-", 0).factory());
+    this.maxActiveJobs = maxActiveJobs;
+    this.retention = retention;
+    long sweepMillis = Math.max(1, Math.min(retention.toMillis(), Duration.ofMinutes(1).toMillis()));
+    sweeper.scheduleWithFixedDelay(
+        this::removeExpiredJobs, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Accept a bulk request and process it in the background
+   * @param customerId
+   * @param transactionRequests
+   * @return the queued job
+   * @throws RewardServiceException when the customer does not exist
+   * @throws TooManyRequestsException when too many jobs are active
+   */
+  public BulkJobResponse submit(UUID customerId, List<BulkSubTransaction> transactionRequests)
+      throws RewardServiceException {
+    if (!customerRegistry.exists(customerId)) {
+      throw new RewardServiceException("Invalid Id. Customer not found");
+    }
+    if (activeJobs.incrementAndGet() > maxActiveJobs) {
+      activeJobs.decrementAndGet();
+      throw new TooManyRequestsException("Too many bulk jobs in progress, retry later");
+    }
+
+    BulkJob job = new BulkJob(customerId, transactionRequests.size(), LocalDateTime.now(clock));
+    jobs.put(job.id, job);
+    try {
+      executor.execute(() -> run(job, transactionRequests));
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.id);
+      activeJobs.decrementAndGet();
+      throw new TooManyRequestsException("Too many bulk jobs in progress, retry later");
+    }
+    return job.toResponse();
+  }
+
+  /**
+   * Get the progress of a job, and its result once completed
+   * @param jobId
+   * @return
+   * @throws RewardServiceException
+   */
+  public BulkJobResponse getJob(UUID jobId) throws RewardServiceException {
+    BulkJob job = jobs.get(jobId);
+    if (job == null) {
+      throw new RewardServiceException("Invalid Id. Bulk job not found");
+    }
+    return job.toResponse();
+  }
+
+  private void run(BulkJob job, List<BulkSubTransaction> transactionRequests) {
+    try {
+      job.status = BulkJobStatus.RUNNING;
+      job.result =
+          rewardService.handleBulkTransactions(
+              job.customerId, transactionRequests, processed -> job.processedCount = processed);
+      job.finish(BulkJobStatus.COMPLETED, null, LocalDateTime.now(clock));
+    } catch (RuntimeException e) {
+      log.error("Bulk job {} for customer {} failed", job.id, job.customerId, e);
+      job.finish(BulkJobStatus.FAILED, e.getMessage(), LocalDateTime.now(clock));
+    } finally {
+      activeJobs.decrementAndGet();
+    }
+  }
+
+  /** Drops the jobs finished longer than the retention ago, with their results */
+  public void removeExpiredJobs() {
+    LocalDateTime expiredBefore = LocalDateTime.now(clock).minus(retention);
+    jobs.values()
+        .removeIf(job -> job.completedAt != null && job.completedAt.isBefore(expiredBefore));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    sweeper.shutdownNow();
+    executor.shutdown();
+  }
+
+  /** Progress of one job, written by its worker and read by pollers */
+  private static class BulkJob {
+    private final UUID id = UUID.randomUUID();
+    private final UUID customerId;
+    private final int totalCount;
+    private final LocalDateTime submittedAt;
+    private volatile BulkJobStatus status = BulkJobStatus.QUEUED;
+    private volatile int processedCount;
+    private volatile BulkTransactionResponse result;
+    private volatile String message;
+    private volatile LocalDateTime completedAt;
+
+    private BulkJob(UUID customerId, int totalCount, LocalDateTime submittedAt) {
+      this.customerId = customerId;
+      this.totalCount = totalCount;
+      this.submittedAt = submittedAt;
+    }
+
+    private void finish(BulkJobStatus status, String message, LocalDateTime completedAt) {
+      this.message = message;
+      this.completedAt = completedAt;
+      this.status = status;
+    }
+
+    private BulkJobResponse toResponse() {
+      // status is written last, so a finished status guarantees the result is visible
+      BulkJobStatus currentStatus = status;
+      BulkJobResponse response = new BulkJobResponse();
+      response.setJobId(id);
+      response.setCustomerId(customerId);
+      response.setStatus(currentStatus);
+      response.setTotalCount(totalCount);
+      response.setProcessedCount(processedCount);
+      response.setSubmittedAt(submittedAt);
+      response.setCompletedAt(completedAt);
+      response.setMessage(message);
+      response.setResult(result);
+      return response;
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerDetails;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded cache of customers in front of {@link CustomerRepository}, so ingesting a transaction
+ * or reading rewards does not load the customer row every time. It is warmed with up to
+ * {@code reward.customer-cache.maximum-size} customers at startup and loads the rest on first
+ * use; unknown ids are not cached, so a customer created later is found. Updates and deletes
+ * made through JPA evict the customer once they commit. Changes made behind this instance's
+ * back, by another instance or by SQL, show after {@code reward.customer-cache.expire-after-write}.
+ * Hits, misses and evictions are published as the {@code customers} cache metrics. Customers are
+ * read from the shard they live on.
+ */
+@Component
+@Slf4j
+public class CustomerRegistry {
+
+  @Autowired private CustomerRepository customerRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  @Autowired(required = false)
+  private EntityManagerFactory entityManagerFactory;
+
+  private final Cache<UUID, CustomerDetails> cache;
+
+  private final long maximumSize;
+
+  public CustomerRegistry(
+      @Value("${reward.customer-cache.maximum-size:1000000}") long maximumSize,
+      @Value("${reward.customer-cache.expire-after-write:1h}") Duration expireAfterWrite,
+      MeterRegistry meterRegistry) {
+    this.maximumSize = maximumSize;
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "customers");
+  }
+
+  /** Listens for customer changes and loads the first customers */
+  @PostConstruct
+  public void load() {
+    if (entityManagerFactory != null) {
+      EventListenerRegistry listeners =
+          entityManagerFactory
+              .unwrap(SessionFactoryImplementor.class)
+              .getServiceRegistry()
+              .getService(EventListenerRegistry.class);
+      Invalidator invalidator = new Invalidator();
+      listeners.appendListeners(EventType.POST_COMMIT_UPDATE, invalidator);
+      listeners.appendListeners(EventType.POST_COMMIT_DELETE, invalidator);
+    }
+    long[] loaded = new long[1];
+    for (int shard = 0; shard < shardRouter.shards() && loaded[0] < maximumSize; shard++) {
+      shardRouter.onShard(
+          shard,
+          () ->
+              transactionTemplate.execute(
+                  status -> {
+                    try (Stream<CustomerDetails> customers =
+                        customerRepository.streamAllDetails()) {
+                      customers
+                          .limit(maximumSize - loaded[0])
+                          .forEach(
+                              customer -> {
+                                cache.put(customer.id(), customer);
+                                loaded[0]++;
+                              });
+                    }
+                    return null;
+                  }));
+    }
+    log.info("Customer registry loaded {} customers", cache.estimatedSize());
+  }
+
+  /**
+   * @param customerId
+   * @return the customer, empty when there is none with the id
+   */
+  public Optional<CustomerDetails> find(UUID customerId) {
+    return Optional.ofNullable(
+        cache.get(
+            customerId,
+            id ->
+                shardRouter
+                    .onShardOf(id, () -> customerRepository.findById(id))
+                    .map(CustomerDetails::of)
+                    .orElse(null)));
+  }
+
+  /**
+   * Looks up several customers, loading the ones not cached with one query per shard
+   * @param customerIds
+   * @return the customers found by id, unknown ids are absent
+   */
+  public Map<UUID, CustomerDetails> findAll(Collection<UUID> customerIds) {
+    return cache.getAll(customerIds, this::loadAll);
+  }
+
+  /**
+   * @param customerId
+   * @return whether a customer with the id exists
+   */
+  public boolean exists(UUID customerId) {
+    return find(customerId).isPresent();
+  }
+
+  /**
+   * Drops the customer, the next lookup reads it again
+   * @param customerId
+   */
+  public void invalidate(UUID customerId) {
+    cache.invalidate(customerId);
+  }
+
+  private Map<UUID, CustomerDetails> loadAll(Set<? extends UUID> customerIds) {
+    List<UUID> missing = List.copyOf(customerIds);
+    List<List<Integer>> byShard = shardRouter.partition(missing, customerId -> customerId);
+    Map<UUID, CustomerDetails> found = new HashMap<>();
+    for (int shard = 0; shard < byShard.size(); shard++) {
+      if (byShard.get(shard).isEmpty()) {
+        continue;
+      }
+      List<UUID> shardCustomerIds = byShard.get(shard).stream().map(missing::get).toList();
+      shardRouter
+          .onShard(shard, () -> customerRepository.findAllById(shardCustomerIds))
+          .forEach(customer -> found.put(customer.getId(), CustomerDetails.of(customer)));
+    }
+    return found;
+  }
+
+  /** Evicts customers updated or deleted through JPA once the change commits */
+  private class Invalidator implements PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+      if (event.getEntity() instanceof Customer customer) {
+        invalidate(customer.getId());
+      }
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {}
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+      if (event.getEntity() instanceof Customer customer) {
+        invalidate(customer.getId());
+      }
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {}
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+      return Customer.class.getName().equals(persister.getEntityName());
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.PointsAwarded;
+
+/**
+ * Appends published points to a file as newline-delimited JSON, for trying the feed locally or
+ * handing it to a log shipper. A batch is flushed before the relay deletes it from the outbox; a
+ * batch published again after a failure shows twice in the file.
+ */
+@Component
+@ConditionalOnProperty(
+    name = {"reward.outbox.enabled", "reward.outbox.file-sink.enabled"},
+    havingValue = "true")
+public class FilePointsAwardedSink implements PointsAwardedSink {
+
+  @Autowired private ObjectMapper objectMapper;
+
+  private final Path path;
+
+  public FilePointsAwardedSink(
+      @Value("${reward.outbox.file-sink.path:data/points-awarded.jsonl}") Path path)
+      throws IOException {
+    this.path = path;
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+  }
+
+  @Override
+  public synchronized void publish(List<PointsAwarded> events) throws IOException {
+    try (BufferedWriter writer =
+        Files.newBufferedWriter(
+            path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      for (PointsAwarded event : events) {
+        writer.write(objectMapper.writeValueAsString(event));
+        writer.newLine();
+      }
+    }
+  }
+}
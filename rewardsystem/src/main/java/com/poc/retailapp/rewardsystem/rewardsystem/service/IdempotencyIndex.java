@@ -0,0 +1,171 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionKey;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tells whether idempotency keys were already written for a customer. A bloom filter over every
+ * stored key answers "never seen" from memory, which is the common case, so only keys the filter
+ * may have seen are looked up in the database. The unique index on customer and key stays the
+ * authority: the filter is loaded at startup and only ever grows, so a key written by another
+ * instance is caught by the index when its insert fails. The filter is sized for
+ * {@code reward.idempotency.expected-keys} at {@code reward.idempotency.false-positive-rate}; past
+ * that its false positives, and with them the lookups, grow.
+ */
+@Component
+@Slf4j
+public class IdempotencyIndex {
+
+  /** Longest key accepted */
+  public static final int MAX_KEY_LENGTH = 64;
+
+  @Autowired private TransactionRepository transactionRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  private final AtomicLongArray bits;
+
+  private final long bitCount;
+
+  private final int hashCount;
+
+  public IdempotencyIndex(
+      @Value("${reward.idempotency.expected-keys:10000000}") long expectedKeys,
+      @Value("${reward.idempotency.false-positive-rate:0.01}") double falsePositiveRate) {
+    if (expectedKeys < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Invalid idempotency filter size");
+    }
+    double ln2 = Math.log(2);
+    long optimalBits =
+        (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2));
+    int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+    bits = new AtomicLongArray(words);
+    bitCount = (long) words * 64;
+    hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * ln2));
+  }
+
+  /** Adds the keys already stored on every shard */
+  @PostConstruct
+  public void load() {
+    long[] keys = new long[1];
+    for (int shard = 0; shard < shardRouter.shards(); shard++) {
+      shardRouter.onShard(
+          shard,
+          () ->
+              transactionTemplate.execute(
+                  status -> {
+                    try (Stream<TransactionKey> rows = transactionRepository.streamKeys()) {
+                      rows.forEach(
+                          row -> {
+                            add(row.customerId(), row.idempotencyKey());
+                            keys[0]++;
+                          });
+                    }
+                    return null;
+                  }));
+    }
+    log.info("Idempotency filter loaded {} keys into {} KB", keys[0], bitCount / 8 / 1024);
+  }
+
+  /**
+   * Finds which of the keys were already written for the customer
+   * @param customerId
+   * @param keys
+   * @return the transaction written with each key found, keys not found are absent
+   */
+  public Map<String, UUID> findExisting(UUID customerId, Collection<String> keys) {
+    List<String> candidates = new ArrayList<>();
+    for (String key : keys) {
+      if (mightContain(customerId, key)) {
+        candidates.add(key);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return Map.of();
+    }
+    Map<String, UUID> existing = new HashMap<>();
+    for (TransactionKey row :
+        shardRouter.onShardOf(
+            customerId, () -> transactionRepository.findKeys(customerId, candidates))) {
+      existing.put(row.idempotencyKey(), row.transactionId());
+    }
+    return existing;
+  }
+
+  /**
+   * Records a key being written. Keys of writes that roll back stay in the filter and only cost
+   * a lookup when they come back.
+   * @param customerId
+   * @param key
+   */
+  public void add(UUID customerId, String key) {
+    long hash = hash(customerId, key);
+    long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash + i * step, bitCount);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current = bits.get(word);
+      while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+        current = bits.get(word);
+      }
+    }
+  }
+
+  /**
+   * @param customerId
+   * @param key
+   * @return false when the key was certainly never added for the customer
+   */
+  public boolean mightContain(UUID customerId, String key) {
+    long hash = hash(customerId, key);
+    long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash + i * step, bitCount);
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** 64-bit FNV-1a over the key's UTF-8 bytes, seeded with the customer and finalised */
+  private static long hash(UUID customerId, String key) {
+    long hash = mix(customerId.getMostSignificantBits()) ^ customerId.getLeastSignificantBits();
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  /** The MurmurHash3 64-bit finaliser */
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+    return value;
+  }
+}
@@ -0,0 +1,85 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Points, transaction count and amount per customer and month, summed so a batch of transactions
+ * takes one ledger write per customer and month rather than one per transaction
+ */
+class LedgerTotals {
+
+  private final Map<Key, Total> totals = new TreeMap<>();
+
+  /**
+   * Adds a transaction to the month it was made in
+   * @param customerId
+   * @param transactionDate
+   * @param points
+   * @param amount
+   */
+  void add(UUID customerId, LocalDateTime transactionDate, int points, BigDecimal amount) {
+    totals
+        .computeIfAbsent(new Key(customerId, monthOf(transactionDate)), key -> new Total())
+        .add(points, amount);
+  }
+
+  /**
+   * Hands every month to the writer in customer then month order, so concurrent writers lock
+   * ledger rows in the same order
+   * @param writer
+   */
+  void forEach(Writer writer) {
+    totals.forEach(
+        (key, total) ->
+            writer.write(
+                key.customerId(),
+                key.rewardMonth(),
+                total.points,
+                total.transactionCount,
+                total.amount));
+  }
+
+  int size() {
+    return totals.size();
+  }
+
+  /**
+   * @param transactionDate
+   * @return the first day of the month the transaction belongs to in the ledger
+   */
+  static LocalDate monthOf(LocalDateTime transactionDate) {
+    return transactionDate.toLocalDate().withDayOfMonth(1);
+  }
+
+  /** Receives the totals of one customer and month */
+  @FunctionalInterface
+  interface Writer {
+    void write(
+        UUID customerId, LocalDate rewardMonth, int points, int transactionCount, BigDecimal amount);
+  }
+
+  private record Key(UUID customerId, LocalDate rewardMonth) implements Comparable<Key> {
+    @Override
+    public int compareTo(Key other) {
+      int byCustomer = customerId.compareTo(other.customerId);
+      return byCustomer != 0 ? byCustomer : rewardMonth.compareTo(other.rewardMonth);
+    }
+  }
+
+  private static class Total {
+    private int points;
+    private int transactionCount;
+    private BigDecimal amount = BigDecimal.ZERO;
+
+    private void add(int points, BigDecimal amount) {
+      this.points += points;
+      this.transactionCount++;
+      this.amount = this.amount.add(amount);
+    }
+  }
+}
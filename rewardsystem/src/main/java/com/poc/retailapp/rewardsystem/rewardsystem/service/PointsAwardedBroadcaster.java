@@ -0,0 +1,134 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.PointsAwarded;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands published points to the clients following the feed as Server-Sent Events. Each client
+ * has a queue of {@code reward.outbox.sse.buffer} events drained by its own virtual thread, so a
+ * slow client never holds up the relay or the other clients; a client whose queue overflows is
+ * disconnected and has to reconnect. Events published while a client is not connected are not
+ * replayed to it.
+ */
+@Component
+@ConditionalOnProperty(name = "reward.outbox.enabled", havingValue = "true")
+@Slf4j
+public class PointsAwardedBroadcaster implements PointsAwardedSink {
+
+  /** Name of the events sent */
+  public static final String EVENT_NAME = "PointsAwarded";
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  private final int buffer;
+
+  private final Duration timeout;
+
+  public PointsAwardedBroadcaster(
+      @Value("${reward.outbox.sse.buffer:1000}") int buffer,
+      @Value("${reward.outbox.sse.timeout:30m}") Duration timeout,
+      MeterRegistry meterRegistry) {
+    this.buffer = Math.max(1, buffer);
+    this.timeout = timeout;
+    Gauge.builder("reward.outbox.subscribers", subscribers, Set::size)
+        .description("Clients following the points awarded feed")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Starts following the feed
+   * @param customerId only this customer's points, null for every customer
+   * @return the emitter the events are sent on, completed after {@code reward.outbox.sse.timeout}
+   */
+  public SseEmitter subscribe(UUID customerId) {
+    SseEmitter emitter = new SseEmitter(timeout.toMillis());
+    Subscriber subscriber = new Subscriber(emitter, customerId);
+    emitter.onCompletion(subscriber::close);
+    emitter.onTimeout(subscriber::close);
+    emitter.onError(error -> subscriber.close());
+    subscribers.add(subscriber);
+    subscriber.thread.start();
+    return emitter;
+  }
+
+  @Override
+  public void publish(List<PointsAwarded> events) {
+    for (Subscriber subscriber : subscribers) {
+      for (PointsAwarded event : events) {
+        if (subscriber.customerId != null && !subscriber.customerId.equals(event.getCustomerId())) {
+          continue;
+        }
+        if (!subscriber.queue.offer(event)) {
+          log.warn("Points feed client fell {} events behind, disconnecting it", buffer);
+          subscriber.emitter.complete();
+          subscriber.close();
+          break;
+        }
+      }
+    }
+  }
+
+  /** Disconnects every client */
+  @PreDestroy
+  public void shutdown() {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.emitter.complete();
+      subscriber.close();
+    }
+  }
+
+  /** One connected client */
+  private final class Subscriber {
+    private final SseEmitter emitter;
+    private final UUID customerId;
+    private final BlockingQueue<PointsAwarded> queue = new ArrayBlockingQueue<>(buffer);
+    private final Thread thread = Thread.ofVirtual().name("points-feed").unstarted(this::run);
+
+    private Subscriber(SseEmitter emitter, UUID customerId) {
+      this.emitter = emitter;
+      this.customerId = customerId;
+    }
+
+    private void run() {
+      try {
+        while (subscribers.contains(this)) {
+          PointsAwarded event = queue.take();
+          emitter.send(
+              SseEmitter.event()
+                  .id(event.getEventId().toString())
+                  .name(EVENT_NAME)
+                  .data(event, MediaType.APPLICATION_JSON));
+        }
+      } catch (InterruptedException e) {
+        // disconnected
+      } catch (IOException | IllegalStateException e) {
+        // the client went away, the emitter's callbacks clean up
+        close();
+      }
+    }
+
+    private void close() {
+      subscribers.remove(this);
+      thread.interrupt();
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.PointsAwarded;
+
+/** Where the {@link PointsOutbox} relay publishes awarded points, every sink gets every batch */
+public interface PointsAwardedSink {
+
+  /**
+   * Publishes a batch of events, oldest first
+   * @param events
+   * @throws IOException when the batch could not be published, it is then published again to
+   *     every sink
+   */
+  void publish(List<PointsAwarded> events) throws IOException;
+}
@@ -0,0 +1,55 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.math.BigDecimal;
+
+/** Turns purchase amounts, in cents, into reward points */
+public interface PointsCalculator {
+
+  /**
+   * Points for one purchase
+   * @param amountCents
+   * @return
+   */
+  int calculate(long amountCents);
+
+  /**
+   * Points for the first {@code length} amounts, written into {@code points} without allocating
+   * @param amountsCents
+   * @param points
+   * @param length
+   */
+  void calculate(long[] amountsCents, int[] points, int length);
+
+  /**
+   * The tiers currently applied, in the format accepted by {@link #setTiers(String)}
+   * @return
+   */
+  String getTiers();
+
+  /**
+   * Replaces the tiers
+   * @param tiers comma separated {@code threshold:pointsPerDollar} pairs
+   * @throws IllegalArgumentException when the tiers cannot be parsed
+   */
+  void setTiers(String tiers);
+
+  /**
+   * Points for every amount
+   * @param amountsCents
+   * @return
+   */
+  default int[] calculate(long[] amountsCents) {
+    int[] points = new int[amountsCents.length];
+    calculate(amountsCents, points, amountsCents.length);
+    return points;
+  }
+
+  /**
+   * Converts an amount to whole cents, dropping any fraction of a cent
+   * @param amount
+   * @return
+   */
+  static long toCents(BigDecimal amount) {
+    return amount.movePointRight(2).longValue();
+  }
+}
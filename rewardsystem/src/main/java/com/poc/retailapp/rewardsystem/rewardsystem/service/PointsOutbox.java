@@ -0,0 +1,237 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.PointsAwarded;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Feed of the points every write awards, for systems that would otherwise poll the rewards of
+ * each customer. The points of a write are added to the {@code points_outbox} table in the same
+ * database transaction as its transactions, one row per customer and month, so the feed holds
+ * exactly the writes that committed. A relay thread publishes the rows to every
+ * {@link PointsAwardedSink} in batches of {@code reward.outbox.batch-size}, oldest first, and
+ * deletes them once all sinks took them. It is woken when a write commits and otherwise looks
+ * every {@code reward.outbox.poll-interval}.
+ *
+ * <p>Delivery is at least once: a batch a sink fails on, or that is published just before the
+ * instance stops, is published again, to every sink, with the same event ids. Points changed by
+ * rescoring are not published. Run one relay per database: two instances relaying the same
+ * outbox publish its rows twice.
+ */
+@Component
+@ConditionalOnProperty(name = "reward.outbox.enabled", havingValue = "true")
+@Slf4j
+public class PointsOutbox {
+
+  private static final String INSERT =
+      "insert into points_outbox"
+          + " (event_id, customer_id, reward_month, points, transaction_count, total_amount,"
+          + " awarded_at) values (?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String SELECT =
+      "select id, event_id, customer_id, reward_month, points, transaction_count, total_amount,"
+          + " awarded_at from points_outbox order by id fetch first ? rows only";
+
+  private static final String DELETE = "delete from points_outbox where id = ?";
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  @Autowired private List<PointsAwardedSink> sinks;
+
+  @Autowired private Clock clock;
+
+  private final int batchSize;
+
+  private final Duration pollInterval;
+
+  private final Counter published;
+
+  private final Counter failures;
+
+  private final Timer delay;
+
+  /** Held while a batch is published, so a batch is never published twice at once */
+  private final Lock lock = new ReentrantLock();
+
+  private volatile boolean running;
+
+  private Thread thread;
+
+  public PointsOutbox(
+      @Value("${reward.outbox.batch-size:500}") int batchSize,
+      @Value("${reward.outbox.poll-interval:1s}") Duration pollInterval,
+      MeterRegistry meterRegistry) {
+    this.batchSize = Math.max(1, batchSize);
+    this.pollInterval = pollInterval;
+    published =
+        Counter.builder("reward.outbox.published")
+            .description("Points awarded events published by the outbox relay")
+            .register(meterRegistry);
+    failures =
+        Counter.builder("reward.outbox.failures")
+            .description("Outbox batches that failed to publish and will be retried")
+            .register(meterRegistry);
+    delay =
+        Timer.builder("reward.outbox.delay")
+            .description("Time from a write awarding points to their event being published")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+  }
+
+  /** Starts the relay */
+  @PostConstruct
+  public void start() {
+    running = true;
+    thread = Thread.ofPlatform().name("points-outbox-relay").daemon().start(this::run);
+  }
+
+  /** Stops the relay, a batch being published is finished first */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join(pollInterval.toMillis() + 5000);
+    }
+  }
+
+  /**
+   * Adds the points of a write to the outbox, must run inside the write's transaction
+   * @param totals the write's points per customer and month
+   */
+  void add(LedgerTotals totals) {
+    LocalDateTime awardedAt = LocalDateTime.now(clock);
+    List<Object[]> rows = new ArrayList<>(totals.size());
+    totals.forEach(
+        (customerId, rewardMonth, points, transactionCount, amount) ->
+            rows.add(
+                new Object[] {
+                  UUID.randomUUID(),
+                  customerId,
+                  rewardMonth,
+                  points,
+                  transactionCount,
+                  amount,
+                  awardedAt
+                }));
+    jdbcTemplate.batchUpdate(INSERT, rows);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              wake();
+            }
+          });
+    }
+  }
+
+  /**
+   * Publishes what is in the outbox of every shard now, without waiting for the relay
+   * @return the number of events published
+   * @throws IOException when a sink failed, the batch stays in the outbox
+   */
+  public int publishPending() throws IOException {
+    int total = 0;
+    for (int shard = 0; shard < shardRouter.shards(); shard++) {
+      int count;
+      do {
+        count = shardRouter.onShard(shard, this::publishBatch);
+        total += count;
+      } while (count == batchSize);
+    }
+    return total;
+  }
+
+  private void run() {
+    while (running) {
+      int count = 0;
+      try {
+        count = publishPending();
+      } catch (IOException | RuntimeException e) {
+        failures.increment();
+        log.warn("Publishing awarded points failed, retrying", e);
+      }
+      if (count == 0 && running) {
+        LockSupport.parkNanos(pollInterval.toNanos());
+      }
+    }
+  }
+
+  private void wake() {
+    Thread relay = thread;
+    if (relay != null) {
+      LockSupport.unpark(relay);
+    }
+  }
+
+  /** Publishes the oldest rows of the bound shard's outbox and deletes them */
+  private int publishBatch() throws IOException {
+    lock.lock();
+    try {
+      List<Row> rows = jdbcTemplate.query(SELECT, PointsOutbox::toRow, batchSize);
+      if (rows.isEmpty()) {
+        return 0;
+      }
+      List<PointsAwarded> events = rows.stream().map(Row::event).toList();
+      for (PointsAwardedSink sink : sinks) {
+        sink.publish(events);
+      }
+      jdbcTemplate.batchUpdate(DELETE, rows.stream().map(row -> new Object[] {row.id()}).toList());
+      published.increment(events.size());
+      LocalDateTime now = LocalDateTime.now(clock);
+      for (PointsAwarded event : events) {
+        delay.record(Duration.between(event.getAwardedAt(), now).toNanos(), TimeUnit.NANOSECONDS);
+      }
+      return events.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static Row toRow(ResultSet resultSet, int rowNumber) throws SQLException {
+    return new Row(
+        resultSet.getLong("id"),
+        new PointsAwarded(
+            resultSet.getObject("event_id", UUID.class),
+            resultSet.getObject("customer_id", UUID.class),
+            YearMonth.from(resultSet.getObject("reward_month", LocalDate.class)),
+            resultSet.getInt("points"),
+            resultSet.getInt("transaction_count"),
+            resultSet.getBigDecimal("total_amount"),
+            resultSet.getObject("awarded_at", LocalDateTime.class)));
+  }
+
+  private record Row(long id, PointsAwarded event) {}
+}
@@ -0,0 +1,523 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.RescoreState;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.RescoreStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RescoreCheckpoint;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerTransactionSummary;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RescoreCheckpointRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rescores the reward ledger from the transaction table after the point tiers change. Customers
+ * are split into partitions by ranges of their id, and the partitions are split in halves on a
+ * fork-join pool until each worker holds one. A partition is scored in one database transaction:
+ * its transactions are streamed and scored in chunks, and the points of every ledger month are
+ * written back in JDBC batches together with the partition's checkpoint. A stopped or failed run
+ * started again with the same tiers skips the partitions already checkpointed.
+ *
+ * <p>Only the points column is rewritten, and only where the month still holds as many
+ * transactions as were scored. A month that gained transactions under the job is rescored again
+ * for its customer, so concurrent ingests are not overwritten. Reads are throttled to
+ * {@code reward.rescore.max-transactions-per-second} across all workers.
+ *
+ * <p>With sharding, every partition is scored on each shard in turn, each shard in its own
+ * transaction with its own checkpoint, so a run resumes shard by shard.
+ *
+ * <p>With the event log enabled the ledger belongs to the {@link RewardProjector}, which would
+ * apply its batches on top of points rewritten here, so a run is refused; the projector's rebuild
+ * rescores the whole log instead.
+ */
+@Service
+@Slf4j
+public class RescoreService {
+
+  /** Transactions scored at once */
+  private static final int CHUNK_SIZE = 1000;
+
+  /** Attempts at rescoring a customer whose ledger changed under the job */
+  private static final int MAX_ATTEMPTS = 3;
+
+  private static final String UPDATE_POINTS =
+      "update reward_ledger set points = ?"
+          + " where customer_id = ? and reward_month = ? and transaction_count = ?";
+
+  @Autowired private TransactionRepository transactionRepository;
+
+  @Autowired private RewardService rewardService;
+
+  @Autowired private RescoreCheckpointRepository rescoreCheckpointRepository;
+
+  @Autowired private PointsCalculator pointsCalculator;
+
+  @Autowired private RewardCache rewardCache;
+
+  @Autowired private RewardLeaderboard rewardLeaderboard;
+
+  @Autowired(required = false)
+  private TransactionColumnStore transactionColumnStore;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private Clock clock;
+
+  private final int partitions;
+
+  private final int parallelism;
+
+  private final int batchSize;
+
+  private final Throttle throttle;
+
+  private final boolean eventLogEnabled;
+
+  private volatile Run current;
+
+  private ForkJoinPool pool;
+
+  public RescoreService(
+      @Value("${reward.rescore.partitions:256}") int partitions,
+      @Value("${reward.rescore.parallelism:4}") int parallelism,
+      @Value("${reward.rescore.batch-size:500}") int batchSize,
+      @Value("${reward.rescore.max-transactions-per-second:0}") long maxTransactionsPerSecond,
+      @Value("${reward.event-log.enabled:false}") boolean eventLogEnabled) {
+    if (partitions < 1 || partitions > 65536) {
+      throw new IllegalArgumentException("Invalid number of rescore partitions " + partitions);
+    }
+    this.partitions = partitions;
+    this.parallelism = Math.max(1, parallelism);
+    this.batchSize = Math.max(1, batchSize);
+    this.throttle = new Throttle(maxTransactionsPerSecond);
+    this.eventLogEnabled = eventLogEnabled;
+  }
+
+  /**
+   * Starts rescoring every customer in the background
+   * @param tiers new point tiers to apply first, or null to keep the current ones
+   * @return the status of the started run
+   * @throws RewardServiceException when a run is in progress, the tiers are invalid or the event
+   *     log is enabled
+   */
+  public synchronized RescoreStatus start(String tiers) throws RewardServiceException {
+    if (eventLogEnabled) {
+      throw new RewardServiceException(
+          "The ledger is projected from the event log, rebuild it through rewardprojection instead");
+    }
+    if (current != null && current.isActive()) {
+      throw new RewardServiceException("A rescore is already running");
+    }
+    if (tiers != null) {
+      try {
+        pointsCalculator.setTiers(tiers);
+      } catch (IllegalArgumentException e) {
+        throw new RewardServiceException("Invalid tiers: " + e.getMessage(), e);
+      }
+      if (transactionColumnStore != null) {
+        transactionColumnStore.clear();
+      }
+    }
+    String currentTiers = pointsCalculator.getTiers();
+    List<Set<Integer>> finished = loadCheckpoints(currentTiers);
+    int resumed =
+        (int)
+            IntStream.range(0, partitions)
+                .filter(partition -> isFinished(finished, partition))
+                .count();
+    Run run = new Run(currentTiers, resumed);
+    current = run;
+    pool = new ForkJoinPool(parallelism);
+    ForkJoinTask<Void> task = pool.submit(new PartitionTask(run, finished, 0, partitions));
+    ForkJoinPool runPool = pool;
+    Thread.ofVirtual().name("rescore").start(() -> finish(run, task, runPool));
+    log.info(
+        "Rescore started with tiers {}, {} of {} partitions already done",
+        currentTiers,
+        resumed,
+        partitions);
+    return run.status();
+  }
+
+  /**
+   * Asks the running rescore to stop, partitions being written are rolled back
+   * @return
+   */
+  public RescoreStatus stop() {
+    Run run = current;
+    if (run != null && run.isActive()) {
+      run.state = RescoreState.STOPPING;
+    }
+    return status();
+  }
+
+  /**
+   * @return progress of the current or last run
+   */
+  public RescoreStatus status() {
+    Run run = current;
+    if (run == null) {
+      RescoreStatus status = new RescoreStatus();
+      status.setState(RescoreState.IDLE);
+      status.setTiers(pointsCalculator.getTiers());
+      status.setPartitions(partitions);
+      return status;
+    }
+    return run.status();
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    stop();
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  /** The partitions each shard checkpointed in an earlier run with the same tiers */
+  private List<Set<Integer>> loadCheckpoints(String tiers) {
+    List<Set<Integer>> finished = new ArrayList<>(shardRouter.shards());
+    for (int shard = 0; shard < shardRouter.shards(); shard++) {
+      finished.add(shardRouter.onShard(shard, () -> loadShardCheckpoints(tiers)));
+    }
+    return finished;
+  }
+
+  private Set<Integer> loadShardCheckpoints(String tiers) {
+    List<RescoreCheckpoint> checkpoints =
+        rescoreCheckpointRepository.findByPartitionsAndTiers(partitions, tiers);
+    if (checkpoints.size() < rescoreCheckpointRepository.count()) {
+      // left by a run with other tiers or partitions, which this run replaces
+      rescoreCheckpointRepository.deleteAllInBatch();
+      return Set.of();
+    }
+    return checkpoints.stream()
+        .map(RescoreCheckpoint::getPartitionIndex)
+        .collect(Collectors.toSet());
+  }
+
+  private static boolean isFinished(List<Set<Integer>> finished, int partition) {
+    return finished.stream().allMatch(shardFinished -> shardFinished.contains(partition));
+  }
+
+  private void finish(Run run, ForkJoinTask<Void> task, ForkJoinPool runPool) {
+    try {
+      task.join();
+    } catch (RuntimeException e) {
+      log.error("Rescore failed", e);
+      run.message = e.getMessage();
+    } finally {
+      runPool.shutdown();
+    }
+    try {
+      rewardLeaderboard.reload();
+    } catch (RuntimeException e) {
+      log.error("Leaderboard reload after rescore failed", e);
+    }
+    if (run.state == RescoreState.STOPPING) {
+      run.state = RescoreState.STOPPED;
+    } else if (run.message != null || run.partitionsFailed.get() > 0) {
+      run.state = RescoreState.FAILED;
+    } else {
+      for (int shard = 0; shard < shardRouter.shards(); shard++) {
+        shardRouter.onShard(
+            shard,
+            () -> {
+              rescoreCheckpointRepository.deleteAllInBatch();
+              return null;
+            });
+      }
+      run.state = RescoreState.COMPLETED;
+    }
+    run.completedAt = LocalDateTime.now(clock);
+    log.info(
+        "Rescore {}: {} partitions, {} transactions scored, {} months updated, {} conflicts",
+        run.state,
+        run.partitionsCompleted.get(),
+        run.transactionsScored.sum(),
+        run.monthsUpdated.sum(),
+        run.conflicts.get());
+  }
+
+  private void rescorePartition(Run run, List<Set<Integer>> finished, int partition) {
+    UUID from = new UUID(lowerBound(partition), 0L);
+    UUID to =
+        new UUID(partition == partitions - 1 ? -1L : lowerBound(partition + 1) - 1, -1L);
+    for (int shard = 0; shard < shardRouter.shards(); shard++) {
+      if (finished.get(shard).contains(partition)) {
+        continue;
+      }
+      Set<UUID> conflicted =
+          shardRouter.onShard(
+              shard,
+              () ->
+                  transactionTemplate.execute(
+                      status -> {
+                        Set<UUID> customers = rescore(run, from, to);
+                        rescoreCheckpointRepository.save(
+                            new RescoreCheckpoint(
+                                partition, partitions, run.tiers, LocalDateTime.now(clock)));
+                        return customers;
+                      }));
+      for (UUID customerId : conflicted) {
+        rescoreCustomer(run, customerId);
+      }
+    }
+    run.partitionsCompleted.incrementAndGet();
+  }
+
+  private void rescoreCustomer(Run run, UUID customerId) {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      Set<UUID> conflicted =
+          shardRouter.onShardOf(
+              customerId,
+              () -> transactionTemplate.execute(status -> rescore(run, customerId, customerId)));
+      if (conflicted.isEmpty()) {
+        return;
+      }
+    }
+    run.conflicts.incrementAndGet();
+    log.warn("Ledger of customer {} kept changing, not rescored", customerId);
+  }
+
+  /**
+   * Scores the transactions of the customers in the id range and writes the points of their
+   * ledger months, must run inside a transaction
+   * @return the customers with a month that changed since it was read
+   */
+  private Set<UUID> rescore(Run run, UUID from, UUID to) {
+    LedgerTotals totals = new LedgerTotals();
+    List<CustomerTransactionSummary> chunk = new ArrayList<>(CHUNK_SIZE);
+    long[] amountsCents = new long[CHUNK_SIZE];
+    int[] points = new int[CHUNK_SIZE];
+    try (Stream<CustomerTransactionSummary> rows =
+        transactionRepository.streamSummariesByCustomerIdBetween(from, to)) {
+      Iterator<CustomerTransactionSummary> iterator = rows.iterator();
+      while (iterator.hasNext()) {
+        chunk.add(iterator.next());
+        if (chunk.size() == CHUNK_SIZE || !iterator.hasNext()) {
+          run.checkStopping();
+          throttle.acquire(chunk.size());
+          for (int i = 0; i < chunk.size(); i++) {
+            amountsCents[i] = PointsCalculator.toCents(chunk.get(i).amount());
+          }
+          pointsCalculator.calculate(amountsCents, points, chunk.size());
+          for (int i = 0; i < chunk.size(); i++) {
+            CustomerTransactionSummary row = chunk.get(i);
+            totals.add(row.customerId(), row.transactionDate(), points[i], row.amount());
+          }
+          run.transactionsScored.add(chunk.size());
+          chunk.clear();
+        }
+      }
+    }
+
+    List<LedgerMonth> months = new ArrayList<>(totals.size());
+    totals.forEach(
+        (customerId, rewardMonth, monthPoints, transactionCount, amount) ->
+            months.add(
+                new LedgerMonth(customerId, rewardMonth, monthPoints, transactionCount, amount)));
+    Set<UUID> conflicted = new HashSet<>();
+    for (int start = 0; start < months.size(); start += batchSize) {
+      List<LedgerMonth> batch = months.subList(start, Math.min(months.size(), start + batchSize));
+      int[] updated =
+          jdbcTemplate.batchUpdate(
+              UPDATE_POINTS,
+              batch.stream()
+                  .map(
+                      month ->
+                          new Object[] {
+                            month.points(),
+                            month.customerId(),
+                            month.rewardMonth(),
+                            month.transactionCount()
+                          })
+                  .toList());
+      for (int i = 0; i < batch.size(); i++) {
+        LedgerMonth month = batch.get(i);
+        if (updated[i] > 0 || updated[i] == Statement.SUCCESS_NO_INFO) {
+          rewardCache.evictAfterCommit(month.customerId());
+          run.monthsUpdated.increment();
+        } else if (rewardService.insertLedgerMonth(
+            month.customerId(),
+            month.rewardMonth(),
+            month.points(),
+            month.transactionCount(),
+            month.amount())) {
+          rewardCache.evictAfterCommit(month.customerId());
+          run.monthsUpdated.increment();
+        } else {
+          // the month has a row with another count, maybe inserted by an ingest just now
+          conflicted.add(month.customerId());
+        }
+      }
+    }
+    return conflicted;
+  }
+
+  /** First most significant id bits of the partition, ids compared as unsigned */
+  private long lowerBound(int partition) {
+    return BigInteger.valueOf(partition)
+        .shiftLeft(64)
+        .divide(BigInteger.valueOf(partitions))
+        .longValue();
+  }
+
+  /** Splits its partitions in halves until one is left, which it rescores */
+  private final class PartitionTask extends RecursiveAction {
+    private final Run run;
+    private final List<Set<Integer>> finished;
+    private final int from;
+    private final int to;
+
+    private PartitionTask(Run run, List<Set<Integer>> finished, int from, int to) {
+      this.run = run;
+      this.finished = finished;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        invokeAll(
+            new PartitionTask(run, finished, from, middle),
+            new PartitionTask(run, finished, middle, to));
+        return;
+      }
+      if (isFinished(finished, from) || run.state == RescoreState.STOPPING) {
+        return;
+      }
+      try {
+        rescorePartition(run, finished, from);
+      } catch (Stopped e) {
+        // rolled back, picked up by the next run
+      } catch (RuntimeException e) {
+        run.partitionsFailed.incrementAndGet();
+        log.error("Rescoring partition {} failed", from, e);
+      }
+    }
+  }
+
+  /** Progress of one run, updated by the workers */
+  private final class Run {
+    private final String tiers;
+    private final int partitionsResumed;
+    private final AtomicInteger partitionsCompleted = new AtomicInteger();
+    private final AtomicInteger partitionsFailed = new AtomicInteger();
+    private final AtomicInteger conflicts = new AtomicInteger();
+    private final LongAdder transactionsScored = new LongAdder();
+    private final LongAdder monthsUpdated = new LongAdder();
+    private final LocalDateTime startedAt = LocalDateTime.now(clock);
+    private volatile RescoreState state = RescoreState.RUNNING;
+    private volatile LocalDateTime completedAt;
+    private volatile String message;
+
+    private Run(String tiers, int partitionsResumed) {
+      this.tiers = tiers;
+      this.partitionsResumed = partitionsResumed;
+    }
+
+    private boolean isActive() {
+      return state == RescoreState.RUNNING || state == RescoreState.STOPPING;
+    }
+
+    private void checkStopping() {
+      if (state == RescoreState.STOPPING) {
+        throw new Stopped();
+      }
+    }
+
+    private RescoreStatus status() {
+      RescoreStatus status = new RescoreStatus();
+      status.setState(state);
+      status.setTiers(tiers);
+      status.setPartitions(partitions);
+      status.setPartitionsCompleted(partitionsCompleted.get());
+      status.setPartitionsResumed(partitionsResumed);
+      status.setPartitionsFailed(partitionsFailed.get());
+      status.setTransactionsScored(transactionsScored.sum());
+      status.setMonthsUpdated(monthsUpdated.sum());
+      status.setConflicts(conflicts.get());
+      status.setStartedAt(startedAt);
+      status.setCompletedAt(completedAt);
+      status.setMessage(message);
+      return status;
+    }
+  }
+
+  /** Hands out permits no faster than a fixed rate, shared by all workers; zero is unlimited */
+  private static final class Throttle {
+    private final long nanosPerPermit;
+    private long next = System.nanoTime();
+
+    private Throttle(long permitsPerSecond) {
+      this.nanosPerPermit =
+          permitsPerSecond > 0 ? Math.max(1, 1_000_000_000L / permitsPerSecond) : 0;
+    }
+
+    private void acquire(int permits) {
+      if (nanosPerPermit == 0) {
+        return;
+      }
+      long wait;
+      synchronized (this) {
+        long now = System.nanoTime();
+        long start = Math.max(next, now);
+        next = start + permits * nanosPerPermit;
+        wait = start - now;
+      }
+      if (wait > 0) {
+        try {
+          Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new Stopped();
+        }
+      }
+    }
+  }
+
+  private record LedgerMonth(
+      UUID customerId, LocalDate rewardMonth, int points, int transactionCount, BigDecimal amount) {}
+
+  /** Thrown inside a partition's transaction to roll it back when the run is stopped */
+  private static final class Stopped extends RuntimeException {
+    private Stopped() {
+      super("Rescore stopped", null, false, false);
+    }
+  }
+}
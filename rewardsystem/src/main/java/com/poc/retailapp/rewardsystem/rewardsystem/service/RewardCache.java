@@ -0,0 +1,224 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded cache of reward reports keyed on customer, calendar month of the clock, months and
+ * whether details were asked for, next to the {@link RewardWindows} each report is summed from,
+ * keyed on customer. Reporting windows only move when the month turns, so an entry of an earlier
+ * month is never served; entries still expire after a while so writes made by other instances are
+ * picked up. Every write for a customer evicts that customer's entries once it commits.
+ *
+ * <p>Reports listing transactions are held apart and bounded by the transactions they list
+ * rather than their number, {@code reward.cache.maximum-transactions} in all, so a few customers
+ * with very long histories cannot fill the heap. Hits, misses and evictions are published as the
+ * {@code customerRewards}, {@code customerRewardDetails} and {@code rewardWindows} cache metrics.
+ * A maximum size of zero turns the cache off.
+ */
+@Component
+public class RewardCache {
+
+  /** The months the rewards endpoint accepts, reports for other windows are not cached */
+  private static final int MAX_MONTHS = RewardWindows.MAX_MONTHS;
+
+  private final Cache<Key, CustomerRewardResponse> cache;
+
+  private final Cache<Key, CustomerRewardResponse> detailCache;
+
+  private final Cache<UUID, RewardWindows> windows;
+
+  private final Clock clock;
+
+  private final boolean enabled;
+
+  public RewardCache(
+      @Value("${reward.cache.maximum-size:10000}") long maximumSize,
+      @Value("${reward.cache.maximum-transactions:500000}") long maximumTransactions,
+      @Value("${reward.cache.expire-after-write:5m}") Duration expireAfterWrite,
+      Clock clock,
+      MeterRegistry meterRegistry) {
+    this.clock = clock;
+    enabled = maximumSize > 0;
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+    detailCache =
+        Caffeine.newBuilder()
+            .maximumWeight(maximumTransactions)
+            .weigher(RewardCache::weigh)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+    windows =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "customerRewards");
+    CaffeineCacheMetrics.monitor(meterRegistry, detailCache, "customerRewardDetails");
+    CaffeineCacheMetrics.monitor(meterRegistry, windows, "rewardWindows");
+  }
+
+  /**
+   * Returns the cached report or loads and caches it. An eviction racing with the load waits for
+   * it to finish and then removes its result, so a report read before a write committed is never
+   * kept.
+   * @param customerId
+   * @param months
+   * @param includeDetails
+   * @param loader
+   * @return
+   * @throws RewardServiceException
+   */
+  public CustomerRewardResponse get(
+      UUID customerId, int months, boolean includeDetails, Loader loader)
+      throws RewardServiceException {
+    if (!enabled || months < 1 || months > MAX_MONTHS) {
+      return loader.load();
+    }
+    try {
+      return (includeDetails ? detailCache : cache).get(
+          new Key(customerId, YearMonth.now(clock), months, includeDetails),
+          key -> {
+            try {
+              return loader.load();
+            } catch (RewardServiceException e) {
+              throw new LoadFailure(e);
+            }
+          });
+    } catch (LoadFailure e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Returns the customer's windows for the current month of the clock, loading them when none are
+   * held or the held ones were built in an earlier month. Like {@link #get}, an eviction racing
+   * with the load removes its result.
+   * @param customerId
+   * @param loader builds the windows ending in the given month
+   * @return
+   */
+  public RewardWindows windows(UUID customerId, Function<YearMonth, RewardWindows> loader) {
+    YearMonth currentMonth = YearMonth.now(clock);
+    if (!enabled) {
+      return loader.apply(currentMonth);
+    }
+    RewardWindows held = windows.getIfPresent(customerId);
+    if (held != null && held.currentMonth().equals(currentMonth)) {
+      return held;
+    }
+    return windows
+        .asMap()
+        .compute(
+            customerId,
+            (id, current) ->
+                current != null && current.currentMonth().equals(currentMonth)
+                    ? current
+                    : loader.apply(currentMonth));
+  }
+
+  /**
+   * Evicts every cached report of the customer once the current transaction commits, or right
+   * away when there is none. Customers written several times in one transaction are evicted once.
+   * @param customerId
+   */
+  public void evictAfterCommit(UUID customerId) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      evict(customerId);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    Set<UUID> pending = (Set<UUID>) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      Set<UUID> customerIds = new HashSet<>();
+      TransactionSynchronizationManager.bindResource(this, customerIds);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(RewardCache.this);
+              if (status == STATUS_COMMITTED) {
+                customerIds.forEach(RewardCache.this::evict);
+              }
+            }
+          });
+      pending = customerIds;
+    }
+    pending.add(customerId);
+  }
+
+  /**
+   * Evicts every cached report of the customer
+   * @param customerId
+   */
+  public void evict(UUID customerId) {
+    // reports of earlier months are never read again and are left to expire
+    YearMonth currentMonth = YearMonth.now(clock);
+    List<Key> keys = new ArrayList<>(MAX_MONTHS);
+    List<Key> detailKeys = new ArrayList<>(MAX_MONTHS);
+    for (int months = 1; months <= MAX_MONTHS; months++) {
+      keys.add(new Key(customerId, currentMonth, months, false));
+      detailKeys.add(new Key(customerId, currentMonth, months, true));
+    }
+    cache.invalidateAll(keys);
+    detailCache.invalidateAll(detailKeys);
+    windows.invalidate(customerId);
+  }
+
+  /** Evicts every cached report, for when the whole ledger is rewritten */
+  public void evictAll() {
+    cache.invalidateAll();
+    detailCache.invalidateAll();
+    windows.invalidateAll();
+  }
+
+  /** A report with details weighs the transactions it lists, and one for the report itself */
+  private static int weigh(Key key, CustomerRewardResponse report) {
+    return report.getRewards() == null ? 1 : 1 + report.getRewards().size();
+  }
+
+  /** Computes a report on a cache miss */
+  @FunctionalInterface
+  public interface Loader {
+    CustomerRewardResponse load() throws RewardServiceException;
+  }
+
+  private record Key(UUID customerId, YearMonth month, int months, boolean includeDetails) {}
+
+  private static class LoadFailure extends RuntimeException {
+    private LoadFailure(RewardServiceException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized RewardServiceException getCause() {
+      return (RewardServiceException) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,425 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardEntry;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.LedgerPointsCount;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Customers ranked by points over the last months, kept in memory so a top-N read never touches
+ * the database. The points of the last twelve calendar months are loaded from the reward ledger at
+ * startup and every committed ledger write is added on top. Windows are calendar months of the
+ * clock, the current month included, the same windows a per-customer report covers.
+ *
+ * <p>The ranking of every window size is sorted up front, when the ledger is loaded and when the
+ * calendar month turns, on a background thread while the previous rankings keep being served.
+ * Points committed meanwhile are added to the new rankings before they are swapped in, except those
+ * the loaded ledger already held: each write carries the transaction count its ledger month had
+ * once it was in, and is dropped when the loaded month counted as many. Writes then update the
+ * rankings in place, so reading the top n is a walk over the first n entries. Right after the
+ * month turns, reads see the previous month's windows until the new rankings are in.
+ */
+@Component
+@Slf4j
+public class RewardLeaderboard {
+
+  /** Largest window, in months */
+  public static final int MAX_MONTHS = RewardWindows.MAX_MONTHS;
+
+  @Autowired private RewardLedgerRepository rewardLedgerRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  @Autowired private Clock clock;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Builds new rankings one at a time, off the request threads */
+  private final ExecutorService builder =
+      Executors.newSingleThreadExecutor(
+          Thread.ofPlatform().name("leaderboard-builder").daemon().factory());
+
+  /** The points and rankings served, replaced under the write lock */
+  private volatile Board board = new Board(0, new HashMap<>());
+
+  /** Points added while new rankings are being built, under the write lock; null otherwise */
+  private List<LedgerPointsCount> missed;
+
+  /** Whether a month turn is waiting for its rankings, under the write lock */
+  private boolean rollOverPending;
+
+  /** Loads the last twelve months of every shard's reward ledger, replacing whatever was held */
+  @PostConstruct
+  public void reload() {
+    try {
+      CompletableFuture.runAsync(this::load, builder).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    builder.shutdownNow();
+  }
+
+  /**
+   * Adds the points once the current transaction commits, or right away when there is none
+   * @param customerId
+   * @param rewardMonth
+   * @param points
+   * @param transactionCount transactions the ledger month counts with this write in
+   */
+  public void addAfterCommit(
+      UUID customerId, LocalDate rewardMonth, int points, int transactionCount) {
+    LedgerPointsCount addition =
+        new LedgerPointsCount(customerId, rewardMonth, points, transactionCount);
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      add(List.of(addition));
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    List<LedgerPointsCount> pending =
+        (List<LedgerPointsCount>) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      List<LedgerPointsCount> additions = new ArrayList<>();
+      TransactionSynchronizationManager.bindResource(this, additions);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(RewardLeaderboard.this);
+              if (status == STATUS_COMMITTED) {
+                add(additions);
+              }
+            }
+          });
+      pending = additions;
+    }
+    pending.add(addition);
+  }
+
+  /**
+   * The customers with the most points over the last months, most points first and ties by id
+   * @param n
+   * @param months 1 to {@link #MAX_MONTHS}
+   * @return
+   */
+  public List<LeaderboardEntry> top(int n, int months) {
+    rollOverIfDue();
+    lock.readLock().lock();
+    try {
+      return firstEntries(board.rankings[months - 1], n);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void add(List<LedgerPointsCount> additions) {
+    rollOverIfDue();
+    lock.writeLock().lock();
+    try {
+      for (LedgerPointsCount addition : additions) {
+        if (missed != null) {
+          missed.add(addition);
+        }
+        board.add(addition.customerId(), monthIndex(addition.rewardMonth()), addition.points());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Runs on the builder thread */
+  private void load() {
+    int month = monthIndex(LocalDate.now(clock));
+    LocalDate firstMonth = LocalDate.now(clock).withDayOfMonth(1).minusMonths(MAX_MONTHS - 1);
+    Map<UUID, int[]> monthlyPoints = new HashMap<>();
+    Map<UUID, int[]> monthlyCounts = new HashMap<>();
+    lock.writeLock().lock();
+    try {
+      // points added before this are in the ledger read below, those added after may be too
+      missed = new ArrayList<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    try {
+      for (int shard = 0; shard < shardRouter.shards(); shard++) {
+        shardRouter.onShard(
+            shard,
+            () ->
+                transactionTemplate.execute(
+                    status -> {
+                      try (Stream<LedgerPointsCount> rows =
+                          rewardLedgerRepository.streamPointsFromMonth(firstMonth)) {
+                        rows.forEach(
+                            row -> Board.addPoints(monthlyPoints, monthlyCounts, month, row));
+                      }
+                      return null;
+                    }));
+      }
+      swapIn(new Board(month, monthlyPoints), monthlyCounts);
+    } catch (RuntimeException e) {
+      lock.writeLock().lock();
+      try {
+        missed = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+      throw e;
+    }
+    log.info("Leaderboard loaded {} customers", monthlyPoints.size());
+  }
+
+  /** Starts building the rankings of the new month once the calendar has turned */
+  private void rollOverIfDue() {
+    int month = monthIndex(LocalDate.now(clock));
+    if (month == board.currentMonth) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (month == board.currentMonth || rollOverPending) {
+        return;
+      }
+      // points of the new month are ignored by the current board, keep them for the next one
+      if (missed == null) {
+        missed = new ArrayList<>();
+      }
+      rollOverPending = true;
+      builder.execute(this::rollOver);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Runs on the builder thread, drops the months that fell out and ranks the rest again */
+  private void rollOver() {
+    int month = monthIndex(LocalDate.now(clock));
+    Map<UUID, int[]> monthlyPoints;
+    lock.writeLock().lock();
+    try {
+      Board current = board;
+      if (month == current.currentMonth) {
+        // reloaded meanwhile
+        rollOverPending = false;
+        missed = null;
+        return;
+      }
+      monthlyPoints = current.rolledOverTo(month);
+      // keep only what the current board ignored, the rest is in the copy
+      missed.removeIf(addition -> current.covers(monthIndex(addition.rewardMonth())));
+    } finally {
+      lock.writeLock().unlock();
+    }
+    try {
+      swapIn(new Board(month, monthlyPoints), null);
+    } catch (RuntimeException e) {
+      log.error("Leaderboard roll over to a new month failed", e);
+      lock.writeLock().lock();
+      try {
+        missed = null;
+        rollOverPending = false;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Adds the points missed while the board was built and serves it
+   * @param next
+   * @param loadedCounts transaction counts per month of the ledger the board was loaded from, whose
+   *     writes it holds already; null for a board copied under the lock
+   */
+  private void swapIn(Board next, Map<UUID, int[]> loadedCounts) {
+    lock.writeLock().lock();
+    try {
+      for (LedgerPointsCount addition : missed) {
+        int month = monthIndex(addition.rewardMonth());
+        if (loadedCounts == null || !next.loaded(loadedCounts, addition, month)) {
+          next.add(addition.customerId(), month, addition.points());
+        }
+      }
+      missed = null;
+      rollOverPending = false;
+      board = next;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static List<LeaderboardEntry> firstEntries(NavigableSet<Score> ranking, int n) {
+    List<LeaderboardEntry> entries = new ArrayList<>(Math.min(n, ranking.size()));
+    Iterator<Score> scores = ranking.iterator();
+    while (entries.size() < n && scores.hasNext()) {
+      Score score = scores.next();
+      entries.add(new LeaderboardEntry(entries.size() + 1, score.customerId(), score.points()));
+    }
+    return entries;
+  }
+
+  /** Months since year zero, consecutive across year ends */
+  private static int monthIndex(LocalDate date) {
+    return date.getYear() * 12 + date.getMonthValue() - 1;
+  }
+
+  /** The points of every customer for one current month and their rankings */
+  private static final class Board {
+
+    /** The current month as counted by {@link #monthIndex} */
+    private final int currentMonth;
+
+    /** Points per month of every customer with points, slot {@code month % MAX_MONTHS} */
+    private final Map<UUID, int[]> monthlyPoints;
+
+    /** Sorted rankings by window size */
+    private final NavigableSet<Score>[] rankings = newRankings();
+
+    private Board(int currentMonth, Map<UUID, int[]> monthlyPoints) {
+      this.currentMonth = currentMonth;
+      this.monthlyPoints = monthlyPoints;
+      for (int months = 1; months <= MAX_MONTHS; months++) {
+        NavigableSet<Score> ranking = new TreeSet<>();
+        for (Map.Entry<UUID, int[]> customer : monthlyPoints.entrySet()) {
+          long windowPoints = windowPoints(customer.getValue(), months);
+          if (windowPoints > 0) {
+            ranking.add(new Score(windowPoints, customer.getKey()));
+          }
+        }
+        rankings[months - 1] = ranking;
+      }
+    }
+
+    /** Whether the month is ranked, months out of the largest window and future months are not */
+    private boolean covers(int month) {
+      return month <= currentMonth && month > currentMonth - MAX_MONTHS;
+    }
+
+    /** Must hold the write lock */
+    private void add(UUID customerId, int month, int points) {
+      if (points == 0 || !covers(month)) {
+        return;
+      }
+      int[] customerPoints = monthlyPoints.computeIfAbsent(customerId, id -> new int[MAX_MONTHS]);
+      for (int months = currentMonth - month + 1; months <= MAX_MONTHS; months++) {
+        NavigableSet<Score> ranking = rankings[months - 1];
+        long windowPoints = windowPoints(customerPoints, months);
+        ranking.remove(new Score(windowPoints, customerId));
+        if (windowPoints + points > 0) {
+          ranking.add(new Score(windowPoints + points, customerId));
+        }
+      }
+      customerPoints[month % MAX_MONTHS] += points;
+    }
+
+    /** A copy of the points with the months that fall out by the given month dropped */
+    private Map<UUID, int[]> rolledOverTo(int month) {
+      int dropped = Math.max(0, Math.min(month - currentMonth, MAX_MONTHS));
+      Map<UUID, int[]> rolled = new HashMap<>(monthlyPoints.size() * 4 / 3 + 1);
+      for (Map.Entry<UUID, int[]> customer : monthlyPoints.entrySet()) {
+        int[] customerPoints = customer.getValue().clone();
+        for (int i = 1; i <= dropped; i++) {
+          customerPoints[(currentMonth + i) % MAX_MONTHS] = 0;
+        }
+        if (!isEmpty(customerPoints)) {
+          rolled.put(customer.getKey(), customerPoints);
+        }
+      }
+      return rolled;
+    }
+
+    private long windowPoints(int[] customerPoints, int months) {
+      long points = 0;
+      for (int month = currentMonth - months + 1; month <= currentMonth; month++) {
+        points += customerPoints[month % MAX_MONTHS];
+      }
+      return points;
+    }
+
+    /**
+     * Whether the ledger the board was loaded from held the write of the points already, its
+     * month counting at least as many transactions as the write left
+     */
+    private boolean loaded(Map<UUID, int[]> loadedCounts, LedgerPointsCount addition, int month) {
+      int[] counts = loadedCounts.get(addition.customerId());
+      return counts != null
+          && covers(month)
+          && counts[month % MAX_MONTHS] >= addition.transactionCount();
+    }
+
+    /** Adds a ledger row to a board being loaded for the given current month */
+    private static void addPoints(
+        Map<UUID, int[]> monthlyPoints,
+        Map<UUID, int[]> monthlyCounts,
+        int currentMonth,
+        LedgerPointsCount row) {
+      int month = monthIndex(row.rewardMonth());
+      if (month > currentMonth || month <= currentMonth - MAX_MONTHS) {
+        return;
+      }
+      int slot = month % MAX_MONTHS;
+      monthlyCounts.computeIfAbsent(row.customerId(), id -> new int[MAX_MONTHS])[slot] =
+          row.transactionCount();
+      if (row.points() != 0) {
+        monthlyPoints.computeIfAbsent(row.customerId(), id -> new int[MAX_MONTHS])[slot] +=
+            row.points();
+      }
+    }
+
+    private static boolean isEmpty(int[] customerPoints) {
+      for (int points : customerPoints) {
+        if (points != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NavigableSet<Score>[] newRankings() {
+      return new NavigableSet[MAX_MONTHS];
+    }
+  }
+
+  /** Ranking entry, most points first then by customer id */
+  private record Score(long points, UUID customerId) implements Comparable<Score> {
+    @Override
+    public int compareTo(Score other) {
+      int byPoints = Long.compare(other.points, points);
+      return byPoints != 0 ? byPoints : customerId.compareTo(other.customerId);
+    }
+  }
+}
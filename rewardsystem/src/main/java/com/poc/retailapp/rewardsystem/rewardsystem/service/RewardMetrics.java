@@ -0,0 +1,91 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Business metrics of the ingest and reward paths. Request latencies are timed on the controller
+ * with {@code @Timed}; everything here is published on {@code /actuator/prometheus}.
+ */
+@Component
+public class RewardMetrics {
+
+  private final Counter transactionsIngested;
+  private final Counter pointsAwarded;
+  private final Counter bulkRowsRejected;
+  private final Counter streamRowsRejected;
+  private final Counter duplicateTransactions;
+  private final DistributionSummary rewardQueryTransactions;
+  private final DistributionSummary bulkBatchSize;
+
+  public RewardMetrics(MeterRegistry meterRegistry) {
+    transactionsIngested =
+        Counter.builder("reward.transactions.ingested")
+            .description("Transactions written")
+            .register(meterRegistry);
+    pointsAwarded =
+        Counter.builder("reward.points.awarded")
+            .description("Points earned by the transactions written")
+            .register(meterRegistry);
+    bulkRowsRejected = rejectedCounter(meterRegistry, "bulk");
+    streamRowsRejected = rejectedCounter(meterRegistry, "stream");
+    duplicateTransactions =
+        Counter.builder("reward.transactions.duplicate")
+            .description("Transactions not written because their idempotency key was seen before")
+            .register(meterRegistry);
+    rewardQueryTransactions =
+        DistributionSummary.builder("reward.query.transactions")
+            .description("Transactions read to answer one rewards query")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    bulkBatchSize =
+        DistributionSummary.builder("reward.bulk.batch.size")
+            .description("Rows in one bulk request")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+  }
+
+  private static Counter rejectedCounter(MeterRegistry meterRegistry, String source) {
+    return Counter.builder("reward.bulk.rows.rejected")
+        .description("Bulk or streamed rows that were not written")
+        .tag("source", source)
+        .register(meterRegistry);
+  }
+
+  /**
+   * @param transactions written transactions
+   * @param points points they earned
+   */
+  public void transactionsIngested(int transactions, long points) {
+    transactionsIngested.increment(transactions);
+    pointsAwarded.increment(points);
+  }
+
+  /** @param rows rows of a bulk request that were rejected */
+  public void bulkRowsRejected(int rows) {
+    bulkRowsRejected.increment(rows);
+  }
+
+  /** @param rows rows of a streamed upload that were rejected */
+  public void streamRowsRejected(long rows) {
+    streamRowsRejected.increment(rows);
+  }
+
+  /** @param transactions transactions skipped as repeats of an earlier idempotency key */
+  public void duplicateTransactions(int transactions) {
+    duplicateTransactions.increment(transactions);
+  }
+
+  /** @param transactions transactions read by one rewards query */
+  public void rewardQuery(int transactions) {
+    rewardQueryTransactions.record(transactions);
+  }
+
+  /** @param rows rows in one bulk request */
+  public void bulkBatch(int rows) {
+    bulkBatchSize.record(rows);
+  }
+}
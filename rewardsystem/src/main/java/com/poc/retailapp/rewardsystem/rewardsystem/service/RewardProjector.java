@@ -0,0 +1,334 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.ProjectionStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.ProjectionCheckpoint;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RewardLedger;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerTransactionSummary;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.ProjectionCheckpointRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the reward ledger up to date from the {@link TransactionEventLog}. A background thread
+ * follows the log and applies each batch of events in one database transaction together with the
+ * checkpoint, the offset it has read up to, so a restart carries on where it stopped without
+ * counting anything twice. The ledger lags the log by the time a batch takes. Only settled events
+ * are read, and those the log recorded as rolled back after they were appended are skipped.
+ *
+ * <p>{@link #rebuild()} scores the whole log again with the current rules and swaps the ledger
+ * for the result in one transaction, reading nothing but the log; run it after the point tiers
+ * change. The first time the projector starts, transactions already in the database are copied
+ * into an empty log so a later rebuild covers them; their points are in the ledger already and are
+ * not applied again.
+ *
+ * <p>On startup, the events past the checkpoint may have been appended by a process that died
+ * before their transaction completed. Those whose transaction is not in the transaction table are
+ * recorded in the log as rolled back, once, before anything is read.
+ */
+@Component
+@ConditionalOnProperty(name = "reward.event-log.enabled", havingValue = "true")
+@Slf4j
+public class RewardProjector {
+
+  /** Name of the checkpoint row */
+  static final String CHECKPOINT = "reward-ledger";
+
+  /** Ledger rows written between flushes during a rebuild */
+  private static final int REBUILD_FLUSH_SIZE = 1000;
+
+  @Autowired private TransactionEventLog transactionEventLog;
+
+  @Autowired private RewardService rewardService;
+
+  @Autowired private PointsCalculator pointsCalculator;
+
+  @Autowired private RewardCache rewardCache;
+
+  @Autowired private RewardLeaderboard rewardLeaderboard;
+
+  @Autowired(required = false)
+  private TransactionColumnStore transactionColumnStore;
+
+  @Autowired private ProjectionCheckpointRepository projectionCheckpointRepository;
+
+  @Autowired private RewardLedgerRepository rewardLedgerRepository;
+
+  @Autowired private TransactionRepository transactionRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  private final int batchSize;
+
+  private final Duration pollInterval;
+
+  /** Held while a batch or a rebuild is written, so the two never interleave */
+  private final Lock lock = new ReentrantLock();
+
+  /** Offset of the first event not yet in the ledger */
+  private volatile long position;
+
+  private volatile boolean running;
+
+  private Thread thread;
+
+  public RewardProjector(
+      @Value("${reward.event-log.projector.batch-size:1000}") int batchSize,
+      @Value("${reward.event-log.projector.poll-interval:1s}") Duration pollInterval) {
+    this.batchSize = batchSize;
+    this.pollInterval = pollInterval;
+  }
+
+  /** Reads the checkpoint, seeding the log on first use, and starts following the log */
+  @PostConstruct
+  public void start() {
+    ProjectionCheckpoint checkpoint =
+        projectionCheckpointRepository.findById(CHECKPOINT).orElse(null);
+    if (checkpoint != null) {
+      position = checkpoint.getPosition();
+      settleFrom(position);
+    } else if (transactionEventLog.endOffset() == 0) {
+      seedLog();
+    } else {
+      // a log without a checkpoint belongs to a ledger that is gone, build it from the log
+      settleFrom(0);
+      rebuild();
+    }
+    running = true;
+    thread = Thread.ofPlatform().name("reward-projector").daemon().start(this::run);
+    log.info(
+        "Reward projector started at offset {} of {}", position, transactionEventLog.endOffset());
+  }
+
+  /** Stops following the log, a batch being written is finished first */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(pollInterval.toMillis() + 5000);
+    }
+  }
+
+  /**
+   * Applies the next batch of events from the log, if any
+   * @return the number of events applied
+   */
+  public int projectBatch() {
+    lock.lock();
+    try {
+      int available = (int) Math.min(batchSize, transactionEventLog.settledOffset() - position);
+      if (available <= 0) {
+        return 0;
+      }
+      List<TransactionEvent> events = transactionEventLog.read(position, available);
+      long from = position;
+      long next = position + events.size();
+      transactionTemplate.executeWithoutResult(
+          status -> {
+            rewardService.applyTransactionEvents(committed(from, events));
+            projectionCheckpointRepository.save(new ProjectionCheckpoint(CHECKPOINT, next));
+          });
+      position = next;
+      return events.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Replaces the reward ledger with the whole event log scored with the current rules. Reports
+   * keep reading the old ledger until the new one commits.
+   */
+  public void rebuild() {
+    lock.lock();
+    try {
+      long started = System.nanoTime();
+      long end = transactionEventLog.settledOffset();
+      LedgerTotals totals = new LedgerTotals();
+      for (long offset = 0; offset < end; ) {
+        List<TransactionEvent> events =
+            transactionEventLog.read(offset, (int) Math.min(batchSize, end - offset));
+        List<TransactionEvent> committed = committed(offset, events);
+        offset += events.size();
+        for (TransactionEvent event : committed) {
+          totals.add(
+              event.customerId(),
+              event.transactionDate(),
+              pointsCalculator.calculate(event.amountCents()),
+              BigDecimal.valueOf(event.amountCents(), 2));
+        }
+      }
+      transactionTemplate.executeWithoutResult(
+          status -> {
+            rewardLedgerRepository.deleteAllInBatch();
+            List<RewardLedger> rows = new ArrayList<>(REBUILD_FLUSH_SIZE);
+            totals.forEach(
+                (customerId, rewardMonth, points, transactionCount, amount) -> {
+                  RewardLedger ledger = new RewardLedger();
+                  ledger.setCustomerId(customerId);
+                  ledger.setRewardMonth(rewardMonth);
+                  ledger.setPoints(points);
+                  ledger.setTransactionCount(transactionCount);
+                  ledger.setTotalAmount(amount);
+                  rows.add(ledger);
+                  if (rows.size() == REBUILD_FLUSH_SIZE) {
+                    saveAndClear(rows);
+                  }
+                });
+            saveAndClear(rows);
+            projectionCheckpointRepository.save(new ProjectionCheckpoint(CHECKPOINT, end));
+          });
+      position = end;
+      rewardCache.evictAll();
+      if (transactionColumnStore != null) {
+        transactionColumnStore.clear();
+      }
+      rewardLeaderboard.reload();
+      log.info(
+          "Rebuilt {} ledger months from {} events in {} ms",
+          totals.size(),
+          end,
+          Duration.ofNanos(System.nanoTime() - started).toMillis());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return how far the ledger is behind the log
+   */
+  public ProjectionStatus status() {
+    long end = transactionEventLog.endOffset();
+    long applied = position;
+    return new ProjectionStatus(
+        end, applied, end - applied, transactionEventLog.segmentCount(), running);
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        if (transactionEventLog.awaitEvents(position, pollInterval)) {
+          projectBatch();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.error("Projecting events from offset {} failed, retrying", position, e);
+        try {
+          Thread.sleep(pollInterval);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  /** Drops the events the log recorded as rolled back */
+  private List<TransactionEvent> committed(long fromOffset, List<TransactionEvent> events) {
+    List<TransactionEvent> committed = new ArrayList<>(events.size());
+    for (int i = 0; i < events.size(); i++) {
+      if (!transactionEventLog.isRolledBack(fromOffset + i)) {
+        committed.add(events.get(i));
+      }
+    }
+    if (committed.size() < events.size()) {
+      log.info(
+          "Skipped {} events of transactions that were rolled back",
+          events.size() - committed.size());
+    }
+    return committed;
+  }
+
+  /**
+   * Records the events from the offset to the end of the log whose transaction is not in the
+   * transaction table as rolled back, settling what a process that died left open
+   */
+  private void settleFrom(long fromOffset) {
+    long end = transactionEventLog.endOffset();
+    int rolledBack = 0;
+    for (long offset = fromOffset; offset < end; ) {
+      List<TransactionEvent> events =
+          transactionEventLog.read(offset, (int) Math.min(batchSize, end - offset));
+      Set<UUID> ids =
+          new HashSet<>(
+              transactionRepository.findIdsByIdIn(
+                  events.stream().map(TransactionEvent::transactionId).toList()));
+      for (int i = 0; i < events.size(); i++) {
+        if (!ids.contains(events.get(i).transactionId())
+            && !transactionEventLog.isRolledBack(offset + i)) {
+          transactionEventLog.markRolledBack(offset + i, 1);
+          rolledBack++;
+        }
+      }
+      offset += events.size();
+    }
+    if (rolledBack > 0) {
+      log.info("Recorded {} events past offset {} as rolled back", rolledBack, fromOffset);
+    }
+  }
+
+  /** Copies the transactions in the database into the empty log and marks them applied */
+  private void seedLog() {
+    long end =
+        transactionTemplate.execute(
+            status -> {
+              List<TransactionEvent> events = new ArrayList<>(batchSize);
+              try (Stream<CustomerTransactionSummary> rows =
+                  transactionRepository.streamAllSummaries()) {
+                rows.forEach(
+                    row -> {
+                      events.add(
+                          new TransactionEvent(
+                              row.id(),
+                              row.customerId(),
+                              PointsCalculator.toCents(row.amount()),
+                              row.transactionDate()));
+                      if (events.size() == batchSize) {
+                        transactionEventLog.append(events);
+                        events.clear();
+                      }
+                    });
+              }
+              transactionEventLog.append(events);
+              long seeded = transactionEventLog.endOffset();
+              projectionCheckpointRepository.save(new ProjectionCheckpoint(CHECKPOINT, seeded));
+              return seeded;
+            });
+    position = end;
+    if (end > 0) {
+      log.info("Seeded the transaction event log with {} existing transactions", end);
+    }
+  }
+
+  private void saveAndClear(List<RewardLedger> rows) {
+    rewardLedgerRepository.saveAll(rows);
+    entityManager.flush();
+    entityManager.clear();
+    rows.clear();
+  }
+}
@@ -1,111 +1,480 @@
 package com.poc.retailapp.rewardsystem.rewardsystem.service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
-import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransactionResult;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerPointsSummary;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardsBatchResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.RewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.StreamedTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionStreamRejection;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionStreamResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
 import com.poc.retailapp.rewardsystem.rewardsystem.entity.Transaction;
 import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerDetails;
 import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.LedgerPoints;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionKey;
 import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary;
 
-import jakarta.transaction.Transactional;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
 @Slf4j
 public class RewardService {
 
+  /** Time of day given to bulk and streamed transactions, which only carry a date */
+  private static final LocalTime BULK_TRANSACTION_TIME = LocalTime.of(10, 0);
+
+  /** Rejected lines listed in a stream response, the rest are only counted */
+  private static final int MAX_REPORTED_REJECTIONS = 100;
+
+  private static final String INSERT_LEDGER_MONTH =
+      "insert into reward_ledger"
+          + " (id, customer_id, reward_month, points, transaction_count, total_amount)"
+          + " values (?, ?, ?, ?, ?, ?)";
+
+  /** SQL state of a unique constraint violation */
+  private static final String UNIQUE_VIOLATION = "23505";
+
   @Autowired private TransactionRepository transactionRepository;
 
   @Autowired private CustomerRepository customerRepository;
 
+  @Autowired private CustomerRegistry customerRegistry;
+
+  @Autowired private RewardLedgerRepository rewardLedgerRepository;
+
+  @Autowired private PointsCalculator pointsCalculator;
+
+  @Autowired private RewardCache rewardCache;
+
+  @Autowired private RewardMetrics rewardMetrics;
+
+  @Autowired private RewardLeaderboard rewardLeaderboard;
+
+  @Autowired private IdempotencyIndex idempotencyIndex;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  @Autowired private Clock clock;
+
+  /** Present when the event log is enabled, ledger writes are then left to the projector */
+  @Autowired(required = false)
+  private TransactionEventLog transactionEventLog;
+
+  /** Present when enabled, reports then read recent transactions from memory */
+  @Autowired(required = false)
+  private TransactionColumnStore transactionColumnStore;
+
+  /** Present when enabled, every write then adds the points it awards to the outbox */
+  @Autowired(required = false)
+  private PointsOutbox pointsOutbox;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Value("${reward.bulk.chunk-size:500}")
+  private int bulkChunkSize;
+
+  @Value("${reward.stream.customer-cache-size:10000}")
+  private int streamCustomerCacheSize;
+
   /**
    * Calculate reward points based on purchase amount
    * @param amount
    * @return
    */
   public int calculatePoints(BigDecimal amount) {
-    int points = 0;
-    int amountInt = amount.intValue(); // Discard the decimal part
+    return pointsCalculator.calculate(PointsCalculator.toCents(amount));
+  }
+
+  /**
+   * Calculate rewards and prepare report for a customer for given number of months
+   * @param customerId
+   * @param months
+   * @return
+   * @throws RewardServiceException
+   */
+  public CustomerRewardResponse getCustomerRewards(UUID customerId, int months)
+      throws RewardServiceException {
+    return getCustomerRewards(customerId, months, true);
+  }
 
-    if (amountInt > 100) {
-      points += (amountInt - 100) * 2;
-      amountInt = 100;
+  /**
+   * Calculate rewards for a customer for given number of calendar months, the current month of the
+   * clock included. The totals are read from the customer's {@link RewardWindows}, built from its
+   * ledger months with one query and then held in the {@link RewardCache}, so any number of months
+   * is one lookup. Only the details are read from the transactions, with one projection query or,
+   * with the {@link TransactionColumnStore} enabled, from memory. Reports are served from the
+   * cache until the customer's next write or the month turns.
+   * @param customerId
+   * @param months
+   * @param includeDetails whether to list every transaction of the window
+   * @return
+   * @throws RewardServiceException
+   */
+  public CustomerRewardResponse getCustomerRewards(
+      UUID customerId, int months, boolean includeDetails) throws RewardServiceException {
+    return rewardCache.get(
+        customerId,
+        months,
+        includeDetails,
+        () ->
+            shardRouter.onShardOf(
+                customerId, () -> loadCustomerRewards(customerId, months, includeDetails)));
+  }
+
+  /**
+   * The customers with the most points over the last calendar months, the current month included
+   * @param n
+   * @param months
+   * @return
+   */
+  public LeaderboardResponse getTopCustomers(int n, int months) {
+    return new LeaderboardResponse(months, rewardLeaderboard.top(n, months));
+  }
+
+  /**
+   * Points per calendar month of several customers, the current month included, read from the
+   * reward ledger with one grouped query per shard whatever the number of customers.
+   * @param customerIds repeated ids are answered once
+   * @param months
+   * @return the customers in the order asked, ids of unknown customers listed apart
+   */
+  public CustomerRewardsBatchResponse getCustomersRewards(List<UUID> customerIds, int months) {
+    LocalDate firstMonth = firstDay(months);
+    Set<UUID> requested = new LinkedHashSet<>(customerIds);
+    Map<UUID, CustomerDetails> known = customerRegistry.findAll(requested);
+
+    Map<UUID, CustomerPointsSummary> summaries = new LinkedHashMap<>();
+    List<UUID> unknownCustomerIds = new ArrayList<>();
+    for (UUID customerId : requested) {
+      if (known.containsKey(customerId)) {
+        summaries.put(customerId, new CustomerPointsSummary(customerId, 0, new int[months]));
+      } else {
+        unknownCustomerIds.add(customerId);
+      }
     }
-    if (amountInt > 50) {
-      points += (amountInt - 50);
+    List<UUID> summarized = new ArrayList<>(summaries.keySet());
+    List<List<Integer>> byShard = shardRouter.partition(summarized, customerId -> customerId);
+    for (int shard = 0; shard < byShard.size(); shard++) {
+      if (byShard.get(shard).isEmpty()) {
+        continue;
+      }
+      List<UUID> shardCustomerIds = byShard.get(shard).stream().map(summarized::get).toList();
+      List<LedgerPoints> rows =
+          shardRouter.onShard(
+              shard,
+              () ->
+                  rewardLedgerRepository.sumPointsByCustomerIdInFromMonth(
+                      shardCustomerIds, firstMonth));
+      for (LedgerPoints row : rows) {
+        int month = (int) ChronoUnit.MONTHS.between(firstMonth, row.rewardMonth());
+        if (month >= months) {
+          // dated after the current month
+          continue;
+        }
+        CustomerPointsSummary summary = summaries.get(row.customerId());
+        summary.getMonthlyPoints()[month] += row.points();
+        summary.setTotalPoints(summary.getTotalPoints() + row.points());
+      }
     }
-    return points;
+    return new CustomerRewardsBatchResponse(
+        firstMonth, months, new ArrayList<>(summaries.values()), unknownCustomerIds);
   }
 
   /**
-   * Calculate rewards and prepare report for a customer for given number of months
+   * Calculate rewards for a customer for given number of months, listing one page of its
+   * transactions. Pages are ordered by transaction date and id and chained with the returned
+   * cursor, so every page is one index range scan however deep it is. The totals still cover the
+   * whole window.
    * @param customerId
    * @param months
+   * @param cursor {@code nextCursor} of the previous page, null for the first page
+   * @param pageSize
    * @return
- * @throws RewardServiceException 
+   * @throws RewardServiceException when the customer does not exist or the cursor is invalid
    */
-  public CustomerRewardResponse getCustomerRewards(UUID customerId, int months)  {
-    Customer customer=null;
-    try {
-        customer = customerRepository
-            .findById(customerId)
-            .orElseThrow(() -> new RewardServiceException("Invalid Id. Customer not found"));
-    } catch (RewardServiceException e) {
-      
-        e.printStackTrace();
-    }
-   
-    LocalDateTime monthsAgo = LocalDateTime.now().minusMonths(months);
-    List<Transaction> transactions =
-        transactionRepository.findByCustomerIdAndTransactionDateAfter(customerId, monthsAgo);
-
-    int totalPoints =
-        transactions.stream()
-            .mapToInt(transaction -> calculatePoints(transaction.getAmount()))
-            .sum();
+  public CustomerRewardResponse getCustomerRewardsPage(
+      UUID customerId, int months, String cursor, int pageSize) throws RewardServiceException {
+    CustomerRewardResponse totals = getCustomerRewards(customerId, months, false);
+    LocalDateTime monthsAgo = justBefore(firstDay(months));
 
-    CustomerResponse customerResponse = new CustomerResponse();
-    customerResponse.setId(customer.getId());
-    customerResponse.setName(customer.getName());
-    customerResponse.setEmail(customer.getEmail());
-    customerResponse.setPhoneNumber(customer.getPhoneNumber());
-
-    List<RewardResponse> rewardResponses =
-        transactions.stream()
-            .map(
-                transaction -> {
-                  RewardResponse rewardResponse = new RewardResponse();
-                  rewardResponse.setTransactionId(transaction.getId());
-                  rewardResponse.setTransactionAmount(transaction.getAmount());
-                  rewardResponse.setPoints(calculatePoints(transaction.getAmount()));
-                  rewardResponse.setAwardedDate(transaction.getTransactionDate());
-                  return rewardResponse;
-                })
-            .toList();
+    // one extra row tells whether another page follows
+    Limit limit = Limit.of(pageSize + 1);
+    PageCursor after = cursor == null ? null : decodeCursor(cursor);
+    List<TransactionSummary> transactions =
+        shardRouter.onShardOf(
+            customerId,
+            () ->
+                after == null
+                    ? transactionRepository.findSummaryPage(customerId, monthsAgo, limit)
+                    : transactionRepository.findSummaryPageAfter(
+                        customerId, monthsAgo, after.transactionDate(), after.id(), limit));
+    rewardMetrics.rewardQuery(transactions.size());
 
+    int pageLength = Math.min(pageSize, transactions.size());
+    List<RewardResponse> rewardResponses = new ArrayList<>(pageLength);
+    for (int i = 0; i < pageLength; i++) {
+      rewardResponses.add(toRewardResponse(transactions.get(i)));
+    }
+
+    // the totals may be shared through the cache, so the page gets its own response
     CustomerRewardResponse response = new CustomerRewardResponse();
-    response.setCustomer(customerResponse);
-    response.setTotalPoints(totalPoints);
+    response.setCustomer(totals.getCustomer());
+    response.setTotalPoints(totals.getTotalPoints());
+    response.setMonthly(totals.getMonthly());
     response.setRewards(rewardResponses);
-   
+    if (transactions.size() > pageSize) {
+      response.setNextCursor(encodeCursor(transactions.get(pageSize - 1)));
+    }
     return response;
   }
 
-  
+  /**
+   * Calculate rewards for a customer for given number of months and write them as JSON while the
+   * transactions are read, without holding the report in memory. The customer is looked up right
+   * away; the returned body reads the window in one transaction when it is written.
+   * @param customerId
+   * @param months
+   * @return
+   * @throws RewardServiceException
+   */
+  public StreamingResponseBody streamCustomerRewards(UUID customerId, int months)
+      throws RewardServiceException {
+    CustomerResponse customerResponse = toCustomerResponse(findCustomer(customerId));
+    return outputStream ->
+        shardRouter.onShardOf(
+            customerId,
+            () ->
+                transactionTemplate.execute(
+                    status -> {
+                      try (JsonGenerator generator =
+                          objectMapper.getFactory().createGenerator(outputStream)) {
+                        writeCustomerRewards(generator, customerResponse, months);
+                      } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                      }
+                      return null;
+                    }));
+  }
+
+  private void writeCustomerRewards(
+      JsonGenerator generator, CustomerResponse customerResponse, int months) throws IOException {
+    UUID customerId = customerResponse.getId();
+    RewardWindows windows = rewardWindows(customerId);
+
+    generator.writeStartObject();
+    generator.writePOJOField("customer", customerResponse);
+    generator.writeArrayFieldStart("rewards");
+    int transactionsRead = 0;
+    try (Stream<TransactionSummary> transactions =
+        transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(
+            customerId, justBefore(windows.firstDay(months)))) {
+      for (TransactionSummary transaction : (Iterable<TransactionSummary>) transactions::iterator) {
+        generator.writePOJO(toRewardResponse(transaction));
+        transactionsRead++;
+      }
+    }
+    generator.writeEndArray();
+    generator.writeNumberField("totalPoints", windows.points(months));
+    generator.writePOJOField("monthly", windows.monthly(months));
+    generator.writeEndObject();
+    rewardMetrics.rewardQuery(transactionsRead);
+  }
+
+  private CustomerRewardResponse loadCustomerRewards(
+      UUID customerId, int months, boolean includeDetails) throws RewardServiceException {
+    CustomerDetails customer = findCustomer(customerId);
+    if (!includeDetails) {
+      // no transaction is read, once the windows are held nothing is
+      RewardWindows windows = rewardWindows(customerId);
+      rewardMetrics.rewardQuery(0);
+      return toCustomerRewardResponse(customer, windows, months, null);
+    }
+    if (transactionColumnStore != null && months <= transactionColumnStore.months()) {
+      return loadCustomerRewardsFromColumns(customer, months);
+    }
+    // one connection for both queries, so a busy pool is waited for once
+    return transactionTemplate.execute(status -> readCustomerRewards(customer, months));
+  }
+
+  private CustomerRewardResponse readCustomerRewards(CustomerDetails customer, int months) {
+    RewardWindows windows = rewardWindows(customer.id());
+    List<TransactionSummary> transactions =
+        transactionRepository.findSummariesByCustomerIdAndTransactionDateAfter(
+            customer.id(), justBefore(windows.firstDay(months)));
+    rewardMetrics.rewardQuery(transactions.size());
+
+    List<RewardResponse> rewardResponses = new ArrayList<>(transactions.size());
+    for (TransactionSummary transaction : transactions) {
+      rewardResponses.add(toRewardResponse(transaction));
+    }
+    return toCustomerRewardResponse(customer, windows, months, rewardResponses);
+  }
+
+  /** Lists the window from the column store, no query is run once the customer is loaded */
+  private CustomerRewardResponse loadCustomerRewardsFromColumns(
+      CustomerDetails customer, int months) {
+    RewardWindows windows = rewardWindows(customer.id());
+    List<RewardResponse> rewardResponses = new ArrayList<>();
+    int listed =
+        transactionColumnStore.forEach(
+            customer.id(),
+            justBefore(windows.firstDay(months)),
+            (transactionId, amountCents, points, transactionDate) -> {
+              RewardResponse rewardResponse = new RewardResponse();
+              rewardResponse.setTransactionId(transactionId);
+              rewardResponse.setTransactionAmount(BigDecimal.valueOf(amountCents, 2));
+              rewardResponse.setPoints(points);
+              rewardResponse.setAwardedDate(transactionDate);
+              rewardResponses.add(rewardResponse);
+            });
+    rewardMetrics.rewardQuery(listed);
+    return toCustomerRewardResponse(customer, windows, months, rewardResponses);
+  }
+
+  /** The customer's ledger months, read with one query unless the cache holds them */
+  private RewardWindows rewardWindows(UUID customerId) {
+    return rewardCache.windows(
+        customerId,
+        currentMonth ->
+            new RewardWindows(
+                currentMonth,
+                rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(
+                    customerId, currentMonth.minusMonths(RewardWindows.MAX_MONTHS).atDay(1))));
+  }
+
+  private static CustomerRewardResponse toCustomerRewardResponse(
+      CustomerDetails customer,
+      RewardWindows windows,
+      int months,
+      List<RewardResponse> rewardResponses) {
+    CustomerRewardResponse response = new CustomerRewardResponse();
+    response.setCustomer(toCustomerResponse(customer));
+    response.setTotalPoints(windows.points(months));
+    response.setMonthly(windows.monthly(months));
+    response.setRewards(rewardResponses);
+    return response;
+  }
+
+  /**
+   * @param months
+   * @return the first day of a window of calendar months ending in the current month
+   */
+  private LocalDate firstDay(int months) {
+    return YearMonth.now(clock).minusMonths(months - 1).atDay(1);
+  }
+
+  /**
+   * The exclusive lower bound of a window starting on the given day, transaction dates are stored
+   * to the microsecond
+   */
+  private static LocalDateTime justBefore(LocalDate firstDay) {
+    return firstDay.atStartOfDay().minus(1, ChronoUnit.MICROS);
+  }
+
+  private CustomerDetails findCustomer(UUID customerId) throws RewardServiceException {
+    return customerRegistry
+        .find(customerId)
+        .orElseThrow(() -> new RewardServiceException("Invalid Id. Customer not found"));
+  }
+
+  private static CustomerResponse toCustomerResponse(CustomerDetails customer) {
+    CustomerResponse customerResponse = new CustomerResponse();
+    customerResponse.setId(customer.id());
+    customerResponse.setName(customer.name());
+    customerResponse.setEmail(customer.email());
+    customerResponse.setPhoneNumber(customer.phoneNumber());
+    return customerResponse;
+  }
+
+  private RewardResponse toRewardResponse(TransactionSummary transaction) {
+    RewardResponse rewardResponse = new RewardResponse();
+    rewardResponse.setTransactionId(transaction.id());
+    rewardResponse.setTransactionAmount(transaction.amount());
+    rewardResponse.setPoints(calculatePoints(transaction.amount()));
+    rewardResponse.setAwardedDate(transaction.transactionDate());
+    return rewardResponse;
+  }
+
+  /** Opaque page cursor holding the date and id of the last transaction of a page */
+  private static String encodeCursor(TransactionSummary last) {
+    String cursor = last.transactionDate() + "|" + last.id();
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static PageCursor decodeCursor(String cursor) throws RewardServiceException {
+    try {
+      String[] parts =
+          new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Malformed cursor " + cursor);
+      }
+      return new PageCursor(LocalDateTime.parse(parts[0]), UUID.fromString(parts[1]));
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new RewardServiceException("Invalid cursor", e);
+    }
+  }
 
   /**
    * Handle and process single transaction for a customer Id
@@ -113,26 +482,61 @@ public class RewardService {
    * @param amount
    * @param transactionDate
    */
-  @Transactional
   public void handleTransaction(UUID customerId, BigDecimal amount, LocalDateTime transactionDate) {
+    handleTransaction(customerId, amount, transactionDate, null);
+  }
+
+  /**
+   * Handle and process single transaction for a customer Id, once per idempotency key
+   * @param customerId
+   * @param amount
+   * @param transactionDate
+   * @param idempotencyKey optional, null to always write
+   * @return false when a transaction with the same key was already written for the customer,
+   *     including by a concurrent request that won the insert race on the key
+   */
+  public boolean handleTransaction(
+      UUID customerId, BigDecimal amount, LocalDateTime transactionDate, String idempotencyKey) {
     if (amount.compareTo(BigDecimal.ZERO) <= 0) {
       throw new IllegalArgumentException("Transaction amount must be greater than zero");
     }
+    try {
+      // one database transaction on the customer's shard
+      return shardRouter.onShardOf(
+          customerId,
+          () ->
+              transactionTemplate.execute(
+                  status -> writeTransaction(customerId, amount, transactionDate, idempotencyKey)));
+    } catch (DataIntegrityViolationException e) {
+      // the key check cannot see a concurrent request's uncommitted row, ask the index it hit
+      if (idempotencyKey == null
+          || shardRouter
+              .onShardOf(
+                  customerId,
+                  () -> transactionRepository.findKeys(customerId, List.of(idempotencyKey)))
+              .isEmpty()) {
+        throw e;
+      }
+      rewardMetrics.duplicateTransactions(1);
+      return false;
+    }
+  }
 
-    Customer customer =
-        customerRepository
-            .findById(customerId)
-            .orElseThrow(() -> new RuntimeException("Customer not found"));
-
-
-    Transaction transaction = new Transaction();
-    transaction.setId(UUID.randomUUID());
-    transaction.setCustomer(customer);
-    transaction.setAmount(amount);
-    transaction.setTransactionDate(transactionDate);
+  private boolean writeTransaction(
+      UUID customerId, BigDecimal amount, LocalDateTime transactionDate, String idempotencyKey) {
+    if (!customerRegistry.exists(customerId)) {
+      throw new RuntimeException("Customer not found");
+    }
 
-    // Save the transaction
-    transactionRepository.save(transaction);
+    if (idempotencyKey != null
+        && !idempotencyIndex.findExisting(customerId, List.of(idempotencyKey)).isEmpty()) {
+      rewardMetrics.duplicateTransactions(1);
+      return false;
+    }
+    // existence is verified above, a reference is enough to set the foreign key
+    recordTransaction(
+        customerRepository.getReferenceById(customerId), amount, transactionDate, idempotencyKey);
+    return true;
   }
 
   /**
@@ -143,49 +547,623 @@ public class RewardService {
    */
   public void handleTransaction(
       Customer customer, BigDecimal amount, LocalDateTime transactionDate) {
+    shardRouter.onShardOf(
+        customer.getId(),
+        () ->
+            transactionTemplate.execute(
+                status -> {
+                  recordTransaction(customer, amount, transactionDate, null);
+                  return null;
+                }));
+  }
+
+  /**
+   * Adds the transaction events to the reward ledger, scored with the current rules. Called by
+   * the {@link RewardProjector}, must run inside a transaction.
+   * @param events
+   */
+  public void applyTransactionEvents(List<TransactionEvent> events) {
+    LedgerTotals totals = new LedgerTotals();
+    for (TransactionEvent event : events) {
+      totals.add(
+          event.customerId(),
+          event.transactionDate(),
+          pointsCalculator.calculate(event.amountCents()),
+          BigDecimal.valueOf(event.amountCents(), 2));
+    }
+    totals.forEach(this::addToLedger);
+  }
+
+  /**
+   * Process multiple transactions for a customer. Rows are written in chunks, each chunk in its
+   * own database transaction with batched inserts. When a chunk fails it is retried row by row so
+   * only the offending rows are rejected; every row gets a result in the response. Rows repeating
+   * an idempotency key already written for the customer, or used earlier in the request, are
+   * reported as duplicates of that transaction and not written.
+   * @param customerId
+   * @param transactionRequests
+   * @return
+   */
+  public BulkTransactionResponse handleBulkTransactions(
+      UUID customerId, List<BulkSubTransaction> transactionRequests) {
+    return handleBulkTransactions(customerId, transactionRequests, processed -> {});
+  }
+
+  /**
+   * Process multiple transactions for a customer, reporting progress after every chunk
+   * @param customerId
+   * @param transactionRequests
+   * @param progress told how many rows have been handled so far
+   * @return
+   */
+  public BulkTransactionResponse handleBulkTransactions(
+      UUID customerId, List<BulkSubTransaction> transactionRequests, IntConsumer progress) {
+    return shardRouter.onShardOf(
+        customerId, () -> writeBulkTransactions(customerId, transactionRequests, progress));
+  }
+
+  private BulkTransactionResponse writeBulkTransactions(
+      UUID customerId, List<BulkSubTransaction> transactionRequests, IntConsumer progress) {
+    if (!customerRegistry.exists(customerId)) {
+      throw new RuntimeException("Customer not found");
+    }
+    Customer customer = customerRepository.getReferenceById(customerId);
+
+    int chunkSize = Math.max(1, bulkChunkSize);
+    List<BulkSubTransactionResult> results = new ArrayList<>(transactionRequests.size());
+    List<Transaction> chunk = new ArrayList<>(chunkSize);
+    List<BulkSubTransactionResult> chunkResults = new ArrayList<>(chunkSize);
+    Map<String, UUID> requestKeys = new HashMap<>();
+    for (int index = 0; index < transactionRequests.size(); index++) {
+      BulkSubTransaction transactionRequest = transactionRequests.get(index);
+      BulkSubTransactionResult result = new BulkSubTransactionResult(index);
+      results.add(result);
+
+      String invalidReason = validate(transactionRequest);
+      if (invalidReason != null) {
+        result.reject(invalidReason);
+        continue;
+      }
+      Transaction transaction =
+          newTransaction(
+              customer,
+              transactionRequest.getAmount(),
+              transactionRequest.getTransactionDate().atTime(BULK_TRANSACTION_TIME));
+      String idempotencyKey = transactionRequest.getIdempotencyKey();
+      if (idempotencyKey != null) {
+        UUID earlier = requestKeys.putIfAbsent(idempotencyKey, transaction.getId());
+        if (earlier != null) {
+          result.duplicate(earlier);
+          continue;
+        }
+        transaction.setIdempotencyKey(idempotencyKey);
+      }
+      chunk.add(transaction);
+      chunkResults.add(result);
+      if (chunk.size() == chunkSize) {
+        writeChunk(chunk, chunkResults);
+        chunk.clear();
+        chunkResults.clear();
+        progress.accept(index + 1);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      writeChunk(chunk, chunkResults);
+    }
+    progress.accept(transactionRequests.size());
+
+    BulkTransactionResponse response = new BulkTransactionResponse();
+    response.setCustomerId(customerId);
+    response.setResults(results);
+    for (BulkSubTransactionResult result : results) {
+      switch (result.getStatus()) {
+        case ACCEPTED -> response.setAcceptedCount(response.getAcceptedCount() + 1);
+        case DUPLICATE -> response.setDuplicateCount(response.getDuplicateCount() + 1);
+        default -> response.setRejectedCount(response.getRejectedCount() + 1);
+      }
+    }
+    rewardMetrics.bulkBatch(results.size());
+    if (response.getDuplicateCount() > 0) {
+      rewardMetrics.duplicateTransactions(response.getDuplicateCount());
+    }
+    if (response.getRejectedCount() > 0) {
+      rewardMetrics.bulkRowsRejected(response.getRejectedCount());
+      log.warn(
+          "Bulk request for customer {} rejected {} of {} transactions",
+          customerId,
+          response.getRejectedCount(),
+          results.size());
+    }
+    return response;
+  }
+
+  /**
+   * Writes single transactions of any customers queued by the {@link TransactionWriteBuffer} in
+   * one database transaction, falling back row by row when it fails. The customers were checked
+   * when the transactions were queued. A key repeated within the group is a duplicate of its first
+   * row.
+   * @param transactions
+   * @return the outcome of each transaction, in order
+   * @throws CannotCreateTransactionException when no connection could be had, nothing is written
+   */
+  public List<BulkSubTransactionResult> handleBufferedTransactions(
+      List<TransactionWriteBuffer.Pending> transactions) {
+    List<BulkSubTransactionResult> results = new ArrayList<>(transactions.size());
+    List<Transaction> chunk = new ArrayList<>(transactions.size());
+    List<BulkSubTransactionResult> chunkResults = new ArrayList<>(transactions.size());
+    Map<UUID, Map<String, UUID>> groupKeys = new HashMap<>();
+    int duplicates = 0;
+    for (int index = 0; index < transactions.size(); index++) {
+      TransactionWriteBuffer.Pending pending = transactions.get(index);
+      BulkSubTransactionResult result = new BulkSubTransactionResult(index);
+      results.add(result);
+      Transaction transaction =
+          newTransaction(
+              customerRepository.getReferenceById(pending.customerId()),
+              pending.amount(),
+              pending.transactionDate());
+      if (pending.idempotencyKey() != null) {
+        UUID earlier =
+            groupKeys
+                .computeIfAbsent(pending.customerId(), id -> new HashMap<>())
+                .putIfAbsent(pending.idempotencyKey(), transaction.getId());
+        if (earlier != null) {
+          result.duplicate(earlier);
+          duplicates++;
+          continue;
+        }
+        transaction.setIdempotencyKey(pending.idempotencyKey());
+      }
+      chunk.add(transaction);
+      chunkResults.add(result);
+    }
+    writeChunk(chunk, chunkResults);
+    for (BulkSubTransactionResult result : chunkResults) {
+      if (result.getStatus() == BulkTransactionStatus.DUPLICATE) {
+        duplicates++;
+      }
+    }
+    if (duplicates > 0) {
+      rewardMetrics.duplicateTransactions(duplicates);
+    }
+    return results;
+  }
+
+  /**
+   * Process a newline-delimited JSON stream of transactions for any number of customers. Lines are
+   * parsed one at a time and written in chunks; the customers of a chunk are looked up with one
+   * query and remembered in a bounded cache, so memory use does not grow with the upload.
+   * @param reader
+   * @return
+   * @throws IOException
+   */
+  public TransactionStreamResponse handleTransactionStream(BufferedReader reader)
+      throws IOException {
+    ObjectReader lineReader = objectMapper.readerFor(StreamedTransaction.class);
+    int chunkSize = Math.max(1, bulkChunkSize);
+    Map<UUID, Boolean> knownCustomers = new BoundedCache<>(streamCustomerCacheSize);
+    List<StreamedTransaction> chunk = new ArrayList<>(chunkSize);
+    long[] chunkLines = new long[chunkSize];
+    TransactionStreamResponse response = new TransactionStreamResponse();
+
+    long lineNumber = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.isBlank()) {
+        continue;
+      }
+      StreamedTransaction transactionRequest;
+      try {
+        transactionRequest = lineReader.readValue(line);
+      } catch (JsonProcessingException e) {
+        reject(response, lineNumber, null, "Malformed transaction: " + e.getOriginalMessage());
+        continue;
+      }
+      String invalidReason =
+          transactionRequest.getCustomerId() == null
+              ? "Customer id is required"
+              : validate(transactionRequest.getAmount(), transactionRequest.getTransactionDate());
+      if (invalidReason != null) {
+        reject(response, lineNumber, transactionRequest.getCustomerId(), invalidReason);
+        continue;
+      }
+      chunkLines[chunk.size()] = lineNumber;
+      chunk.add(transactionRequest);
+      if (chunk.size() == chunkSize) {
+        writeStreamChunk(chunk, chunkLines, knownCustomers, response);
+        chunk.clear();
+      }
+    }
+    if (!chunk.isEmpty()) {
+      writeStreamChunk(chunk, chunkLines, knownCustomers, response);
+    }
+    response.setLinesRead(lineNumber);
+    if (response.getRejectedCount() > 0) {
+      rewardMetrics.streamRowsRejected(response.getRejectedCount());
+      log.warn(
+          "Transaction stream rejected {} of {} lines",
+          response.getRejectedCount(),
+          lineNumber);
+    }
+    return response;
+  }
+
+  private void writeStreamChunk(
+      List<StreamedTransaction> chunk,
+      long[] chunkLines,
+      Map<UUID, Boolean> knownCustomers,
+      TransactionStreamResponse response) {
+    Map<UUID, Boolean> chunkCustomers = new HashMap<>();
+    List<UUID> unresolved = new ArrayList<>();
+    for (StreamedTransaction transactionRequest : chunk) {
+      UUID customerId = transactionRequest.getCustomerId();
+      if (!chunkCustomers.containsKey(customerId)) {
+        Boolean known = knownCustomers.get(customerId);
+        chunkCustomers.put(customerId, known);
+        if (known == null) {
+          unresolved.add(customerId);
+        }
+      }
+    }
+    if (!unresolved.isEmpty()) {
+      Map<UUID, CustomerDetails> found = customerRegistry.findAll(unresolved);
+      for (UUID customerId : unresolved) {
+        chunkCustomers.put(customerId, found.containsKey(customerId));
+        knownCustomers.put(customerId, found.containsKey(customerId));
+      }
+    }
+
+    List<Transaction> transactions = new ArrayList<>(chunk.size());
+    List<Long> transactionLines = new ArrayList<>(chunk.size());
+    for (int i = 0; i < chunk.size(); i++) {
+      StreamedTransaction transactionRequest = chunk.get(i);
+      if (!chunkCustomers.get(transactionRequest.getCustomerId())) {
+        reject(response, chunkLines[i], transactionRequest.getCustomerId(), "Customer not found");
+        continue;
+      }
+      // existence is verified above, a reference is enough to set the foreign key
+      transactions.add(
+          newTransaction(
+              customerRepository.getReferenceById(transactionRequest.getCustomerId()),
+              transactionRequest.getAmount(),
+              transactionRequest.getTransactionDate().atTime(BULK_TRANSACTION_TIME)));
+      transactionLines.add(chunkLines[i]);
+    }
+    if (transactions.isEmpty()) {
+      return;
+    }
+
+    String[] failures = writeChunk(transactions);
+    for (int i = 0; i < transactions.size(); i++) {
+      if (failures[i] == null) {
+        response.setAcceptedCount(response.getAcceptedCount() + 1);
+      } else {
+        reject(
+            response,
+            transactionLines.get(i),
+            transactions.get(i).getCustomer().getId(),
+            failures[i]);
+      }
+    }
+  }
+
+  private static void reject(
+      TransactionStreamResponse response, long line, UUID customerId, String message) {
+    response.setRejectedCount(response.getRejectedCount() + 1);
+    if (response.getRejections().size() < MAX_REPORTED_REJECTIONS) {
+      response.getRejections().add(new TransactionStreamRejection(line, customerId, message));
+    }
+  }
+
+  private static String validate(BulkSubTransaction transactionRequest) {
+    String idempotencyKey = transactionRequest.getIdempotencyKey();
+    if (idempotencyKey != null
+        && (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyIndex.MAX_KEY_LENGTH)) {
+      return "Idempotency key must be 1 to " + IdempotencyIndex.MAX_KEY_LENGTH + " characters";
+    }
+    return validate(transactionRequest.getAmount(), transactionRequest.getTransactionDate());
+  }
+
+  private static String validate(BigDecimal amount, LocalDate transactionDate) {
+    if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+      return "Transaction amount must be greater than zero";
+    }
+    if (transactionDate == null) {
+      return "Transaction date is required";
+    }
+    return null;
+  }
+
+  /**
+   * Writes a chunk of bulk or buffered rows. Rows whose idempotency key is already written for
+   * their customer are reported as duplicates instead, including rows that lose an insert race on
+   * the key.
+   * @param transactions
+   * @param results
+   */
+  private void writeChunk(List<Transaction> transactions, List<BulkSubTransactionResult> results) {
+    Map<UUID, List<String>> keys = new HashMap<>();
+    for (Transaction transaction : transactions) {
+      if (transaction.getIdempotencyKey() != null) {
+        keys.computeIfAbsent(transaction.getCustomer().getId(), id -> new ArrayList<>())
+            .add(transaction.getIdempotencyKey());
+      }
+    }
+    Map<UUID, Map<String, UUID>> existing = new HashMap<>();
+    keys.forEach(
+        (customerId, customerKeys) ->
+            existing.put(customerId, idempotencyIndex.findExisting(customerId, customerKeys)));
+    List<Transaction> newTransactions = new ArrayList<>(transactions.size());
+    List<BulkSubTransactionResult> newResults = new ArrayList<>(transactions.size());
+    for (int i = 0; i < transactions.size(); i++) {
+      Transaction transaction = transactions.get(i);
+      String key = transaction.getIdempotencyKey();
+      UUID earlier =
+          key == null ? null : existing.get(transaction.getCustomer().getId()).get(key);
+      if (earlier != null) {
+        results.get(i).duplicate(earlier);
+      } else {
+        newTransactions.add(transactions.get(i));
+        newResults.add(results.get(i));
+      }
+    }
+    if (newTransactions.isEmpty()) {
+      return;
+    }
+
+    String[] failures = writeChunk(newTransactions);
+    for (int i = 0; i < newTransactions.size(); i++) {
+      Transaction transaction = newTransactions.get(i);
+      if (failures[i] == null) {
+        newResults.get(i).accept(transaction.getId());
+        continue;
+      }
+      // the filter misses keys written by other instances, ask the index the insert failed on
+      UUID customerId = transaction.getCustomer().getId();
+      List<TransactionKey> written =
+          transaction.getIdempotencyKey() == null
+              ? List.of()
+              : shardRouter.onShardOf(
+                  customerId,
+                  () ->
+                      transactionRepository.findKeys(
+                          customerId, List.of(transaction.getIdempotencyKey())));
+      if (written.isEmpty()) {
+        newResults.get(i).reject(failures[i]);
+      } else {
+        newResults.get(i).duplicate(written.get(0).transactionId());
+      }
+    }
+  }
+
+  /**
+   * Writes the transactions of each shard in one database transaction on that shard
+   * @param transactions
+   * @return the failure message of every row that could not be written, null for written rows
+   * @throws CannotCreateTransactionException when no connection could be had, shards written
+   *     before stay written
+   */
+  private String[] writeChunk(List<Transaction> transactions) {
+    if (shardRouter.shards() == 1) {
+      return writeShardChunk(transactions);
+    }
+    String[] failures = new String[transactions.size()];
+    List<List<Integer>> byShard =
+        shardRouter.partition(transactions, transaction -> transaction.getCustomer().getId());
+    for (int shard = 0; shard < byShard.size(); shard++) {
+      List<Integer> positions = byShard.get(shard);
+      if (positions.isEmpty()) {
+        continue;
+      }
+      List<Transaction> shardTransactions = positions.stream().map(transactions::get).toList();
+      String[] shardFailures = shardRouter.onShard(shard, () -> writeShardChunk(shardTransactions));
+      for (int i = 0; i < positions.size(); i++) {
+        failures[positions.get(i)] = shardFailures[i];
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Writes the transactions in one database transaction, retrying row by row if that fails
+   * @param transactions all of one shard
+   * @return the failure message of every row that could not be written, null for written rows
+   * @throws CannotCreateTransactionException when no connection could be had, the rows are not
+   *     retried since each retry would wait for the pool again
+   */
+  private String[] writeShardChunk(List<Transaction> transactions) {
+    String[] failures = new String[transactions.size()];
+    try {
+      int points = transactionTemplate.execute(status -> saveAll(transactions));
+      rewardMetrics.transactionsIngested(transactions.size(), points);
+    } catch (CannotCreateTransactionException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      log.warn(
+          "Chunk of {} transactions failed, retrying row by row", transactions.size(), e);
+      for (int i = 0; i < transactions.size(); i++) {
+        Transaction transaction = transactions.get(i);
+        try {
+          int points = transactionTemplate.execute(status -> saveAll(List.of(transaction)));
+          rewardMetrics.transactionsIngested(1, points);
+        } catch (RuntimeException rowFailure) {
+          failures[i] = rowFailure.getMessage();
+        }
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Saves the transactions and their ledger totals, or their events when the event log is
+   * enabled. Must run inside a transaction.
+   * @param transactions
+   * @return the points earned by the transactions
+   */
+  private int saveAll(List<Transaction> transactions) {
+    transactionRepository.saveAll(transactions);
+
+    LedgerTotals totals = new LedgerTotals();
+    List<TransactionEvent> events =
+        transactionEventLog != null ? new ArrayList<>(transactions.size()) : null;
+    List<TransactionColumnStore.Row> columnRows =
+        transactionColumnStore != null ? new ArrayList<>(transactions.size()) : null;
+    int points = 0;
+    for (Transaction transaction : transactions) {
+      if (transaction.getIdempotencyKey() != null) {
+        idempotencyIndex.add(transaction.getCustomer().getId(), transaction.getIdempotencyKey());
+      }
+      int transactionPoints = calculatePoints(transaction.getAmount());
+      if (events != null) {
+        events.add(TransactionEvent.of(transaction));
+      }
+      totals.add(
+          transaction.getCustomer().getId(),
+          transaction.getTransactionDate(),
+          transactionPoints,
+          transaction.getAmount());
+      if (columnRows != null) {
+        columnRows.add(toColumnRow(transaction, transactionPoints));
+      }
+      points += transactionPoints;
+    }
+    if (columnRows != null) {
+      transactionColumnStore.addAfterCommit(columnRows);
+    }
+    if (events != null) {
+      transactionEventLog.appendBeforeCommit(events);
+    } else {
+      totals.forEach(this::addToLedger);
+    }
+    if (pointsOutbox != null) {
+      pointsOutbox.add(totals);
+    }
+
+    // keep the persistence context from growing across chunks
+    entityManager.flush();
+    entityManager.clear();
+    return points;
+  }
+
+  private void recordTransaction(
+      Customer customer, BigDecimal amount, LocalDateTime transactionDate, String idempotencyKey) {
     if (amount.compareTo(BigDecimal.ZERO) <= 0) {
       throw new IllegalArgumentException("Transaction amount must be greater than zero");
     }
-   
 
+    // Save the transaction
+    Transaction transaction = newTransaction(customer, amount, transactionDate);
+    transaction.setIdempotencyKey(idempotencyKey);
+    transactionRepository.save(transaction);
+    if (idempotencyKey != null) {
+      idempotencyIndex.add(customer.getId(), idempotencyKey);
+    }
+    int points = calculatePoints(amount);
+    if (transactionColumnStore != null) {
+      transactionColumnStore.addAfterCommit(List.of(toColumnRow(transaction, points)));
+    }
+    if (transactionEventLog != null) {
+      transactionEventLog.appendBeforeCommit(List.of(TransactionEvent.of(transaction)));
+    } else {
+      addToLedger(customer.getId(), LedgerTotals.monthOf(transactionDate), points, 1, amount);
+    }
+    if (pointsOutbox != null) {
+      LedgerTotals totals = new LedgerTotals();
+      totals.add(customer.getId(), transactionDate, points, amount);
+      pointsOutbox.add(totals);
+    }
+    rewardMetrics.transactionsIngested(1, points);
+  }
+
+  private static TransactionColumnStore.Row toColumnRow(Transaction transaction, int points) {
+    return new TransactionColumnStore.Row(
+        transaction.getId(),
+        transaction.getCustomer().getId(),
+        transaction.getTransactionDate(),
+        PointsCalculator.toCents(transaction.getAmount()),
+        points);
+  }
+
+  private static Transaction newTransaction(
+      Customer customer, BigDecimal amount, LocalDateTime transactionDate) {
     Transaction transaction = new Transaction();
     transaction.setId(UUID.randomUUID());
     transaction.setCustomer(customer);
     transaction.setAmount(amount);
     transaction.setTransactionDate(transactionDate);
+    return transaction;
+  }
 
-    // Save the transaction
-    transactionRepository.save(transaction);
+  private void addToLedger(
+      UUID customerId, LocalDate rewardMonth, int points, int transactionCount, BigDecimal amount) {
+    rewardCache.evictAfterCommit(customerId);
+    int monthTransactions;
+    if (rewardLedgerRepository.addToMonth(
+            customerId, rewardMonth, points, transactionCount, amount)
+        != 0) {
+      monthTransactions = rewardLedgerRepository.findTransactionCount(customerId, rewardMonth);
+    } else if (insertLedgerMonth(customerId, rewardMonth, points, transactionCount, amount)) {
+      monthTransactions = transactionCount;
+    } else {
+      // a concurrent write inserted the month first, add to its row instead
+      if (rewardLedgerRepository.addToMonth(
+              customerId, rewardMonth, points, transactionCount, amount)
+          == 0) {
+        throw new IllegalStateException(
+            "Ledger month " + rewardMonth + " of customer " + customerId + " could not be written");
+      }
+      monthTransactions = rewardLedgerRepository.findTransactionCount(customerId, rewardMonth);
+    }
+    rewardLeaderboard.addAfterCommit(customerId, rewardMonth, points, monthTransactions);
   }
 
   /**
-   * Process multiple transactions for a customer
-   * @param customerId
-   * @param transactionRequests
-   * @return
+   * Inserts the first ledger row of a month under a savepoint, so that losing the race with a
+   * concurrent write rolls back the insert only and not the caller's transaction
+   * @return false when the customer already had a row for the month
    */
-  public BulkTransactionRequest handleBulkTransactions(
-      UUID customerId, List<BulkSubTransaction> transactionRequests) {
-    Customer customer =
-        customerRepository
-            .findById(customerId)
-            .orElseThrow(() -> new RuntimeException("Customer not found"));
-    BulkTransactionRequest response = new BulkTransactionRequest();
-    response.setCustomerId(customerId);
-    List<BulkSubTransaction> responseSubTransactions = new ArrayList<>();
-    transactionRequests.forEach(
-        transactionRequest -> {
-          try {
-            handleTransaction(
-                customer,
-                transactionRequest.getAmount(),
-                transactionRequest.getTransactionDate().atTime(LocalTime.of(10, 0)));
-            responseSubTransactions.add(transactionRequest);
-          } catch (Exception e) {
-           
-          }
-        });
-    response.setTransactions(responseSubTransactions);
-    return response;
+  boolean insertLedgerMonth(
+      UUID customerId, LocalDate rewardMonth, int points, int transactionCount, BigDecimal amount) {
+    return Boolean.TRUE.equals(
+        jdbcTemplate.execute(
+            (ConnectionCallback<Boolean>)
+                connection -> {
+                  Savepoint savepoint = connection.setSavepoint();
+                  try (PreparedStatement insert = connection.prepareStatement(INSERT_LEDGER_MONTH)) {
+                    insert.setObject(1, UUID.randomUUID());
+                    insert.setObject(2, customerId);
+                    insert.setObject(3, rewardMonth);
+                    insert.setInt(4, points);
+                    insert.setInt(5, transactionCount);
+                    insert.setBigDecimal(6, amount);
+                    insert.executeUpdate();
+                  } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                      return false;
+                    }
+                    throw e;
+                  }
+                  connection.releaseSavepoint(savepoint);
+                  return true;
+                }));
+  }
+
+  private record PageCursor(LocalDateTime transactionDate, UUID id) {}
+
+  /** Map that drops its least recently used entry beyond a fixed size */
+  private static class BoundedCache<K, V> extends LinkedHashMap<K, V> {
+    private final int maxSize;
+
+    private BoundedCache(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > maxSize;
+    }
   }
 }
@@ -0,0 +1,109 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.MonthlyReward;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RewardLedger;
+
+/**
+ * One customer's ledger over the last {@link #MAX_MONTHS} calendar months, the current month
+ * included, with running sums from the current month back. The totals of any window of 1 to
+ * {@link #MAX_MONTHS} months are then read at one index instead of summed. Built for one month
+ * of the clock and replaced once the month turns; ledger months after the current one are left
+ * out until the clock reaches them. Never changed once built.
+ */
+public final class RewardWindows {
+
+  /** Largest window, in months */
+  public static final int MAX_MONTHS = 12;
+
+  private final YearMonth currentMonth;
+
+  /** Index i holds the month i months before the current one */
+  private final int[] points = new int[MAX_MONTHS];
+
+  private final int[] transactions = new int[MAX_MONTHS];
+
+  private final BigDecimal[] amounts = new BigDecimal[MAX_MONTHS];
+
+  /** Index i holds the sum of the latest i months */
+  private final int[] pointSums = new int[MAX_MONTHS + 1];
+
+  private final int[] transactionSums = new int[MAX_MONTHS + 1];
+
+  /**
+   * @param currentMonth
+   * @param ledger the customer's ledger rows, rows outside the last {@link #MAX_MONTHS} months
+   *     are skipped
+   */
+  public RewardWindows(YearMonth currentMonth, List<RewardLedger> ledger) {
+    this.currentMonth = currentMonth;
+    for (RewardLedger month : ledger) {
+      int age =
+          (int) ChronoUnit.MONTHS.between(YearMonth.from(month.getRewardMonth()), currentMonth);
+      if (age < 0 || age >= MAX_MONTHS) {
+        continue;
+      }
+      points[age] += month.getPoints();
+      transactions[age] += month.getTransactionCount();
+      amounts[age] =
+          amounts[age] == null ? month.getTotalAmount() : amounts[age].add(month.getTotalAmount());
+    }
+    for (int age = 0; age < MAX_MONTHS; age++) {
+      pointSums[age + 1] = pointSums[age] + points[age];
+      transactionSums[age + 1] = transactionSums[age] + transactions[age];
+    }
+  }
+
+  /**
+   * @return the month of the clock the windows end in
+   */
+  public YearMonth currentMonth() {
+    return currentMonth;
+  }
+
+  /**
+   * @param months 1 to {@link #MAX_MONTHS}
+   * @return the first day of the window
+   */
+  public LocalDate firstDay(int months) {
+    return currentMonth.minusMonths(months - 1).atDay(1);
+  }
+
+  /**
+   * @param months 1 to {@link #MAX_MONTHS}
+   * @return
+   */
+  public int points(int months) {
+    return pointSums[months];
+  }
+
+  /**
+   * @param months 1 to {@link #MAX_MONTHS}
+   * @return
+   */
+  public int transactions(int months) {
+    return transactionSums[months];
+  }
+
+  /**
+   * @param months 1 to {@link #MAX_MONTHS}
+   * @return the months of the window with transactions, oldest first
+   */
+  public List<MonthlyReward> monthly(int months) {
+    List<MonthlyReward> monthly = new ArrayList<>(months);
+    for (int age = months - 1; age >= 0; age--) {
+      if (transactions[age] > 0) {
+        monthly.add(
+            new MonthlyReward(
+                currentMonth.minusMonths(age), points[age], transactions[age], amounts[age]));
+      }
+    }
+    return monthly;
+  }
+}
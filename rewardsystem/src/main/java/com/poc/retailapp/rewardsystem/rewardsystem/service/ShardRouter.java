@@ -0,0 +1,125 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes every customer to one of {@code reward.sharding.urls} databases by the hash of its id.
+ * A customer's row, transactions and ledger months all live on its shard, so ingesting for or
+ * reading one customer touches one database. Work is bound to a shard for the calling thread with
+ * {@link #onShard}, and the connections it opens come from that shard's pool; work not bound to a
+ * shard goes to shard 0. Without sharding there is one shard and binding costs nothing.
+ *
+ * <p>A database transaction stays on the shard it started on: binding another shard while one is
+ * open is refused rather than silently reading the wrong database. The number of shards fixes
+ * where every customer lives, changing it needs the data moved first.
+ */
+@Component
+public class ShardRouter {
+
+  private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+  private final int shards;
+
+  public ShardRouter(
+      @Value("${reward.sharding.enabled:false}") boolean enabled,
+      @Value("${reward.sharding.urls:}") String[] urls) {
+    if (enabled && urls.length == 0) {
+      throw new IllegalArgumentException("reward.sharding.urls must list at least one database");
+    }
+    this.shards = enabled ? urls.length : 1;
+  }
+
+  /**
+   * @return the shard bound to the calling thread, null when none is
+   */
+  public static Integer currentShard() {
+    return CURRENT.get();
+  }
+
+  /**
+   * @return the number of shards, 1 without sharding
+   */
+  public int shards() {
+    return shards;
+  }
+
+  /**
+   * @param customerId
+   * @return the shard holding the customer
+   */
+  public int shardOf(UUID customerId) {
+    return Math.floorMod(customerId.hashCode(), shards);
+  }
+
+  /**
+   * Runs the work with the customer's shard bound to the calling thread
+   * @param customerId
+   * @param work
+   * @return what the work returned
+   * @throws E what the work threw
+   */
+  public <T, E extends Exception> T onShardOf(UUID customerId, ShardWork<T, E> work) throws E {
+    return onShard(shardOf(customerId), work);
+  }
+
+  /**
+   * Runs the work with the shard bound to the calling thread, restoring the previous binding
+   * afterwards
+   * @param shard
+   * @param work
+   * @return what the work returned
+   * @throws E what the work threw
+   * @throws IllegalStateException when a database transaction is open on another shard
+   */
+  public <T, E extends Exception> T onShard(int shard, ShardWork<T, E> work) throws E {
+    if (shards == 1) {
+      return work.run();
+    }
+    Integer previous = CURRENT.get();
+    int bound = previous == null ? 0 : previous;
+    if (bound != shard && TransactionSynchronizationManager.isActualTransactionActive()) {
+      throw new IllegalStateException(
+          "Cannot switch to shard " + shard + " inside a transaction on shard " + bound);
+    }
+    CURRENT.set(shard);
+    try {
+      return work.run();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Groups items by the shard of their customer
+   * @param items
+   * @param customerIdOf
+   * @return for every shard, the positions of its items in the list in their order
+   */
+  public <T> List<List<Integer>> partition(List<T> items, Function<T, UUID> customerIdOf) {
+    List<List<Integer>> byShard = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; shard++) {
+      byShard.add(new ArrayList<>());
+    }
+    for (int i = 0; i < items.size(); i++) {
+      byShard.get(shardOf(customerIdOf.apply(items.get(i)))).add(i);
+    }
+    return byShard;
+  }
+
+  /** Work run on a shard */
+  @FunctionalInterface
+  public interface ShardWork<T, E extends Exception> {
+    T run() throws E;
+  }
+}
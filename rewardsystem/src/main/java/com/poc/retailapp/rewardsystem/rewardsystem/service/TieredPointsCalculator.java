@@ -0,0 +1,158 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.PointsTiers;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.PointsTiersRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Awards points per whole dollar spent above each tier threshold, the decimal part of the amount
+ * is discarded. Tiers are given as {@code threshold:pointsPerDollar} pairs, e.g. the default
+ * {@code 50:1,100:2} awards 1 point per dollar between $50 and $100 and 2 points per dollar above
+ * $100.
+ *
+ * <p>The tiers are compiled into flat arrays held by an immutable table, so scoring is a short
+ * scan over primitives and {@link #setTiers(String)} can swap the rules while requests are being
+ * served. Points already in the reward ledger keep the rules they were earned under until the
+ * ledger is rescored. Tiers set at runtime are saved and replace {@code reward.points.tiers} on
+ * the next start.
+ */
+@Component
+@Slf4j
+public class TieredPointsCalculator implements PointsCalculator {
+
+  /** Name of the saved tiers row */
+  static final String ACTIVE = "active";
+
+  /** Absent when built outside Spring, tiers are then not saved */
+  @Autowired private PointsTiersRepository pointsTiersRepository;
+
+  private volatile TierTable table;
+
+  public TieredPointsCalculator(@Value("${reward.points.tiers:50:1,100:2}") String tiers) {
+    table = TierTable.parse(tiers);
+  }
+
+  /** Applies the tiers saved by an earlier run, if any */
+  @PostConstruct
+  public void loadTiers() {
+    pointsTiersRepository
+        .findById(ACTIVE)
+        .ifPresent(
+            saved -> {
+              table = TierTable.parse(saved.getTiers());
+              log.info("Applied the saved point tiers {}", saved.getTiers());
+            });
+  }
+
+  @Override
+  public int calculate(long amountCents) {
+    return table.points(amountCents / 100);
+  }
+
+  @Override
+  public void calculate(long[] amountsCents, int[] points, int length) {
+    TierTable current = table;
+    for (int i = 0; i < length; i++) {
+      points[i] = current.points(amountsCents[i] / 100);
+    }
+  }
+
+  /** Replaces the tiers and saves them, when saving fails the current ones are kept */
+  @Override
+  public void setTiers(String tiers) {
+    TierTable parsed = TierTable.parse(tiers);
+    if (pointsTiersRepository != null) {
+      pointsTiersRepository.save(new PointsTiers(ACTIVE, parsed.toString()));
+    }
+    table = parsed;
+  }
+
+  @Override
+  public String getTiers() {
+    return table.toString();
+  }
+
+  private static final class TierTable {
+    /** Ascending thresholds in whole dollars */
+    private final long[] thresholds;
+
+    private final int[] rates;
+
+    /** Points earned by an amount equal to each threshold */
+    private final long[] basePoints;
+
+    private TierTable(long[] thresholds, int[] rates) {
+      this.thresholds = thresholds;
+      this.rates = rates;
+      this.basePoints = new long[thresholds.length];
+      for (int k = 1; k < thresholds.length; k++) {
+        basePoints[k] = basePoints[k - 1] + (thresholds[k] - thresholds[k - 1]) * rates[k - 1];
+      }
+    }
+
+    private int points(long dollars) {
+      for (int k = thresholds.length - 1; k >= 0; k--) {
+        if (dollars > thresholds[k]) {
+          long points = basePoints[k] + (dollars - thresholds[k]) * rates[k];
+          return (int) Math.min(Integer.MAX_VALUE, points);
+        }
+      }
+      return 0;
+    }
+
+    private static TierTable parse(String tiers) {
+      if (tiers == null || tiers.isBlank()) {
+        throw new IllegalArgumentException("At least one reward tier is required");
+      }
+      String[] pairs = tiers.split(",", -1);
+      long[][] parsed = new long[pairs.length][];
+      for (int i = 0; i < pairs.length; i++) {
+        String[] parts = pairs[i].trim().split(":");
+        try {
+          if (parts.length != 2) {
+            throw new NumberFormatException();
+          }
+          parsed[i] =
+              new long[] {Long.parseLong(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid reward tier '" + pairs[i].trim() + "'");
+        }
+        if (parsed[i][0] < 0 || parsed[i][1] < 0) {
+          throw new IllegalArgumentException("Invalid reward tier '" + pairs[i].trim() + "'");
+        }
+      }
+      Arrays.sort(parsed, (a, b) -> Long.compare(a[0], b[0]));
+
+      long[] thresholds = new long[parsed.length];
+      int[] rates = new int[parsed.length];
+      for (int i = 0; i < parsed.length; i++) {
+        if (i > 0 && parsed[i][0] == parsed[i - 1][0]) {
+          throw new IllegalArgumentException("Duplicate reward tier threshold " + parsed[i][0]);
+        }
+        thresholds[i] = parsed[i][0];
+        rates[i] = (int) parsed[i][1];
+      }
+      return new TierTable(thresholds, rates);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder tiers = new StringBuilder();
+      for (int i = 0; i < thresholds.length; i++) {
+        if (i > 0) {
+          tiers.append(',');
+        }
+        tiers.append(thresholds[i]).append(':').append(rates[i]);
+      }
+      return tiers.toString();
+    }
+  }
+}
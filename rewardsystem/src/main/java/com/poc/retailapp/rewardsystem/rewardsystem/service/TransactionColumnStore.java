@@ -0,0 +1,335 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * The recent transactions of the busiest customers held as primitive columns, so the
+ * transactions of a rewards report are listed from arrays instead of read through the ORM.
+ * Each customer is split into calendar months, and each month keeps its transactions sorted by
+ * time in parallel arrays of timestamps in microseconds, amounts in cents, points and ids.
+ *
+ * <p>A customer is loaded from the transaction table the first time it is read, covering the
+ * last {@code reward.column-store.months} calendar months. Transactions written afterwards are
+ * added once they commit, and only for customers already loaded: the others are complete when
+ * they load. Points are scored when a transaction is added or loaded, {@link #clear()} drops
+ * everything after the tiers change. At most {@code reward.column-store.max-transactions} are
+ * held and the customers least used go first. Writes made by other instances are not seen, so
+ * enable it only where this instance is the single writer.
+ */
+@Component
+@ConditionalOnProperty(name = "reward.column-store.enabled", havingValue = "true")
+public class TransactionColumnStore {
+
+  @Autowired private TransactionRepository transactionRepository;
+
+  @Autowired private PointsCalculator pointsCalculator;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private ShardRouter shardRouter;
+
+  @Autowired private Clock clock;
+
+  private final Cache<UUID, CustomerColumns> cache;
+
+  private final int months;
+
+  public TransactionColumnStore(
+      @Value("${reward.column-store.max-transactions:5000000}") long maxTransactions,
+      @Value("${reward.column-store.months:12}") int months,
+      MeterRegistry meterRegistry) {
+    this.months = months;
+    cache =
+        Caffeine.newBuilder()
+            .maximumWeight(maxTransactions)
+            .weigher((UUID customerId, CustomerColumns columns) -> columns.weight())
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "transactionColumns");
+  }
+
+  /**
+   * @return the longest window, in months, the store can answer
+   */
+  public int months() {
+    return months;
+  }
+
+  /**
+   * Hands the customer's transactions after the given time to the visitor in time order,
+   * loading the customer if needed
+   * @param customerId
+   * @param after exclusive, no earlier than {@link #months()} months ago
+   * @param visitor
+   * @return the number of transactions visited
+   */
+  public int forEach(UUID customerId, LocalDateTime after, Visitor visitor) {
+    return customer(customerId).forEach(toMicros(after), visitor);
+  }
+
+  /**
+   * Adds written transactions once the current transaction commits, or right away when there is
+   * none
+   * @param rows
+   */
+  public void addAfterCommit(List<Row> rows) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      add(rows);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    List<Row> pending = (List<Row>) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      List<Row> committed = new ArrayList<>();
+      TransactionSynchronizationManager.bindResource(this, committed);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(
+                  TransactionColumnStore.this);
+              if (status == STATUS_COMMITTED) {
+                add(committed);
+              }
+            }
+          });
+      pending = committed;
+    }
+    pending.addAll(rows);
+  }
+
+  /** Drops every customer, for when points are scored differently */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  private void add(List<Row> rows) {
+    Map<UUID, List<Row>> byCustomer = new HashMap<>();
+    for (Row row : rows) {
+      byCustomer.computeIfAbsent(row.customerId(), customerId -> new ArrayList<>()).add(row);
+    }
+    // compute re-weighs the customer, so the capacity follows its growth
+    byCustomer.forEach(
+        (customerId, customerRows) ->
+            cache
+                .asMap()
+                .computeIfPresent(
+                    customerId,
+                    (id, columns) -> {
+                      customerRows.forEach(columns::add);
+                      return columns;
+                    }));
+  }
+
+  private CustomerColumns customer(UUID customerId) {
+    return cache.get(customerId, this::load);
+  }
+
+  private CustomerColumns load(UUID customerId) {
+    LocalDateTime horizon =
+        LocalDate.now(clock).withDayOfMonth(1).minusMonths(months).atStartOfDay();
+    CustomerColumns columns = new CustomerColumns(toMicros(horizon));
+    shardRouter.onShardOf(
+        customerId,
+        () -> {
+          transactionTemplate.executeWithoutResult(
+              status -> {
+                try (Stream<TransactionSummary> transactions =
+                    transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(
+                        customerId, horizon)) {
+                  transactions.forEach(
+                      transaction -> {
+                        long cents = PointsCalculator.toCents(transaction.amount());
+                        columns.add(
+                            new Row(
+                                transaction.id(),
+                                customerId,
+                                transaction.transactionDate(),
+                                cents,
+                                pointsCalculator.calculate(cents)));
+                      });
+                }
+              });
+          return null;
+        });
+    return columns;
+  }
+
+  static long toMicros(LocalDateTime dateTime) {
+    return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1000;
+  }
+
+  static LocalDateTime fromMicros(long micros) {
+    return LocalDateTime.ofEpochSecond(
+        Math.floorDiv(micros, 1_000_000),
+        (int) Math.floorMod(micros, 1_000_000) * 1000,
+        ZoneOffset.UTC);
+  }
+
+  /**
+   * A written transaction
+   * @param transactionId
+   * @param customerId
+   * @param transactionDate
+   * @param amountCents
+   * @param points
+   */
+  public record Row(
+      UUID transactionId,
+      UUID customerId,
+      LocalDateTime transactionDate,
+      long amountCents,
+      int points) {}
+
+  /** Receives the transactions of a window */
+  @FunctionalInterface
+  public interface Visitor {
+    void visit(UUID transactionId, long amountCents, int points, LocalDateTime transactionDate);
+  }
+
+  /** One customer's months, guarded by its own monitor */
+  private static class CustomerColumns {
+
+    /** Transactions at or before this time are outside the store */
+    private final long horizonMicros;
+
+    /** Keyed on {@code year * 12 + month - 1} */
+    private final NavigableMap<Integer, MonthColumns> months = new TreeMap<>();
+
+    private int size;
+
+    private CustomerColumns(long horizonMicros) {
+      this.horizonMicros = horizonMicros;
+    }
+
+    private synchronized int weight() {
+      return size + 1;
+    }
+
+    private synchronized void add(Row row) {
+      long micros = toMicros(row.transactionDate());
+      if (micros <= horizonMicros) {
+        return;
+      }
+      int month = row.transactionDate().getYear() * 12 + row.transactionDate().getMonthValue() - 1;
+      if (months.computeIfAbsent(month, key -> new MonthColumns()).add(micros, row)) {
+        size++;
+      }
+    }
+
+    private synchronized int forEach(long afterMicros, Visitor visitor) {
+      int transactions = 0;
+      for (MonthColumns month : months.tailMap(monthOf(afterMicros), true).values()) {
+        int from = month.firstAfter(afterMicros);
+        for (int i = from; i < month.size; i++) {
+          visitor.visit(
+              new UUID(month.idHigh[i], month.idLow[i]),
+              month.cents[i],
+              month.points[i],
+              fromMicros(month.micros[i]));
+        }
+        transactions += month.size - from;
+      }
+      return transactions;
+    }
+
+    private static int monthOf(long micros) {
+      LocalDateTime dateTime = fromMicros(micros);
+      return dateTime.getYear() * 12 + dateTime.getMonthValue() - 1;
+    }
+  }
+
+  /** One month of transactions as parallel arrays sorted by time */
+  private static class MonthColumns {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] micros = new long[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private int[] points = new int[INITIAL_CAPACITY];
+    private long[] idHigh = new long[INITIAL_CAPACITY];
+    private long[] idLow = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Inserts the row in time order, most rows are the latest and go at the end
+     * @return false when the transaction is already held
+     */
+    private boolean add(long time, Row row) {
+      int index = firstAfter(time);
+      long high = row.transactionId().getMostSignificantBits();
+      long low = row.transactionId().getLeastSignificantBits();
+      for (int i = index - 1; i >= 0 && micros[i] == time; i--) {
+        if (idHigh[i] == high && idLow[i] == low) {
+          return false;
+        }
+      }
+      if (size == micros.length) {
+        int capacity = size * 2;
+        micros = Arrays.copyOf(micros, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        points = Arrays.copyOf(points, capacity);
+        idHigh = Arrays.copyOf(idHigh, capacity);
+        idLow = Arrays.copyOf(idLow, capacity);
+      }
+      int moved = size - index;
+      if (moved > 0) {
+        System.arraycopy(micros, index, micros, index + 1, moved);
+        System.arraycopy(cents, index, cents, index + 1, moved);
+        System.arraycopy(points, index, points, index + 1, moved);
+        System.arraycopy(idHigh, index, idHigh, index + 1, moved);
+        System.arraycopy(idLow, index, idLow, index + 1, moved);
+      }
+      micros[index] = time;
+      cents[index] = row.amountCents();
+      points[index] = row.points();
+      idHigh[index] = high;
+      idLow[index] = low;
+      size++;
+      return true;
+    }
+
+    /** Index of the first transaction later than the time, size when there is none */
+    private int firstAfter(long time) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (micros[middle] <= time) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Transaction;
+
+/**
+ * A written transaction as recorded in the {@link TransactionEventLog}. Only what scoring needs
+ * is kept, the amount in whole cents as the points calculator reads it.
+ */
+public record TransactionEvent(
+    UUID transactionId, UUID customerId, long amountCents, LocalDateTime transactionDate) {
+
+  /**
+   * The event of a transaction entity, which must have its customer set
+   * @param transaction
+   * @return
+   */
+  public static TransactionEvent of(Transaction transaction) {
+    return new TransactionEvent(
+        transaction.getId(),
+        transaction.getCustomer().getId(),
+        PointsCalculator.toCents(transaction.getAmount()),
+        transaction.getTransactionDate());
+  }
+}
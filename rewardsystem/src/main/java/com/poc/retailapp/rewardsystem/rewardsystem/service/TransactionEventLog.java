@@ -0,0 +1,470 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of written transactions, kept in memory-mapped segment files on local disk.
+ * Events are addressed by offset, their position in the log counted from zero, and are never
+ * changed once written, so a reader can replay the log from any offset.
+ *
+ * <p>Every event is a fixed {@value #RECORD_SIZE} byte record, big endian:
+ *
+ * <pre>
+ *  0  transaction id, most then least significant 64 bits
+ * 16  customer id, most then least significant 64 bits
+ * 32  amount in cents, long
+ * 40  transaction date as epoch seconds at UTC, long
+ * 48  nanosecond of the transaction date, int
+ * 52  CRC-32 of bytes 0 to 51, int
+ * </pre>
+ *
+ * A segment file is named after the offset of its first event, zero padded to twenty digits, and
+ * is created at its full size up front. On startup the last segment is scanned up to the first
+ * record whose checksum does not match, which is where appending resumes; a record torn by a crash
+ * is overwritten. Writes reach the page cache and survive the process dying but not the machine,
+ * unless {@code reward.event-log.force-on-append} flushes every append to disk.
+ *
+ * <p>Writes inside a database transaction are appended just before it commits, so a committed
+ * transaction is never missing from the log, and stay unsettled until the commit completes.
+ * Readers stop at the first unsettled event. A transaction can still roll back after its events
+ * were appended: the append is then recorded as rolled back, before it settles, in {@value
+ * #ROLLED_BACK_FILE} next to the segments, 16 byte records of its first offset (long), its number
+ * of events (int) and a CRC-32 of both (int). Readers skip those events by {@link #isRolledBack}.
+ * A transaction whose outcome is unknown counts as committed. Appends of a process that died
+ * before they settled are not recorded either way; whoever reads them after a restart must settle
+ * their fate with {@link #markRolledBack}.
+ */
+@Component
+@ConditionalOnProperty(name = "reward.event-log.enabled", havingValue = "true")
+@Slf4j
+public class TransactionEventLog {
+
+  /** Bytes taken by one event */
+  public static final int RECORD_SIZE = 56;
+
+  private static final int CHECKSUM_POSITION = 52;
+
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final String ROLLED_BACK_FILE = "rolled-back.dat";
+
+  private static final int ROLLED_BACK_RECORD_SIZE = 16;
+
+  private final Path directory;
+
+  private final int segmentRecords;
+
+  private final boolean forceOnAppend;
+
+  /** Segments by the offset of their first event */
+  private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+  /** Offset the next event is written at, published after the event is written */
+  private volatile long endOffset;
+
+  /** First offsets of the appends whose database transaction has not completed yet */
+  private final ConcurrentSkipListSet<Long> unsettled = new ConcurrentSkipListSet<>();
+
+  /** Number of events of the rolled back appends, by their first offset */
+  private final NavigableMap<Long, Integer> rolledBack = new ConcurrentSkipListMap<>();
+
+  /** Where rolled back appends are recorded */
+  private FileChannel rolledBackFile;
+
+  public TransactionEventLog(
+      @Value("${reward.event-log.directory:data/event-log}") Path directory,
+      @Value("${reward.event-log.segment-records:1048576}") int segmentRecords,
+      @Value("${reward.event-log.force-on-append:false}") boolean forceOnAppend)
+      throws IOException {
+    if (segmentRecords < 1 || (long) segmentRecords * RECORD_SIZE > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid event log segment size " + segmentRecords);
+    }
+    this.directory = directory;
+    this.segmentRecords = segmentRecords;
+    this.forceOnAppend = forceOnAppend;
+    open();
+  }
+
+  private void open() throws IOException {
+    Files.createDirectories(directory);
+    openRolledBack();
+    List<Long> baseOffsets;
+    try (Stream<Path> files = Files.list(directory)) {
+      baseOffsets =
+          files
+              .map(file -> file.getFileName().toString())
+              .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+              .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+              .sorted()
+              .toList();
+    }
+    if (baseOffsets.isEmpty()) {
+      segments.put(0L, createSegment(0));
+      endOffset = 0;
+      return;
+    }
+    for (int i = 0; i < baseOffsets.size(); i++) {
+      boolean last = i == baseOffsets.size() - 1;
+      segments.put(baseOffsets.get(i), mapSegment(baseOffsets.get(i), last));
+    }
+    Segment last = segments.lastEntry().getValue();
+    int records = 0;
+    while (records < last.capacity && isValid(last.buffer, records * RECORD_SIZE)) {
+      records++;
+    }
+    endOffset = last.baseOffset + records;
+    log.info(
+        "Opened transaction event log in {} with {} segments, next offset {}",
+        directory,
+        segments.size(),
+        endOffset);
+  }
+
+  /**
+   * Appends the events, in order
+   * @param events
+   * @return the offset after the last event
+   */
+  public synchronized long append(List<TransactionEvent> events) {
+    long offset = endOffset;
+    Segment segment = segments.lastEntry().getValue();
+    int firstPosition = (int) (offset - segment.baseOffset) * RECORD_SIZE;
+    for (TransactionEvent event : events) {
+      if (offset == segment.baseOffset + segment.capacity) {
+        if (forceOnAppend) {
+          force(segment, firstPosition, offset);
+        }
+        // keep what is already written should the new segment fail
+        endOffset = offset;
+        segment = rollTo(offset);
+        firstPosition = 0;
+      }
+      write(segment.buffer, (int) (offset - segment.baseOffset) * RECORD_SIZE, event);
+      offset++;
+    }
+    if (forceOnAppend) {
+      force(segment, firstPosition, offset);
+    }
+    endOffset = offset;
+    notifyAll();
+    return offset;
+  }
+
+  /**
+   * Appends the events just before the current transaction commits, or right away when there is
+   * none. Events of one transaction are appended together and settle once it completes. An append
+   * failing rolls the transaction back, so a commit never goes unlogged.
+   * @param events
+   */
+  public void appendBeforeCommit(List<TransactionEvent> events) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      append(events);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    List<TransactionEvent> pending =
+        (List<TransactionEvent>) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      List<TransactionEvent> written = new ArrayList<>();
+      TransactionSynchronizationManager.bindResource(this, written);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+
+            private long firstOffset = -1;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+              if (!written.isEmpty()) {
+                firstOffset = appendUnsettled(written);
+              }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(TransactionEventLog.this);
+              if (firstOffset < 0) {
+                return;
+              }
+              try {
+                if (status == STATUS_ROLLED_BACK) {
+                  markRolledBack(firstOffset, written.size());
+                }
+              } finally {
+                settle(firstOffset);
+              }
+            }
+          });
+      pending = written;
+    }
+    pending.addAll(events);
+  }
+
+  /**
+   * @return the offset of the first event whose transaction has not completed, or the end of the
+   *     log when every one has
+   */
+  public long settledOffset() {
+    // appends after this read start at or after it, so they cannot lower the result
+    long end = endOffset;
+    Long firstUnsettled = unsettled.ceiling(Long.MIN_VALUE);
+    return firstUnsettled == null ? end : Math.min(end, firstUnsettled);
+  }
+
+  /**
+   * Records the events from the given offset as rolled back, once
+   * @param firstOffset
+   * @param count
+   */
+  public synchronized void markRolledBack(long firstOffset, int count) {
+    if (rolledBack.putIfAbsent(firstOffset, count) != null) {
+      return;
+    }
+    ByteBuffer record = ByteBuffer.allocate(ROLLED_BACK_RECORD_SIZE);
+    record.putLong(0, firstOffset);
+    record.putInt(8, count);
+    record.putInt(12, rolledBackChecksum(record));
+    try {
+      rolledBackFile.write(record, rolledBackFile.size());
+      if (forceOnAppend) {
+        rolledBackFile.force(false);
+      }
+    } catch (IOException e) {
+      // readers of this process still skip the events
+      log.error("Could not record the rolled back events from offset {}", firstOffset, e);
+    }
+  }
+
+  /**
+   * @param offset
+   * @return whether the event at the offset belongs to a transaction that rolled back
+   */
+  public boolean isRolledBack(long offset) {
+    Map.Entry<Long, Integer> append = rolledBack.floorEntry(offset);
+    return append != null && offset < append.getKey() + append.getValue();
+  }
+
+  /**
+   * Reads events from the given offset on
+   * @param fromOffset
+   * @param maxEvents
+   * @return at most maxEvents events, fewer when the end of the log is reached
+   */
+  public List<TransactionEvent> read(long fromOffset, int maxEvents) {
+    long end = Math.min(endOffset, fromOffset + maxEvents);
+    List<TransactionEvent> events = new ArrayList<>((int) Math.max(0, end - fromOffset));
+    long offset = fromOffset;
+    while (offset < end) {
+      Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+      if (entry == null) {
+        throw new IllegalArgumentException("Offset " + fromOffset + " is not in the event log");
+      }
+      Segment segment = entry.getValue();
+      long segmentEnd = Math.min(end, segment.baseOffset + segment.capacity);
+      for (; offset < segmentEnd; offset++) {
+        events.add(read(segment.buffer, (int) (offset - segment.baseOffset) * RECORD_SIZE, offset));
+      }
+    }
+    return events;
+  }
+
+  /**
+   * Waits until there are settled events at or after the given offset
+   * @param offset
+   * @param timeout
+   * @return whether there are
+   * @throws InterruptedException
+   */
+  public synchronized boolean awaitEvents(long offset, Duration timeout)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    while (settledOffset() <= offset) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      wait(Math.max(1, remaining / 1_000_000));
+    }
+    return true;
+  }
+
+  /**
+   * @return the offset the next event will be written at, which is also the number of events
+   */
+  public long endOffset() {
+    return endOffset;
+  }
+
+  /**
+   * @return the number of segment files
+   */
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  /** Flushes the last segment to disk */
+  @PreDestroy
+  public synchronized void close() throws IOException {
+    Segment segment = segments.lastEntry().getValue();
+    segment.buffer.force();
+    rolledBackFile.close();
+  }
+
+  /** Reads the rolled back appends, dropping a record torn by a crash */
+  private void openRolledBack() throws IOException {
+    rolledBackFile =
+        FileChannel.open(
+            directory.resolve(ROLLED_BACK_FILE),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    ByteBuffer record = ByteBuffer.allocate(ROLLED_BACK_RECORD_SIZE);
+    long position = 0;
+    while (rolledBackFile.read(record.clear(), position) == ROLLED_BACK_RECORD_SIZE
+        && record.getInt(12) == rolledBackChecksum(record)) {
+      rolledBack.put(record.getLong(0), record.getInt(8));
+      position += ROLLED_BACK_RECORD_SIZE;
+    }
+    rolledBackFile.truncate(position);
+  }
+
+  /** Appends the events held unsettled, marked before the end offset moves past them */
+  private synchronized long appendUnsettled(List<TransactionEvent> events) {
+    long firstOffset = endOffset;
+    unsettled.add(firstOffset);
+    try {
+      append(events);
+    } catch (RuntimeException e) {
+      settle(firstOffset);
+      throw e;
+    }
+    return firstOffset;
+  }
+
+  private synchronized void settle(long firstOffset) {
+    unsettled.remove(firstOffset);
+    notifyAll();
+  }
+
+  private Segment rollTo(long baseOffset) {
+    try {
+      Segment segment = createSegment(baseOffset);
+      segments.put(baseOffset, segment);
+      log.info("Rolled transaction event log to segment {}", baseOffset);
+      return segment;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create event log segment " + baseOffset, e);
+    }
+  }
+
+  private Segment createSegment(long baseOffset) throws IOException {
+    Path file = segmentFile(baseOffset);
+    try (FileChannel channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      long size = (long) segmentRecords * RECORD_SIZE;
+      // mapping past the end grows the file, which reads back as zeros: records that never verify
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      return new Segment(baseOffset, segmentRecords, buffer);
+    }
+  }
+
+  private Segment mapSegment(long baseOffset, boolean writable) throws IOException {
+    Path file = segmentFile(baseOffset);
+    try (FileChannel channel =
+        writable
+            ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            : FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size % RECORD_SIZE != 0 || size == 0) {
+        throw new IOException("Event log segment " + file + " has an invalid size " + size);
+      }
+      MappedByteBuffer buffer =
+          channel.map(
+              writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+      return new Segment(baseOffset, (int) (size / RECORD_SIZE), buffer);
+    }
+  }
+
+  private Path segmentFile(long baseOffset) {
+    return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+  }
+
+  private void force(Segment segment, int fromPosition, long toOffset) {
+    int toPosition = (int) (toOffset - segment.baseOffset) * RECORD_SIZE;
+    if (toPosition > fromPosition) {
+      segment.buffer.force(fromPosition, toPosition - fromPosition);
+    }
+  }
+
+  private static void write(MappedByteBuffer buffer, int position, TransactionEvent event) {
+    buffer.putLong(position, event.transactionId().getMostSignificantBits());
+    buffer.putLong(position + 8, event.transactionId().getLeastSignificantBits());
+    buffer.putLong(position + 16, event.customerId().getMostSignificantBits());
+    buffer.putLong(position + 24, event.customerId().getLeastSignificantBits());
+    buffer.putLong(position + 32, event.amountCents());
+    buffer.putLong(position + 40, event.transactionDate().toEpochSecond(ZoneOffset.UTC));
+    buffer.putInt(position + 48, event.transactionDate().getNano());
+    buffer.putInt(position + CHECKSUM_POSITION, checksum(buffer, position));
+  }
+
+  private static TransactionEvent read(MappedByteBuffer buffer, int position, long offset) {
+    if (!isValid(buffer, position)) {
+      throw new IllegalStateException("Event log record at offset " + offset + " is corrupt");
+    }
+    return new TransactionEvent(
+        new UUID(buffer.getLong(position), buffer.getLong(position + 8)),
+        new UUID(buffer.getLong(position + 16), buffer.getLong(position + 24)),
+        buffer.getLong(position + 32),
+        LocalDateTime.ofEpochSecond(
+            buffer.getLong(position + 40), buffer.getInt(position + 48), ZoneOffset.UTC));
+  }
+
+  private static boolean isValid(MappedByteBuffer buffer, int position) {
+    return buffer.getInt(position + CHECKSUM_POSITION) == checksum(buffer, position);
+  }
+
+  private static int checksum(MappedByteBuffer buffer, int position) {
+    CRC32 crc = new CRC32();
+    crc.update(buffer.slice(position, CHECKSUM_POSITION));
+    return (int) crc.getValue();
+  }
+
+  private static int rolledBackChecksum(ByteBuffer record) {
+    CRC32 crc = new CRC32();
+    crc.update(record.slice(0, 12));
+    return (int) crc.getValue();
+  }
+
+  private record Segment(long baseOffset, int capacity, MappedByteBuffer buffer) {}
+}
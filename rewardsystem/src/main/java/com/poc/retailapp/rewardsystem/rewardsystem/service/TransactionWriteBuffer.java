@@ -0,0 +1,331 @@
+package com.poc.retailapp.rewardsystem.rewardsystem.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransactionResult;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.TooManyRequestsException;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind buffer for single transactions, so checkout peaks are not bound by one database
+ * commit per purchase. Requests are put in a bounded lock-free ring and one writer thread takes
+ * them out in groups: a group is written as soon as it has {@code reward.write-behind.max-batch-rows}
+ * rows or its first row has waited {@code reward.write-behind.flush-interval}, in one database
+ * transaction through {@link RewardService#handleBufferedTransactions(List)}.
+ *
+ * <p>With {@code reward.write-behind.acknowledge=enqueue} a request is answered once it is in the
+ * ring; a transaction accepted that way is lost if the instance dies before its group commits, and
+ * a repeated idempotency key is skipped without the client being told. With {@code commit} the
+ * request waits for its group to commit and gets the same answer as without the buffer. When the
+ * ring holds {@code reward.write-behind.capacity} requests, new ones are refused until the writer
+ * catches up. A group that cannot get a connection is retried, so a database outage fills the
+ * ring rather than dropping transactions. With sharding a group is written shard by shard, so a
+ * shard that cannot connect is retried alone.
+ */
+@Component
+@ConditionalOnProperty(name = "reward.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class TransactionWriteBuffer {
+
+  @Autowired private RewardService rewardService;
+
+  @Autowired private CustomerRegistry customerRegistry;
+
+  @Autowired private ShardRouter shardRouter;
+
+  private final Ring<Pending> ring;
+
+  private final int maxBatchRows;
+
+  private final long flushIntervalNanos;
+
+  private final boolean acknowledgeOnCommit;
+
+  private final DistributionSummary groupSize;
+
+  private volatile boolean running;
+
+  /** Set once the writer thread has exited, requests still queued are then written by others */
+  private volatile boolean stopped;
+
+  private Thread thread;
+
+  public TransactionWriteBuffer(
+      @Value("${reward.write-behind.capacity:65536}") int capacity,
+      @Value("${reward.write-behind.max-batch-rows:500}") int maxBatchRows,
+      @Value("${reward.write-behind.flush-interval:10ms}") Duration flushInterval,
+      @Value("${reward.write-behind.acknowledge:enqueue}") String acknowledge,
+      MeterRegistry meterRegistry) {
+    if (!acknowledge.equals("enqueue") && !acknowledge.equals("commit")) {
+      throw new IllegalArgumentException(
+          "reward.write-behind.acknowledge must be enqueue or commit, not " + acknowledge);
+    }
+    this.ring = new Ring<>(capacity);
+    this.maxBatchRows = Math.max(1, maxBatchRows);
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.acknowledgeOnCommit = acknowledge.equals("commit");
+    Gauge.builder("reward.write-behind.pending", ring, Ring::size)
+        .description("Transactions waiting in the write-behind buffer")
+        .register(meterRegistry);
+    groupSize =
+        DistributionSummary.builder("reward.write-behind.group.size")
+            .description("Transactions written by one group commit")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+  }
+
+  /** Starts the writer thread */
+  @PostConstruct
+  public void start() {
+    running = true;
+    thread = Thread.ofPlatform().name("transaction-writer").daemon().start(this::run);
+  }
+
+  /**
+   * Stops taking requests and writes what is buffered before returning. A request that was
+   * queued as the writer thread exited is written here or by the request itself.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join();
+    }
+    stopped = true;
+    writeRemaining();
+  }
+
+  /**
+   * @return whether requests are answered only once their transaction committed
+   */
+  public boolean acknowledgesOnCommit() {
+    return acknowledgeOnCommit;
+  }
+
+  /**
+   * Queues a transaction for the next group commit
+   * @param customerId
+   * @param amount
+   * @param transactionDate
+   * @param idempotencyKey optional, null to always write
+   * @return completes with true once the transaction committed, false when its idempotency key
+   *     was already written for the customer
+   * @throws TooManyRequestsException when the buffer is full
+   * @throws RewardServiceException when the amount is not positive or the customer does not exist
+   */
+  public CompletableFuture<Boolean> submit(
+      UUID customerId, BigDecimal amount, LocalDateTime transactionDate, String idempotencyKey)
+      throws RewardServiceException {
+    if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+      throw new RewardServiceException("Transaction amount must be greater than zero");
+    }
+    if (!customerRegistry.exists(customerId)) {
+      throw new RewardServiceException("Invalid Id. Customer not found");
+    }
+    Pending pending =
+        new Pending(customerId, amount, transactionDate, idempotencyKey, new CompletableFuture<>());
+    if (!running || !ring.offer(pending)) {
+      throw new TooManyRequestsException("Too many transactions in progress, retry later");
+    }
+    if (stopped) {
+      // queued after the writer thread exited and possibly after stop wrote the rest
+      writeRemaining();
+    }
+    return pending.result();
+  }
+
+  /** Writes what is left in the ring once the writer thread has exited, one caller at a time */
+  private synchronized void writeRemaining() {
+    List<Pending> group = new ArrayList<>(maxBatchRows);
+    while (ring.drainTo(group, maxBatchRows) > 0) {
+      write(group);
+      group.clear();
+    }
+  }
+
+  private void run() {
+    List<Pending> group = new ArrayList<>(maxBatchRows);
+    while (running || ring.size() > 0) {
+      if (ring.drainTo(group, maxBatchRows) == 0) {
+        LockSupport.parkNanos(flushIntervalNanos);
+        continue;
+      }
+      // the first row waits at most one interval for the group to fill
+      long deadline = System.nanoTime() + flushIntervalNanos;
+      while (running && group.size() < maxBatchRows) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          break;
+        }
+        if (ring.drainTo(group, maxBatchRows - group.size()) == 0) {
+          LockSupport.parkNanos(Math.min(remaining, flushIntervalNanos / 4 + 1));
+        }
+      }
+      write(group);
+      group.clear();
+    }
+  }
+
+  private void write(List<Pending> group) {
+    if (shardRouter.shards() == 1) {
+      writeShard(group);
+      return;
+    }
+    for (List<Integer> positions : shardRouter.partition(group, Pending::customerId)) {
+      if (!positions.isEmpty()) {
+        writeShard(positions.stream().map(group::get).toList());
+      }
+    }
+  }
+
+  private void writeShard(List<Pending> group) {
+    while (true) {
+      try {
+        List<BulkSubTransactionResult> results = rewardService.handleBufferedTransactions(group);
+        for (int i = 0; i < group.size(); i++) {
+          BulkSubTransactionResult result = results.get(i);
+          switch (result.getStatus()) {
+            case ACCEPTED -> group.get(i).result().complete(true);
+            case DUPLICATE -> group.get(i).result().complete(false);
+            default ->
+                group
+                    .get(i)
+                    .result()
+                    .completeExceptionally(new IllegalStateException(result.getMessage()));
+          }
+        }
+        groupSize.record(group.size());
+        return;
+      } catch (CannotCreateTransactionException e) {
+        if (!running) {
+          log.error("Dropped {} buffered transactions, no connection at shutdown", group.size(), e);
+          group.forEach(pending -> pending.result().completeExceptionally(e));
+          return;
+        }
+        log.warn("Group of {} buffered transactions could not connect, retrying", group.size());
+        LockSupport.parkNanos(Math.max(flushIntervalNanos, 100_000_000L));
+      } catch (RuntimeException e) {
+        log.error("Group of {} buffered transactions failed", group.size(), e);
+        group.forEach(pending -> pending.result().completeExceptionally(e));
+        return;
+      }
+    }
+  }
+
+  /**
+   * A queued transaction
+   * @param customerId
+   * @param amount
+   * @param transactionDate
+   * @param idempotencyKey
+   * @param result completed once the group is written
+   */
+  public record Pending(
+      UUID customerId,
+      BigDecimal amount,
+      LocalDateTime transactionDate,
+      String idempotencyKey,
+      CompletableFuture<Boolean> result) {}
+
+  /**
+   * Bounded ring for many producers and one consumer. Every slot carries a sequence number that
+   * tells whose turn it is: a producer claims a position with one compare-and-set on the tail and
+   * publishes its element by advancing the slot's sequence, the consumer frees the slot by moving
+   * the sequence one lap ahead.
+   */
+  static final class Ring<E> {
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Only written by the consumer */
+    private volatile long head;
+
+    Ring(int capacity) {
+      int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+      elements = new AtomicReferenceArray<>(size);
+      sequences = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+        sequences.set(i, i);
+      }
+      mask = size - 1;
+    }
+
+    /** @return false when the ring is full */
+    boolean offer(E element) {
+      long position = tail.get();
+      while (true) {
+        int index = (int) position & mask;
+        long lag = sequences.get(index) - position;
+        if (lag == 0) {
+          if (tail.compareAndSet(position, position + 1)) {
+            elements.set(index, element);
+            sequences.set(index, position + 1);
+            return true;
+          }
+          position = tail.get();
+        } else if (lag < 0) {
+          return false;
+        } else {
+          position = tail.get();
+        }
+      }
+    }
+
+    /** Moves up to max published elements into the list, called from one thread only */
+    int drainTo(List<E> target, int max) {
+      int drained = 0;
+      long position = head;
+      while (drained < max) {
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+          break;
+        }
+        target.add(elements.get(index));
+        elements.set(index, null);
+        sequences.set(index, position + mask + 1);
+        position++;
+        drained++;
+      }
+      head = position;
+      return drained;
+    }
+
+    int size() {
+      return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+  }
+}
@@ -1,3 +0,0 @@
-INSERT INTO customer (id, name, email, phone_number) VALUES 
-('9d1b96e2-14b1-46a4-847e-df4677a05100', 'John Doe', 'john@example.com', '1234567890'),
-('fd52c58f-74d4-4cfa-8e2d-6c8bafedf2b2', 'Jane Doe', 'jane@example.com', '9876543210');
@@ -0,0 +1,40 @@
+CREATE TABLE customer (
+  id UUID PRIMARY KEY,
+  name VARCHAR(255),
+  email VARCHAR(255),
+  phone_number VARCHAR(15)
+);
+
+CREATE TABLE transaction (
+  id UUID PRIMARY KEY,
+  customer_id UUID REFERENCES customer (id),
+  amount NUMERIC(38, 2),
+  transaction_date TIMESTAMP(6),
+  idempotency_key VARCHAR(64),
+  CONSTRAINT uk_transaction_customer_idempotency_key UNIQUE (customer_id, idempotency_key)
+);
+
+-- serves the per-customer date range reads and the (date, id) keyset pages of the rewards endpoints
+CREATE INDEX idx_transaction_customer_date ON transaction (customer_id, transaction_date, id);
+
+CREATE TABLE reward_ledger (
+  id UUID PRIMARY KEY,
+  customer_id UUID,
+  reward_month DATE,
+  points INTEGER NOT NULL,
+  transaction_count INTEGER NOT NULL,
+  total_amount NUMERIC(38, 2),
+  CONSTRAINT uk_reward_ledger_customer_month UNIQUE (customer_id, reward_month)
+);
+
+CREATE TABLE projection_checkpoint (
+  name VARCHAR(255) PRIMARY KEY,
+  position BIGINT NOT NULL
+);
+
+CREATE TABLE rescore_checkpoint (
+  partition_index INTEGER PRIMARY KEY,
+  partitions INTEGER NOT NULL,
+  tiers VARCHAR(255),
+  completed_at TIMESTAMP(6)
+);
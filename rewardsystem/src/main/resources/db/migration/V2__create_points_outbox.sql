@@ -0,0 +1,12 @@
+-- points awarded by committed transactions, waiting for the relay to publish them; rows are
+-- deleted once published, so the table only holds the backlog
+CREATE TABLE points_outbox (
+  id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  event_id UUID NOT NULL,
+  customer_id UUID NOT NULL,
+  reward_month DATE NOT NULL,
+  points INTEGER NOT NULL,
+  transaction_count INTEGER NOT NULL,
+  total_amount NUMERIC(38, 2) NOT NULL,
+  awarded_at TIMESTAMP(6) NOT NULL
+);
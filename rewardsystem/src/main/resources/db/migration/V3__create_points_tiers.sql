@@ -0,0 +1,5 @@
+-- point tiers set at runtime, applied again over the configured ones on startup
+CREATE TABLE points_tiers (
+  name VARCHAR(255) PRIMARY KEY,
+  tiers VARCHAR(255) NOT NULL
+);
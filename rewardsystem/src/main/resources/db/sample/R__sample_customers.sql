@@ -0,0 +1,9 @@
+-- sample customers for the in-memory and local profiles, not loaded in prod. Each goes to its own
+-- shard only: id_hash is the Java hash code of the id, the shard is floorMod(id_hash, shards)
+INSERT INTO customer (id, name, email, phone_number)
+SELECT CAST(id AS UUID), name, email, phone_number FROM (VALUES
+('9d1b96e2-14b1-46a4-847e-df4677a05100', 'John Doe', 'john@example.com', '1234567890', 2054446592),
+('fd52c58f-74d4-4cfa-8e2d-6c8bafedf2b2', 'Jane Doe', 'jane@example.com', '9876543210', -1471801524)
+) AS sample (id, name, email, phone_number, id_hash)
+WHERE MOD(MOD(id_hash, ${shards}) + ${shards}, ${shards}) = ${shard}
+AND NOT EXISTS (SELECT 1 FROM customer c WHERE c.id = CAST(sample.id AS UUID));
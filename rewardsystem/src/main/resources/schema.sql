@@ -1,6 +0,0 @@
-CREATE TABLE customer (
-  id UUID PRIMARY KEY,
-  name VARCHAR(255),
-  email VARCHAR(255),
-  phone_number VARCHAR(15)
-);
@@ -5,36 +5,53 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
 import com.poc.retailapp.rewardsystem.rewardsystem.controller.Controller;
-import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
-import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransactionResult;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerPointsSummary;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardsBatchResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardEntry;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionStreamResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.BulkJobService;
 import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(Controller.class)
+// the test package is outside the application's, so its configuration is not found by itself
+@ContextConfiguration(classes = RewardsystemApplication.class)
 class ControllerTest {
 
   @Autowired private MockMvc mockMvc;
 
   @MockBean private RewardService rewardService;
 
+  @MockBean private BulkJobService bulkJobService;
+
   @Test
   @DisplayName("Test getCustomerRewards success")
   void testGetCustomerRewards() throws Exception {
@@ -42,7 +59,7 @@ class ControllerTest {
     CustomerRewardResponse response = new CustomerRewardResponse();
     response.setTotalPoints(100);
 
-    when(rewardService.getCustomerRewards(eq(customerId), anyInt())).thenReturn(response);
+    when(rewardService.getCustomerRewards(eq(customerId), anyInt(), eq(true))).thenReturn(response);
 
     mockMvc
         .perform(
@@ -54,66 +71,189 @@ class ControllerTest {
   }
 
   @Test
-  @DisplayName("Test getCustomerRewards fails when months is invalid")
-  void testGetCustomerRewards_InvalidMonths() throws Exception {
+  @DisplayName("Test getCustomerRewards answers 503 when no database connection is available")
+  void testGetCustomerRewards_PoolExhausted() throws Exception {
     UUID customerId = UUID.randomUUID();
+    when(rewardService.getCustomerRewards(eq(customerId), anyInt(), eq(true)))
+        .thenThrow(new CannotCreateTransactionException("Connection is not available"));
+
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/api/reward/customer/{customerId}", customerId))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().string("Retry-After", "1"));
+  }
+
+  @Test
+  @DisplayName("Test getCustomerRewards without transaction details")
+  void testGetCustomerRewards_WithoutDetails() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    CustomerRewardResponse response = new CustomerRewardResponse();
+    response.setTotalPoints(100);
+
+    when(rewardService.getCustomerRewards(customerId, 6, false)).thenReturn(response);
 
-    // months < 1
     mockMvc
         .perform(
             MockMvcRequestBuilders.get("/api/reward/customer/{customerId}", customerId)
-                .param("months", "0"))
-        .andExpect(status().isBadRequest());
-    // months > 12
+                .param("months", "6")
+                .param("details", "false"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalPoints").value(100))
+        .andExpect(jsonPath("$.rewards").doesNotHaveJsonPath());
+  }
+
+  @Test
+  @DisplayName("Test getCustomerRewards lists one page when a page size is given")
+  void testGetCustomerRewards_Page() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    CustomerRewardResponse response = new CustomerRewardResponse();
+    response.setTotalPoints(100);
+    response.setRewards(List.of());
+    response.setNextCursor("next");
+
+    when(rewardService.getCustomerRewardsPage(customerId, 3, "current", 50)).thenReturn(response);
+
     mockMvc
         .perform(
             MockMvcRequestBuilders.get("/api/reward/customer/{customerId}", customerId)
-                .param("months", "13"))
+                .param("pageSize", "50")
+                .param("cursor", "current"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.nextCursor").value("next"));
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/api/reward/customer/{customerId}", customerId)
+                .param("pageSize", "1001"))
         .andExpect(status().isBadRequest());
   }
 
   @Test
-  @DisplayName("Test getRewardsAllCustomers success for valid input")
-  public void testGetRewardsAllCustomers_ValidMonths() throws Exception {
-    // creating mock response
-    CustomerRewardResponse customerRewardResponse1 = new CustomerRewardResponse();
-    customerRewardResponse1.setTotalPoints(100);
-    CustomerRewardResponse customerRewardResponse2 = new CustomerRewardResponse();
-    customerRewardResponse2.setTotalPoints(150);
-    List<CustomerRewardResponse> response =
-        Arrays.asList(customerRewardResponse1, customerRewardResponse2);
+  @DisplayName("Test streamCustomerRewards writes the streamed body")
+  void testStreamCustomerRewards() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    StreamingResponseBody body =
+        outputStream -> outputStream.write("{\"rewards\":[],\"totalPoints\":100}".getBytes());
+
+    when(rewardService.streamCustomerRewards(customerId, 6)).thenReturn(body);
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.get("/api/reward/customer/{customerId}/stream", customerId)
+                    .param("months", "6"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    mockMvc
+        .perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(content().json("{\"totalPoints\":100}"));
+  }
+
+  @Test
+  @DisplayName("Test getTopCustomers returns the ranking")
+  void testGetTopCustomers() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    when(rewardService.getTopCustomers(5, 6))
+        .thenReturn(new LeaderboardResponse(6, List.of(new LeaderboardEntry(1, customerId, 250))));
+
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/api/reward/top").param("n", "5").param("months", "6"))
+        .andExpect(status().isOk())
+        .andExpect(
+            content()
+                .json(
+                    "{\"months\":6, \"entries\":[{\"rank\":1, \"customerId\":\""
+                        + customerId
+                        + "\", \"points\":250}]}"));
 
-    when(rewardService.getAllCustomerRewards(3)).thenReturn(response);
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/api/reward/top").param("n", "101"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  @DisplayName("Test getCustomersRewards returns the points of every customer asked")
+  void testGetCustomersRewards() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    UUID unknownCustomerId = UUID.randomUUID();
+    LocalDate firstMonth = LocalDate.of(2024, 6, 1);
+    when(rewardService.getCustomersRewards(List.of(customerId, unknownCustomerId), 2))
+        .thenReturn(
+            new CustomerRewardsBatchResponse(
+                firstMonth,
+                2,
+                List.of(new CustomerPointsSummary(customerId, 120, new int[] {90, 30})),
+                List.of(unknownCustomerId)));
 
     mockMvc
         .perform(
-            MockMvcRequestBuilders.get("/api/reward")
-                .param("months", "3")
-                .contentType(MediaType.APPLICATION_JSON))
+            MockMvcRequestBuilders.post("/api/reward/customers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "{\"customerIds\":[\""
+                        + customerId
+                        + "\",\""
+                        + unknownCustomerId
+                        + "\"], \"months\":2}"))
         .andExpect(status().isOk())
-        .andExpect(jsonPath("$[0].totalPoints").value(100))
-        .andExpect(jsonPath("$[1].totalPoints").value(150));
+        .andExpect(
+            content()
+                .json(
+                    "{\"firstMonth\":\"2024-06-01\", \"months\":2, \"customers\":[{\"customerId\":\""
+                        + customerId
+                        + "\", \"totalPoints\":120, \"monthlyPoints\":[90,30]}],"
+                        + " \"unknownCustomerIds\":[\""
+                        + unknownCustomerId
+                        + "\"]}"));
   }
 
   @Test
-  @DisplayName("Test getRewardsAllCustomers for invalid months less than 1")
-  public void testGetRewardsAllCustomers_InvalidMonths_LessThan1() throws Exception {
+  @DisplayName("Test getCustomersRewards fails for an invalid request")
+  void testGetCustomersRewards_InvalidRequest() throws Exception {
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/reward/customers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"customerIds\":[]}"))
+        .andExpect(status().isBadRequest());
+
+    StringBuilder tooMany = new StringBuilder("{\"customerIds\":[");
+    for (int i = 0; i < 1001; i++) {
+      tooMany.append(i == 0 ? "" : ",").append('"').append(UUID.randomUUID()).append('"');
+    }
     mockMvc
         .perform(
-            MockMvcRequestBuilders.get("/api/reward")
-                .param("months", "0")
-                .contentType(MediaType.APPLICATION_JSON))
+            MockMvcRequestBuilders.post("/api/reward/customers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(tooMany.append("]}").toString()))
+        .andExpect(status().isBadRequest());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/reward/customers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"customerIds\":[\"" + UUID.randomUUID() + "\"], \"months\":13}"))
         .andExpect(status().isBadRequest());
   }
 
   @Test
-  @DisplayName("Test getRewardsAllCustomers for invalid months more than 1")
-  public void testGetRewardsAllCustomers_InvalidMonths_GreaterThan12() throws Exception {
+  @DisplayName("Test getCustomerRewards fails when months is invalid")
+  void testGetCustomerRewards_InvalidMonths() throws Exception {
+    UUID customerId = UUID.randomUUID();
+
+    // months < 1
     mockMvc
         .perform(
-            MockMvcRequestBuilders.get("/api/reward")
-                .param("months", "13")
-                .contentType(MediaType.APPLICATION_JSON))
+            MockMvcRequestBuilders.get("/api/reward/customer/{customerId}", customerId)
+                .param("months", "0"))
+        .andExpect(status().isBadRequest());
+    // months > 12
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/api/reward/customer/{customerId}", customerId)
+                .param("months", "13"))
         .andExpect(status().isBadRequest());
   }
 
@@ -124,12 +264,7 @@ class ControllerTest {
     TransactionRequest transactionRequest = new TransactionRequest();
     transactionRequest.setCustomerId(customerId);
     transactionRequest.setAmount(new BigDecimal("120"));
-    doNothing()
-        .when(rewardService)
-        .handleTransaction(
-            transactionRequest.getCustomerId(),
-            transactionRequest.getAmount(),
-            LocalDateTime.now());
+    when(rewardService.handleTransaction(eq(customerId), any(), any(), any())).thenReturn(true);
 
     mockMvc
         .perform(
@@ -140,6 +275,67 @@ class ControllerTest {
         .andExpect(content().string("Transaction processed and rewards awarded"));
   }
 
+  @Test
+  @DisplayName("Test handleTransaction with an idempotency key already written")
+  void testHandleTransaction_Duplicate() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    when(rewardService.handleTransaction(eq(customerId), any(), any(), eq("order-1")))
+        .thenReturn(false);
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/transaction/createTransaction")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "{\"customerId\":\""
+                        + customerId
+                        + "\", \"amount\":120, \"idempotencyKey\":\"order-1\"}"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("Transaction already processed"));
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/transaction/createTransaction")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "{\"customerId\":\""
+                        + customerId
+                        + "\", \"amount\":120, \"idempotencyKey\":\"\"}"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  @DisplayName("Test only idempotency key violations are answered as conflicts")
+  void testHandleTransaction_ConstraintViolation() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    when(rewardService.handleTransaction(eq(customerId), any(), any(), eq("order-1")))
+        .thenThrow(
+            new DataIntegrityViolationException(
+                "Unique index or primary key violation: \"PUBLIC.UK_TRANSACTION_CUSTOMER_IDEMPOTENCY_KEY\""));
+    when(rewardService.handleTransaction(eq(customerId), any(), any(), eq("order-2")))
+        .thenThrow(new DataIntegrityViolationException("NULL not allowed for column \"AMOUNT\""));
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/transaction/createTransaction")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "{\"customerId\":\""
+                        + customerId
+                        + "\", \"amount\":120, \"idempotencyKey\":\"order-1\"}"))
+        .andExpect(status().isConflict());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/transaction/createTransaction")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "{\"customerId\":\""
+                        + customerId
+                        + "\", \"amount\":120, \"idempotencyKey\":\"order-2\"}"))
+        .andExpect(status().isInternalServerError());
+  }
+
   @Test
   @DisplayName("Test handleTransaction failure for invalid request")
   void testHandleTransaction_InvalidRequest() throws Exception {
@@ -164,15 +360,19 @@ class ControllerTest {
   @DisplayName("Test handleBulkTransaction success")
   void testHandleBulkTransaction() throws Exception {
     UUID customerId = UUID.randomUUID();
-    BulkTransactionRequest bulkTransactionRequest = new BulkTransactionRequest();
-    bulkTransactionRequest.setCustomerId(customerId);
-    bulkTransactionRequest.setTransactions(
-        Arrays.asList(
-            new BulkSubTransaction(new BigDecimal("120"), LocalDate.now()),
-            new BulkSubTransaction(new BigDecimal("80"), LocalDate.now().minusDays(1))));
+    UUID transactionId = UUID.randomUUID();
+    BulkSubTransactionResult accepted = new BulkSubTransactionResult(0);
+    accepted.accept(transactionId);
+    BulkSubTransactionResult rejected = new BulkSubTransactionResult(1);
+    rejected.reject("Transaction amount must be greater than zero");
+    BulkTransactionResponse bulkTransactionResponse = new BulkTransactionResponse();
+    bulkTransactionResponse.setCustomerId(customerId);
+    bulkTransactionResponse.setAcceptedCount(1);
+    bulkTransactionResponse.setRejectedCount(1);
+    bulkTransactionResponse.setResults(Arrays.asList(accepted, rejected));
 
     when(rewardService.handleBulkTransactions(eq(customerId), any()))
-        .thenReturn(bulkTransactionRequest);
+        .thenReturn(bulkTransactionResponse);
 
     mockMvc
         .perform(
@@ -183,7 +383,7 @@ class ControllerTest {
                         + customerId
                         + "\", \"transactions\":[{\"amount\":120, \"transactionDate\":\""
                         + LocalDate.now()
-                        + "\"}, {\"amount\":80, \"transactionDate\":\""
+                        + "\"}, {\"amount\":-80, \"transactionDate\":\""
                         + LocalDate.now().minusDays(1)
                         + "\"}]}"))
         .andExpect(status().isOk())
@@ -192,11 +392,10 @@ class ControllerTest {
                 .json(
                     "{\"customerId\":\""
                         + customerId
-                        + "\", \"transactions\":[{\"amount\":120, \"transactionDate\":\""
-                        + LocalDate.now()
-                        + "\"}, {\"amount\":80, \"transactionDate\":\""
-                        + LocalDate.now().minusDays(1)
-                        + "\"}]}"));
+                        + "\", \"acceptedCount\":1, \"rejectedCount\":1, \"results\":["
+                        + "{\"index\":0, \"status\":\"ACCEPTED\", \"transactionId\":\""
+                        + transactionId
+                        + "\"}, {\"index\":1, \"status\":\"REJECTED\"}]}"));
   }
 
   @Test
@@ -221,4 +420,94 @@ class ControllerTest {
                 .content("{\"customerId\":\"" + UUID.randomUUID() + "\"}"))
         .andExpect(status().isBadRequest());
   }
+
+  @Test
+  @DisplayName("Test handleBulkTransactionAsync accepts the job")
+  void testHandleBulkTransactionAsync() throws Exception {
+    UUID customerId = UUID.randomUUID();
+    BulkJobResponse job = new BulkJobResponse();
+    job.setJobId(UUID.randomUUID());
+    job.setCustomerId(customerId);
+    job.setStatus(BulkJobStatus.QUEUED);
+    job.setTotalCount(1);
+
+    when(bulkJobService.submit(eq(customerId), any())).thenReturn(job);
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/transaction/createBulkTransactionAsync")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "{\"customerId\":\""
+                        + customerId
+                        + "\", \"transactions\":[{\"amount\":120, \"transactionDate\":\""
+                        + LocalDate.now()
+                        + "\"}]}"))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/api/transaction/bulkJobs/" + job.getJobId()))
+        .andExpect(jsonPath("$.status").value("QUEUED"))
+        .andExpect(jsonPath("$.result").doesNotHaveJsonPath());
+  }
+
+  @Test
+  @DisplayName("Test getBulkJob returns the job progress")
+  void testGetBulkJob() throws Exception {
+    UUID jobId = UUID.randomUUID();
+    BulkJobResponse job = new BulkJobResponse();
+    job.setJobId(jobId);
+    job.setStatus(BulkJobStatus.RUNNING);
+    job.setTotalCount(1000);
+    job.setProcessedCount(500);
+
+    when(bulkJobService.getJob(jobId)).thenReturn(job);
+    when(bulkJobService.getJob(argThat(id -> !jobId.equals(id))))
+        .thenThrow(new RewardServiceException("Invalid Id. Bulk job not found"));
+
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/api/transaction/bulkJobs/{jobId}", jobId))
+        .andExpect(status().isOk())
+        .andExpect(
+            content().json("{\"status\":\"RUNNING\", \"totalCount\":1000, \"processedCount\":500}"));
+
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/api/transaction/bulkJobs/{jobId}", UUID.randomUUID()))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  @DisplayName("Test handleTransactionStream success")
+  void testHandleTransactionStream() throws Exception {
+    TransactionStreamResponse response = new TransactionStreamResponse();
+    response.setLinesRead(2);
+    response.setAcceptedCount(2);
+
+    when(rewardService.handleTransactionStream(any())).thenReturn(response);
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/api/transaction/streamTransactions")
+                .contentType("application/x-ndjson")
+                .content(
+                    "{\"customerId\":\""
+                        + UUID.randomUUID()
+                        + "\", \"amount\":120, \"transactionDate\":\""
+                        + LocalDate.now()
+                        + "\"}\n{\"customerId\":\""
+                        + UUID.randomUUID()
+                        + "\", \"amount\":80, \"transactionDate\":\""
+                        + LocalDate.now()
+                        + "\"}\n"))
+        .andExpect(status().isOk())
+        .andExpect(content().json("{\"linesRead\":2, \"acceptedCount\":2, \"rejectedCount\":0}"));
+  }
+
+  @Test
+  @DisplayName("Test the points feed is refused when not enabled")
+  void testStreamPointsAwarded_NotEnabled() throws Exception {
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/api/reward/events")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(status().isBadRequest());
+  }
 }
@@ -0,0 +1,346 @@
+package com.RetailApplication.RewardSystem.Controller;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the latency of the rewards, single transaction and bulk transaction endpoints against
+ * the embedded server and fails when a percentile exceeds its ceiling in
+ * {@code load-baselines.properties}. The database is seeded with {@code latency.customers}
+ * customers and {@code latency.transactions} transactions first.
+ *
+ * <p>Each endpoint is measured on its own: {@code latency.clients} clients send
+ * {@code latency.rate} requests per second between them, {@code latency.bulk-rate} bulk requests
+ * of 50 rows, on a fixed schedule, first for
+ * {@code latency.warmup-seconds} unrecorded, then for {@code latency.seconds}. Latency is counted
+ * from when a request was due, not from when it was sent, so a server that falls behind shows
+ * the wait of the requests queued behind it. Percentile distributions are written to
+ * {@code target/latency/<endpoint>.hgrm}.
+ *
+ * <p>Run with {@code mvn -Pload test}. On a slower machine scale every ceiling with
+ * {@code -Dlatency.baseline-factor}.
+ */
+@Tag("load")
+@SpringBootTest(
+    classes = RewardsystemApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:latency",
+      // every rewards read reaches the database
+      "reward.cache.maximum-size=0",
+      "logging.level.com.poc.retailapp=ERROR"
+    })
+class EndpointLatencyLoadTest {
+
+  private static final int CUSTOMERS = Integer.getInteger("latency.customers", 1000);
+
+  private static final int TRANSACTIONS = Integer.getInteger("latency.transactions", 100_000);
+
+  private static final int CLIENTS = Integer.getInteger("latency.clients", 8);
+
+  private static final int RATE = Integer.getInteger("latency.rate", 100);
+
+  private static final int BULK_RATE = Integer.getInteger("latency.bulk-rate", 20);
+
+  private static final Duration WARMUP =
+      Duration.ofSeconds(Long.getLong("latency.warmup-seconds", 5));
+
+  private static final Duration DURATION = Duration.ofSeconds(Long.getLong("latency.seconds", 15));
+
+  private static final double BASELINE_FACTOR =
+      Double.parseDouble(System.getProperty("latency.baseline-factor", "1"));
+
+  private static final int BULK_ROWS = 50;
+
+  private static final int SEED_BATCH = 500;
+
+  private static final double[] PERCENTILES = {50, 99, 99.9};
+
+  private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+
+  private static List<UUID> customerIds;
+
+  @LocalServerPort private int port;
+
+  @Autowired private CustomerRepository customerRepository;
+
+  @Autowired private RewardService rewardService;
+
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @BeforeEach
+  void seed() throws Exception {
+    if (customerIds == null) {
+      customerIds = seedCustomers();
+    }
+  }
+
+  @Test
+  @DisplayName("Test the rewards, transaction and bulk endpoints stay within their baselines")
+  void testEndpointLatency() throws Exception {
+    Properties baselines = new Properties();
+    try (InputStream in = getClass().getResourceAsStream("/load-baselines.properties")) {
+      assertNotNull(in, "load-baselines.properties is missing");
+      baselines.load(in);
+    }
+
+    List<Result> results =
+        List.of(
+            measure("rewards", RATE, this::rewardsRequest),
+            measure("transaction", RATE, this::transactionRequest),
+            measure("bulk", BULK_RATE, this::bulkRequest));
+
+    System.out.printf(
+        "%d customers, %d transactions, %d clients at %d requests/s (bulk %d), %ds each%n",
+        CUSTOMERS, TRANSACTIONS, CLIENTS, RATE, BULK_RATE, DURATION.toSeconds());
+    System.out.printf(
+        "%-12s %8s %8s %10s %10s %10s %10s %10s%n",
+        "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+    List<String> failures = new ArrayList<>();
+    for (Result result : results) {
+      System.out.println(result.report());
+      result.writeDistribution();
+      if (result.errors.sum() > 0) {
+        failures.add(result.name + ": " + result.errors.sum() + " requests failed");
+      }
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        String key = result.name + "." + PERCENTILE_NAMES[i];
+        String baseline = baselines.getProperty(key);
+        assertNotNull(baseline, "no baseline for " + key);
+        double ceiling = Double.parseDouble(baseline) * BASELINE_FACTOR;
+        double measured = result.millis(PERCENTILES[i]);
+        if (measured > ceiling) {
+          failures.add(
+              String.format("%s: %.1f ms over the baseline of %.1f ms", key, measured, ceiling));
+        }
+      }
+    }
+    assertTrue(failures.isEmpty(), String.join("\n", failures));
+  }
+
+  /** Runs the warmup and then the measured schedule against one endpoint */
+  private Result measure(String name, int rate, Function<SplittableRandom, HttpRequest> requests)
+      throws InterruptedException {
+    run(new Result(name), rate, requests, WARMUP);
+    Result result = new Result(name);
+    run(result, rate, requests, DURATION);
+    return result;
+  }
+
+  private void run(
+      Result result, int rate, Function<SplittableRandom, HttpRequest> requests, Duration duration)
+      throws InterruptedException {
+    long interval = TimeUnit.SECONDS.toNanos(1) * CLIENTS / rate;
+    long start = System.nanoTime();
+    long end = start + duration.toNanos();
+    List<Thread> clients = new ArrayList<>();
+    for (int i = 0; i < CLIENTS; i++) {
+      SplittableRandom random = new SplittableRandom(i);
+      // clients are spread evenly over the interval
+      long first = start + interval * i / CLIENTS;
+      clients.add(
+          Thread.ofPlatform()
+              .name("latency-client-" + i)
+              .start(() -> runClient(result, requests, random, first, interval, end)));
+    }
+    for (Thread thread : clients) {
+      thread.join();
+    }
+    result.elapsedNanos = System.nanoTime() - start;
+  }
+
+  private void runClient(
+      Result result,
+      Function<SplittableRandom, HttpRequest> requests,
+      SplittableRandom random,
+      long first,
+      long interval,
+      long end) {
+    for (long due = first; due < end; due += interval) {
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      HttpRequest request = requests.apply(random);
+      int status;
+      try {
+        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+      } catch (IOException e) {
+        status = -1;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      result.record(status, System.nanoTime() - due);
+    }
+  }
+
+  private HttpRequest rewardsRequest(SplittableRandom random) {
+    return HttpRequest.newBuilder(uri("/api/reward/customer/" + customer(random) + "?months=3"))
+        .GET()
+        .build();
+  }
+
+  private HttpRequest transactionRequest(SplittableRandom random) {
+    String body =
+        "{\"customerId\":\"" + customer(random) + "\",\"amount\":" + amount(random) + "}";
+    return HttpRequest.newBuilder(uri("/api/transaction/createTransaction"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+  }
+
+  private HttpRequest bulkRequest(SplittableRandom random) {
+    LocalDate today = LocalDate.now();
+    StringBuilder body = new StringBuilder(BULK_ROWS * 56);
+    body.append("{\"customerId\":\"").append(customer(random)).append("\",\"transactions\":[");
+    for (int i = 0; i < BULK_ROWS; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append("{\"amount\":")
+          .append(amount(random))
+          .append(",\"transactionDate\":\"")
+          .append(today.minusDays(random.nextInt(90)))
+          .append("\"}");
+    }
+    body.append("]}");
+    return HttpRequest.newBuilder(uri("/api/transaction/createBulkTransaction"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+        .build();
+  }
+
+  private static UUID customer(SplittableRandom random) {
+    return customerIds.get(random.nextInt(customerIds.size()));
+  }
+
+  private static double amount(SplittableRandom random) {
+    return random.nextInt(1, 25_000) / 100.0;
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://localhost:" + port + path);
+  }
+
+  /**
+   * Saves the customers and gives them the transactions over the last 90 days, written through
+   * the service so the reward ledger matches them
+   */
+  private List<UUID> seedCustomers() throws Exception {
+    List<Customer> customers = new ArrayList<>(CUSTOMERS);
+    for (int i = 0; i < CUSTOMERS; i++) {
+      Customer customer = new Customer();
+      customer.setName("Latency " + i);
+      customer.setEmail("latency" + i + "@example.com");
+      customer.setPhoneNumber(String.format("555%07d", i));
+      customers.add(customer);
+    }
+    List<UUID> ids = new ArrayList<>(CUSTOMERS);
+    customerRepository.saveAll(customers).forEach(customer -> ids.add(customer.getId()));
+
+    SplittableRandom random = new SplittableRandom(42);
+    LocalDate today = LocalDate.now();
+    int perCustomer = TRANSACTIONS / CUSTOMERS;
+    for (UUID customerId : ids) {
+      for (int written = 0; written < perCustomer; written += SEED_BATCH) {
+        List<BulkSubTransaction> batch = new ArrayList<>();
+        for (int i = written; i < Math.min(perCustomer, written + SEED_BATCH); i++) {
+          batch.add(
+              new BulkSubTransaction(
+                  BigDecimal.valueOf(random.nextInt(1, 25_000), 2),
+                  today.minusDays(random.nextInt(90))));
+        }
+        rewardService.handleBulkTransactions(customerId, batch);
+      }
+    }
+    return ids;
+  }
+
+  /** Latencies and outcomes of one endpoint, in microseconds up to a minute */
+  private static class Result {
+
+    private final String name;
+
+    private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+
+    private final LongAdder errors = new LongAdder();
+
+    private long elapsedNanos;
+
+    private Result(String name) {
+      this.name = name;
+    }
+
+    private void record(int status, long nanos) {
+      if (status != 200) {
+        errors.increment();
+      }
+      latencies.recordValue(
+          Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), latencies.getHighestTrackableValue()));
+    }
+
+    private double millis(double percentile) {
+      return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private String report() {
+      long requests = latencies.getTotalCount();
+      return String.format(
+          "%-12s %8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f",
+          name,
+          requests,
+          errors.sum(),
+          requests * 1e9 / elapsedNanos,
+          millis(50),
+          millis(99),
+          millis(99.9),
+          latencies.getMaxValue() / 1000.0);
+    }
+
+    private void writeDistribution() throws IOException {
+      Path file = Path.of("target/latency/" + name + ".hgrm");
+      Files.createDirectories(file.getParent());
+      try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+        latencies.outputPercentileDistribution(out, 1000.0);
+      }
+    }
+  }
+}
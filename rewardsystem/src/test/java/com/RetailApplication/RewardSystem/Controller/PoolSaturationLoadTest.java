@@ -0,0 +1,221 @@
+package com.RetailApplication.RewardSystem.Controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the ingest and reward endpoints with more concurrent clients than the connection pool
+ * has connections, and prints how requests fare once the pool is saturated: requests wait up to
+ * the pool's connection timeout and are then answered 503, never 500. Run with
+ * {@code mvn -Pload test}; sizes can be changed with {@code -Dload.clients} and
+ * {@code -Dload.seconds}.
+ */
+@Tag("load")
+@SpringBootTest(
+    classes = RewardsystemApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:load",
+      "spring.datasource.hikari.maximum-pool-size=4",
+      "spring.datasource.hikari.connection-timeout=250",
+      // every rewards read reaches the database
+      "reward.cache.maximum-size=0",
+      "server.tomcat.threads.max=200",
+      "logging.level.com.poc.retailapp=ERROR",
+      "logging.level.com.zaxxer.hikari=ERROR"
+    })
+class PoolSaturationLoadTest {
+
+  private static final int CLIENTS = Integer.getInteger("load.clients", 48);
+
+  private static final Duration DURATION = Duration.ofSeconds(Long.getLong("load.seconds", 15));
+
+  private static final int BULK_ROWS = 500;
+
+  private static final int CUSTOMERS = 16;
+
+  @LocalServerPort private int port;
+
+  @Autowired private CustomerRepository customerRepository;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  @Test
+  @DisplayName("Test a saturated pool answers 503 after its connection timeout and nothing else fails")
+  void testIngestAndRewardsUnderPoolSaturation() throws Exception {
+    List<UUID> customerIds = new ArrayList<>();
+    for (int i = 0; i < CUSTOMERS; i++) {
+      Customer customer = new Customer();
+      customer.setName("Load " + i);
+      customer.setEmail("load" + i + "@example.com");
+      customer.setPhoneNumber("555000" + String.format("%04d", i));
+      customerIds.add(customerRepository.save(customer).getId());
+    }
+
+    long deadline = System.nanoTime() + DURATION.toNanos();
+    List<Thread> clients = new ArrayList<>();
+    for (int i = 0; i < CLIENTS; i++) {
+      int clientIndex = i;
+      clients.add(
+          Thread.ofPlatform()
+              .name("load-client-" + i)
+              .start(() -> runClient(clientIndex, customerIds, deadline)));
+    }
+    for (Thread thread : clients) {
+      thread.join();
+    }
+
+    long timeouts = (long) meterRegistry.get("hikaricp.connections.timeout").counter().count();
+    double acquireMaxMillis =
+        meterRegistry.get("hikaricp.connections.acquire").timer().max(TimeUnit.MILLISECONDS);
+    System.out.printf(
+        "%d clients for %ds against a pool of 4, connection timeout 250 ms%n",
+        CLIENTS, DURATION.toSeconds());
+    System.out.printf(
+        "%-8s %8s %8s %8s %10s %10s %10s%n",
+        "endpoint", "200", "503", "other", "p50 ms", "p99 ms", "max ms");
+    endpoints.forEach((name, endpoint) -> System.out.println(endpoint.report(name)));
+    System.out.printf("pool timeouts %d, longest connection wait %.0f ms%n", timeouts, acquireMaxMillis);
+
+    long unavailable = 0;
+    for (Endpoint endpoint : endpoints.values()) {
+      assertEquals(0, endpoint.other.sum(), "requests failing other than with 503");
+      unavailable += endpoint.unavailable.sum();
+    }
+    assertTrue(unavailable > 0, "the pool was not saturated, raise load.clients");
+    // a request gives up at its first timeout
+    assertTrue(unavailable <= timeouts);
+  }
+
+  private void runClient(int clientIndex, List<UUID> customerIds, long deadline) {
+    SplittableRandom random = new SplittableRandom(clientIndex);
+    while (System.nanoTime() < deadline) {
+      UUID customerId = customerIds.get(random.nextInt(customerIds.size()));
+      HttpRequest request;
+      String name;
+      if (clientIndex % 2 == 0) {
+        name = "ingest";
+        request =
+            HttpRequest.newBuilder(uri("/api/transaction/createBulkTransaction"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(bulkBody(customerId, random)))
+                .build();
+      } else {
+        name = "rewards";
+        request =
+            HttpRequest.newBuilder(uri("/api/reward/customer/" + customerId + "?months=3"))
+                .GET()
+                .build();
+      }
+      long started = System.nanoTime();
+      int status;
+      try {
+        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+      } catch (Exception e) {
+        status = -1;
+      }
+      endpoints
+          .computeIfAbsent(name, key -> new Endpoint())
+          .record(status, System.nanoTime() - started);
+    }
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://localhost:" + port + path);
+  }
+
+  private static String bulkBody(UUID customerId, SplittableRandom random) {
+    LocalDate today = LocalDate.now();
+    StringBuilder body = new StringBuilder(BULK_ROWS * 56);
+    body.append("{\"customerId\":\"").append(customerId).append("\",\"transactions\":[");
+    for (int i = 0; i < BULK_ROWS; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append("{\"amount\":")
+          .append(random.nextInt(1, 25_000) / 100.0)
+          .append(",\"transactionDate\":\"")
+          .append(today.minusDays(random.nextInt(90)))
+          .append("\"}");
+    }
+    return body.append("]}").toString();
+  }
+
+  /** Outcomes and latencies of one endpoint */
+  private static class Endpoint {
+
+    private final LongAdder ok = new LongAdder();
+
+    private final LongAdder unavailable = new LongAdder();
+
+    private final LongAdder other = new LongAdder();
+
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+    private void record(int status, long nanos) {
+      switch (status) {
+        case 200 -> ok.increment();
+        case 503 -> unavailable.increment();
+        default -> other.increment();
+      }
+      latencies.add(nanos);
+    }
+
+    private String report(String name) {
+      List<Long> sorted;
+      synchronized (latencies) {
+        sorted = new ArrayList<>(latencies);
+      }
+      Collections.sort(sorted);
+      return String.format(
+          "%-8s %8d %8d %8d %10.1f %10.1f %10.1f",
+          name,
+          ok.sum(),
+          unavailable.sum(),
+          other.sum(),
+          percentile(sorted, 0.50),
+          percentile(sorted, 0.99),
+          percentile(sorted, 1.0));
+    }
+
+    private static double percentile(List<Long> sorted, double quantile) {
+      if (sorted.isEmpty()) {
+        return 0;
+      }
+      int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+      return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+  }
+}
@@ -3,7 +3,9 @@ package com.RetailApplication.RewardSystem;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+
+@SpringBootTest(classes = RewardsystemApplication.class)
 class RewardSystemApplicationTests {
 
 	@Test
@@ -0,0 +1,177 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkJobStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.TooManyRequestsException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.BulkJobService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.CustomerRegistry;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BulkJobServiceTest {
+
+    @InjectMocks
+    private BulkJobService bulkJobService = new BulkJobService(1, 2, Duration.ofHours(1));
+
+    @Mock
+    private RewardService rewardService;
+
+    @Mock
+    private CustomerRegistry customerRegistry;
+
+    private final Clock clock = mock(Clock.class);
+
+    private final UUID customerId = UUID.randomUUID();
+
+    private final List<BulkSubTransaction> transactions =
+            List.of(new BulkSubTransaction(new BigDecimal("120"), LocalDate.now()));
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(bulkJobService, "clock", clock);
+        when(clock.getZone()).thenReturn(ZoneId.systemDefault());
+        when(clock.instant()).thenReturn(Instant.now());
+        when(customerRegistry.exists(customerId)).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkJobService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test submit runs the job in the background and keeps its result")
+    void testSubmit() throws Exception {
+        BulkTransactionResponse result = new BulkTransactionResponse();
+        result.setAcceptedCount(1);
+        when(rewardService.handleBulkTransactions(eq(customerId), eq(transactions), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<IntConsumer>getArgument(2).accept(1);
+                    return result;
+                });
+
+        BulkJobResponse submitted = bulkJobService.submit(customerId, transactions);
+        BulkJobResponse job = awaitCompletion(submitted.getJobId());
+
+        assertEquals(BulkJobStatus.COMPLETED, job.getStatus());
+        assertEquals(1, job.getTotalCount());
+        assertEquals(1, job.getProcessedCount());
+        assertSame(result, job.getResult());
+        assertNotNull(job.getCompletedAt());
+    }
+
+    @Test
+    @DisplayName("Test a failing job is reported as failed")
+    void testSubmit_Failure() throws Exception {
+        when(rewardService.handleBulkTransactions(eq(customerId), eq(transactions), any()))
+                .thenThrow(new IllegalStateException("database unavailable"));
+
+        BulkJobResponse job = awaitCompletion(bulkJobService.submit(customerId, transactions).getJobId());
+
+        assertEquals(BulkJobStatus.FAILED, job.getStatus());
+        assertEquals("database unavailable", job.getMessage());
+        assertNull(job.getResult());
+    }
+
+    @Test
+    @DisplayName("Test submit rejects unknown customers and jobs beyond the active limit")
+    void testSubmit_Rejected() throws Exception {
+        assertThrows(RewardServiceException.class,
+                () -> bulkJobService.submit(UUID.randomUUID(), transactions));
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(rewardService.handleBulkTransactions(eq(customerId), eq(transactions), any()))
+                .thenAnswer(invocation -> {
+                    release.await(10, TimeUnit.SECONDS);
+                    return new BulkTransactionResponse();
+                });
+
+        // one job runs and one waits for it, the limit is two active jobs
+        BulkJobResponse running = bulkJobService.submit(customerId, transactions);
+        BulkJobResponse queued = bulkJobService.submit(customerId, transactions);
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> bulkJobService.submit(customerId, transactions));
+        assertEquals("Too many bulk jobs in progress, retry later", exception.getMessage());
+        verify(rewardService, timeout(10_000)).handleBulkTransactions(eq(customerId), eq(transactions), any());
+        long waiting = List.of(running, queued).stream()
+                .filter(job -> getStatus(job.getJobId()) == BulkJobStatus.QUEUED)
+                .count();
+        assertEquals(1, waiting);
+
+        release.countDown();
+        assertEquals(BulkJobStatus.COMPLETED, awaitCompletion(running.getJobId()).getStatus());
+        assertEquals(BulkJobStatus.COMPLETED, awaitCompletion(queued.getJobId()).getStatus());
+    }
+
+    @Test
+    @DisplayName("Test finished jobs are dropped once the retention has passed on the clock")
+    void testRemoveExpiredJobs() throws Exception {
+        when(rewardService.handleBulkTransactions(eq(customerId), eq(transactions), any()))
+                .thenReturn(new BulkTransactionResponse());
+        Instant submittedAt = Instant.now();
+        UUID jobId = bulkJobService.submit(customerId, transactions).getJobId();
+        assertEquals(BulkJobStatus.COMPLETED, awaitCompletion(jobId).getStatus());
+
+        when(clock.instant()).thenReturn(submittedAt.plus(Duration.ofMinutes(59)));
+        bulkJobService.removeExpiredJobs();
+        assertEquals(BulkJobStatus.COMPLETED, bulkJobService.getJob(jobId).getStatus());
+
+        when(clock.instant()).thenReturn(submittedAt.plus(Duration.ofHours(2)));
+        bulkJobService.removeExpiredJobs();
+        assertThrows(RewardServiceException.class, () -> bulkJobService.getJob(jobId));
+    }
+
+    @Test
+    @DisplayName("Test getJob fails for an unknown job")
+    void testGetJob_NotFound() {
+        assertThrows(RewardServiceException.class, () -> bulkJobService.getJob(UUID.randomUUID()));
+    }
+
+    private BulkJobResponse awaitCompletion(UUID jobId) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        BulkJobResponse job = bulkJobService.getJob(jobId);
+        while ((job.getStatus() == BulkJobStatus.QUEUED || job.getStatus() == BulkJobStatus.RUNNING)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = bulkJobService.getJob(jobId);
+        }
+        return job;
+    }
+
+    private BulkJobStatus getStatus(UUID jobId) {
+        try {
+            return bulkJobService.getJob(jobId).getStatus();
+        } catch (RewardServiceException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
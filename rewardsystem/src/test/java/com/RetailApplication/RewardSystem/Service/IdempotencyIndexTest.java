@@ -0,0 +1,77 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionKey;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.IdempotencyIndex;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+
+class IdempotencyIndexTest {
+
+    @InjectMocks
+    private IdempotencyIndex idempotencyIndex = new IdempotencyIndex(10_000, 0.01);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(false, new String[0]);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    @DisplayName("Test keys added are always found and others rarely")
+    void testMightContain() {
+        UUID customerId = UUID.randomUUID();
+        for (int i = 0; i < 10_000; i++) {
+            idempotencyIndex.add(customerId, "order-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(idempotencyIndex.mightContain(customerId, "order-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 20_000; i++) {
+            if (idempotencyIndex.mightContain(customerId, "order-" + i)) {
+                falsePositives++;
+            }
+        }
+        // 1% expected, allow for variance
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    @DisplayName("Test findExisting only queries keys the filter may contain")
+    void testFindExisting() {
+        UUID customerId = UUID.randomUUID();
+        UUID transactionId = UUID.randomUUID();
+        idempotencyIndex.add(customerId, "order-1");
+        when(transactionRepository.findKeys(eq(customerId), any()))
+                .thenReturn(List.of(new TransactionKey(transactionId, customerId, "order-1")));
+
+        assertEquals(Map.of(), idempotencyIndex.findExisting(customerId, List.of("order-2")));
+        verify(transactionRepository, never()).findKeys(any(), any());
+
+        assertEquals(Map.of("order-1", transactionId), idempotencyIndex.findExisting(customerId, List.of("order-1", "order-2")));
+        verify(transactionRepository).findKeys(eq(customerId), argThat(keys -> keys.contains("order-1")));
+    }
+}
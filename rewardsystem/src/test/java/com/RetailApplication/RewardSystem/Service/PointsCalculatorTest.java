@@ -0,0 +1,90 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TieredPointsCalculator;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointsCalculatorTest {
+
+    private final TieredPointsCalculator calculator = new TieredPointsCalculator("50:1,100:2");
+
+    @Test
+    @DisplayName("Test default tiers award 1 point per dollar over 50 and 2 per dollar over 100")
+    void testDefaultTiers() {
+        assertEquals(0, calculator.calculate(4000));
+        assertEquals(0, calculator.calculate(5099));
+        assertEquals(1, calculator.calculate(5100));
+        assertEquals(20, calculator.calculate(7000));
+        assertEquals(50, calculator.calculate(10000));
+        assertEquals(52, calculator.calculate(10199));
+        assertEquals(90, calculator.calculate(12000));
+        assertEquals(0, calculator.calculate(-12000));
+    }
+
+    @Test
+    @DisplayName("Test default tiers match the original per-dollar rule")
+    void testDefaultTiersMatchOriginalRule() {
+        for (int dollars = 0; dollars <= 1000; dollars++) {
+            int expected = 0;
+            int amount = dollars;
+            if (amount > 100) {
+                expected += (amount - 100) * 2;
+                amount = 100;
+            }
+            if (amount > 50) {
+                expected += amount - 50;
+            }
+            assertEquals(expected, calculator.calculate(dollars * 100L + 99), "dollars " + dollars);
+        }
+    }
+
+    @Test
+    @DisplayName("Test bulk calculate scores every amount")
+    void testBulkCalculate() {
+        long[] amounts = {4000, 7000, 12000};
+
+        assertArrayEquals(new int[] {0, 20, 90}, calculator.calculate(amounts));
+
+        int[] points = new int[] {-1, -1, -1};
+        calculator.calculate(amounts, points, 2);
+        assertArrayEquals(new int[] {0, 20, -1}, points);
+    }
+
+    @Test
+    @DisplayName("Test tiers can be replaced at runtime")
+    void testSetTiers() {
+        TieredPointsCalculator retiered = new TieredPointsCalculator("50:1,100:2");
+
+        retiered.setTiers("200:5, 0:1");
+
+        assertEquals("0:1,200:5", retiered.getTiers());
+        assertEquals(120, retiered.calculate(12000));
+        assertEquals(200 + 50, retiered.calculate(21000));
+    }
+
+    @Test
+    @DisplayName("Test invalid tiers are rejected")
+    void testInvalidTiers() {
+        assertThrows(IllegalArgumentException.class, () -> new TieredPointsCalculator(""));
+        assertThrows(IllegalArgumentException.class, () -> new TieredPointsCalculator("50"));
+        assertThrows(IllegalArgumentException.class, () -> new TieredPointsCalculator("50:x"));
+        assertThrows(IllegalArgumentException.class, () -> new TieredPointsCalculator("50:1,50:2"));
+        assertThrows(IllegalArgumentException.class, () -> new TieredPointsCalculator("-5:1"));
+        // a failed update keeps the previous tiers
+        assertThrows(IllegalArgumentException.class, () -> calculator.setTiers("50:1,"));
+        assertEquals("50:1,100:2", calculator.getTiers());
+    }
+
+    @Test
+    @DisplayName("Test toCents drops fractions of a cent")
+    void testToCents() {
+        assertEquals(12099, PointsCalculator.toCents(new BigDecimal("120.999")));
+        assertEquals(12000, PointsCalculator.toCents(new BigDecimal("120")));
+    }
+}
@@ -0,0 +1,250 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.PointsAwarded;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsAwardedBroadcaster;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsAwardedSink;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsOutbox;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs the points feed against the real H2 schema, a capturing sink and the SSE endpoint */
+@SpringBootTest(
+        classes = RewardsystemApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+            // a database of its own, other test contexts stay cached with theirs
+            "spring.datasource.url=jdbc:h2:mem:outbox",
+            "reward.outbox.enabled=true",
+            "reward.outbox.poll-interval=50ms",
+            "reward.outbox.file-sink.enabled=true",
+            "reward.outbox.file-sink.path=target/outbox-test/points-awarded.jsonl"
+        })
+@Import(PointsOutboxTest.SinkConfiguration.class)
+class PointsOutboxTest {
+
+    @Autowired
+    private RewardService rewardService;
+
+    @Autowired
+    private PointsOutbox pointsOutbox;
+
+    @Autowired
+    private CapturingSink capturingSink;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @LocalServerPort
+    private int port;
+
+    @AfterEach
+    void tearDown() {
+        capturingSink.failing = false;
+    }
+
+    @Test
+    @DisplayName("Test single and bulk writes publish their points per customer and month")
+    void testPublishAfterCommit() throws Exception {
+        UUID customerId = newCustomer();
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+        awaitTrue(() -> eventsOf(customerId).size() == 1);
+        PointsAwarded single = eventsOf(customerId).get(0);
+        assertEquals(90, single.getPoints());
+        assertEquals(1, single.getTransactionCount());
+        assertEquals(YearMonth.now(), single.getMonth());
+
+        rewardService.handleBulkTransactions(customerId, List.of(
+                new BulkSubTransaction(new BigDecimal("120"), LocalDate.now()),
+                new BulkSubTransaction(new BigDecimal("70"), LocalDate.now()),
+                new BulkSubTransaction(new BigDecimal("120"), LocalDate.now().minusMonths(1))));
+        awaitTrue(() -> eventsOf(customerId).size() == 3);
+        List<PointsAwarded> bulk = eventsOf(customerId).subList(1, 3);
+        PointsAwarded currentMonth = bulk.stream()
+                .filter(event -> event.getMonth().equals(YearMonth.now()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(110, currentMonth.getPoints());
+        assertEquals(2, currentMonth.getTransactionCount());
+        assertEquals(0, new BigDecimal("190").compareTo(currentMonth.getTotalAmount()));
+        // rows are deleted once every sink took them
+        awaitTrue(() -> outboxRows() == 0);
+    }
+
+    @Test
+    @DisplayName("Test a write whose transaction rolls back publishes nothing")
+    void testRollbackPublishesNothing() throws Exception {
+        UUID customerId = newCustomer();
+        transactionTemplate.executeWithoutResult(status -> {
+            rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+            status.setRollbackOnly();
+        });
+
+        pointsOutbox.publishPending();
+        assertTrue(eventsOf(customerId).isEmpty());
+        assertEquals(0, outboxRows());
+    }
+
+    @Test
+    @DisplayName("Test a batch a sink fails on stays in the outbox and is published again")
+    void testFailedBatchIsRetried() throws Exception {
+        capturingSink.failing = true;
+        UUID customerId = newCustomer();
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+
+        awaitTrue(() -> meterRegistry.counter("reward.outbox.failures").count() > 0);
+        assertTrue(eventsOf(customerId).isEmpty());
+        assertEquals(1, outboxRows());
+
+        capturingSink.failing = false;
+        awaitTrue(() -> !eventsOf(customerId).isEmpty());
+        assertEquals(1, eventsOf(customerId).size());
+        awaitTrue(() -> outboxRows() == 0);
+    }
+
+    @Test
+    @DisplayName("Test the file sink appends every event as a JSON line")
+    void testFileSink() throws Exception {
+        UUID customerId = newCustomer();
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+
+        Path file = Path.of("target/outbox-test/points-awarded.jsonl");
+        awaitTrue(() -> linesOf(file).anyMatch(line -> line.contains(customerId.toString())));
+        String line = linesOf(file).filter(json -> json.contains(customerId.toString())).findFirst().orElseThrow();
+        assertTrue(line.contains("\"points\":90"));
+    }
+
+    @Test
+    @DisplayName("Test a client following the feed receives a customer's points as events")
+    void testServerSentEvents() throws Exception {
+        UUID customerId = newCustomer();
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/api/reward/events?customerId=" + customerId))
+                .header("Accept", "text/event-stream")
+                .build();
+        CompletableFuture<List<String>> received = HttpClient.newHttpClient()
+                .sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+                .thenApply(response -> {
+                    assertEquals(200, response.statusCode());
+                    return response.body()
+                            .takeWhile(line -> !line.isEmpty())
+                            .toList();
+                });
+        awaitTrue(() -> meterRegistry.get("reward.outbox.subscribers").gauge().value() > 0);
+
+        // another customer's points are filtered out
+        rewardService.handleTransaction(newCustomer(), new BigDecimal("70"), LocalDateTime.now());
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+
+        List<String> event = received.get(10, TimeUnit.SECONDS);
+        assertTrue(event.contains("event:" + PointsAwardedBroadcaster.EVENT_NAME));
+        String data = event.stream().filter(line -> line.startsWith("data:")).findFirst().orElseThrow();
+        assertTrue(data.contains(customerId.toString()));
+        assertTrue(data.contains("\"points\":90"));
+    }
+
+    private List<PointsAwarded> eventsOf(UUID customerId) {
+        return capturingSink.events.stream()
+                .filter(event -> event.getCustomerId().equals(customerId))
+                .toList();
+    }
+
+    private int outboxRows() {
+        return jdbcTemplate.queryForObject("select count(*) from points_outbox", Integer.class);
+    }
+
+    private static Stream<String> linesOf(Path file) {
+        try {
+            return Files.exists(file) ? Files.readAllLines(file).stream() : Stream.empty();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 10s");
+            Thread.sleep(20);
+        }
+    }
+
+    private UUID newCustomer() {
+        Customer customer = new Customer();
+        customer.setName("xxx");
+        customer.setEmail("xxx@example.com");
+        customer.setPhoneNumber("1234567890");
+        return customerRepository.save(customer).getId();
+    }
+
+    /** Sink keeping every event it was handed, or failing while asked to */
+    static class CapturingSink implements PointsAwardedSink {
+
+        private final List<PointsAwarded> events = new CopyOnWriteArrayList<>();
+
+        private volatile boolean failing;
+
+        @Override
+        public void publish(List<PointsAwarded> batch) throws IOException {
+            if (failing) {
+                throw new IOException("sink unavailable");
+            }
+            events.addAll(batch);
+        }
+    }
+
+    @TestConfiguration
+    static class SinkConfiguration {
+
+        @Bean
+        CapturingSink capturingSink() {
+            return new CapturingSink();
+        }
+    }
+}
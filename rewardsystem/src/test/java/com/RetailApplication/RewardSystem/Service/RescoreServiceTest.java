@@ -0,0 +1,183 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.RescoreState;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.RescoreStatus;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RescoreCheckpoint;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RewardLedger;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.PointsTiersRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RescoreCheckpointRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RescoreService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TieredPointsCalculator;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs the rescore job against the real H2 schema */
+@SpringBootTest(
+        classes = RewardsystemApplication.class,
+        properties = {
+            // a database of its own, other test contexts stay cached with theirs
+            "spring.datasource.url=jdbc:h2:mem:rescore",
+            "reward.rescore.partitions=8",
+            "reward.rescore.parallelism=2",
+            "reward.rescore.max-transactions-per-second=100000"
+        })
+class RescoreServiceTest {
+
+    @Autowired
+    private RescoreService rescoreService;
+
+    @Autowired
+    private RewardService rewardService;
+
+    @Autowired
+    private TieredPointsCalculator pointsCalculator;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private RewardLedgerRepository rewardLedgerRepository;
+
+    @Autowired
+    private RescoreCheckpointRepository rescoreCheckpointRepository;
+
+    @Autowired
+    private PointsTiersRepository pointsTiersRepository;
+
+    private final String tiers = "50:1,100:2";
+
+    @AfterEach
+    void tearDown() throws Exception {
+        awaitCompletion();
+        pointsCalculator.setTiers(tiers);
+        rescoreCheckpointRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Test rescore rewrites the ledger points of every customer with the new tiers")
+    void testRescore_AllCustomers() throws Exception {
+        List<UUID> customerIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID customerId = newCustomer();
+            rewardService.handleBulkTransactions(customerId, List.of(
+                    new BulkSubTransaction(new BigDecimal("120"), LocalDate.now().minusMonths(1)),
+                    new BulkSubTransaction(new BigDecimal("80"), LocalDate.now())));
+            customerIds.add(customerId);
+        }
+        customerIds.forEach(customerId -> assertEquals(120, ledgerPoints(customerId)));
+
+        rescoreService.start("50:1,100:3");
+        RescoreStatus status = awaitCompletion();
+
+        assertEquals(RescoreState.COMPLETED, status.getState());
+        assertEquals(8, status.getPartitionsCompleted());
+        assertEquals(0, status.getConflicts());
+        assertTrue(status.getTransactionsScored() >= 40);
+        customerIds.forEach(customerId -> assertEquals(140, ledgerPoints(customerId)));
+        assertEquals(0, rescoreCheckpointRepository.count());
+    }
+
+    @Test
+    @DisplayName("Test rescore inserts the ledger months that have no row")
+    void testRescore_MissingLedgerMonth() throws Exception {
+        UUID customerId = newCustomer();
+        rewardService.handleBulkTransactions(customerId, List.of(
+                new BulkSubTransaction(new BigDecimal("120"), LocalDate.now().minusMonths(1)),
+                new BulkSubTransaction(new BigDecimal("80"), LocalDate.now())));
+        rewardLedgerRepository.deleteAll(
+                rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(customerId, LocalDate.now().minusYears(1)));
+
+        rescoreService.start("50:1,100:3");
+        RescoreStatus status = awaitCompletion();
+
+        assertEquals(RescoreState.COMPLETED, status.getState());
+        assertEquals(0, status.getConflicts());
+        assertEquals(140, ledgerPoints(customerId));
+    }
+
+    @Test
+    @DisplayName("Test rescore skips the partitions a previous run with the same tiers finished")
+    void testRescore_ResumesFromCheckpoints() throws Exception {
+        UUID customerId = newCustomer();
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+        for (int partition = 0; partition < 8; partition++) {
+            rescoreCheckpointRepository.save(
+                    new RescoreCheckpoint(partition, 8, "50:1,100:3", LocalDateTime.now()));
+        }
+
+        rescoreService.start("50:1,100:3");
+        RescoreStatus status = awaitCompletion();
+
+        assertEquals(RescoreState.COMPLETED, status.getState());
+        assertEquals(8, status.getPartitionsResumed());
+        assertEquals(0, status.getPartitionsCompleted());
+        assertEquals(90, ledgerPoints(customerId));
+    }
+
+    @Test
+    @DisplayName("Test rescore rejects invalid tiers")
+    void testRescore_InvalidTiers() {
+        assertThrows(RewardServiceException.class, () -> rescoreService.start("fifty"));
+        assertEquals(tiers, pointsCalculator.getTiers());
+    }
+
+    @Test
+    @DisplayName("Test tiers applied by a rescore are saved and applied again on the next start")
+    void testRescore_TiersSaved() throws Exception {
+        rescoreService.start("50:1,100:3");
+        assertEquals(RescoreState.COMPLETED, awaitCompletion().getState());
+
+        TieredPointsCalculator restarted = new TieredPointsCalculator(tiers);
+        ReflectionTestUtils.setField(restarted, "pointsTiersRepository", pointsTiersRepository);
+        restarted.loadTiers();
+        assertEquals("50:1,100:3", restarted.getTiers());
+    }
+
+    private RescoreStatus awaitCompletion() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        RescoreStatus status = rescoreService.status();
+        while ((status.getState() == RescoreState.RUNNING || status.getState() == RescoreState.STOPPING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            status = rescoreService.status();
+        }
+        return status;
+    }
+
+    private UUID newCustomer() {
+        Customer customer = new Customer();
+        customer.setName("xxx");
+        customer.setEmail("xxx@example.com");
+        customer.setPhoneNumber("1234567890");
+        return customerRepository.save(customer).getId();
+    }
+
+    private int ledgerPoints(UUID customerId) {
+        return rewardLedgerRepository
+                .findByCustomerIdAndRewardMonthAfter(customerId, LocalDate.now().minusYears(1))
+                .stream()
+                .mapToInt(RewardLedger::getPoints)
+                .sum();
+    }
+}
@@ -0,0 +1,154 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardEntry;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.LedgerPointsCount;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardLeaderboard;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RewardLeaderboardTest {
+
+    @InjectMocks
+    private RewardLeaderboard rewardLeaderboard;
+
+    @Mock
+    private RewardLedgerRepository rewardLedgerRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private Clock clock = Clock.systemDefaultZone();
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(false, new String[0]);
+
+    private final LocalDate thisMonth = LocalDate.now(clock).withDayOfMonth(1);
+
+    private final UUID alice = new UUID(0, 1);
+    private final UUID bob = new UUID(0, 2);
+    private final UUID carol = new UUID(0, 3);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null))
+                .when(transactionTemplate).execute(any());
+        when(rewardLedgerRepository.streamPointsFromMonth(thisMonth.minusMonths(11))).thenReturn(Stream.of(
+                new LedgerPointsCount(alice, thisMonth, 100, 1),
+                new LedgerPointsCount(alice, thisMonth.minusMonths(2), 50, 1),
+                new LedgerPointsCount(bob, thisMonth, 120, 1),
+                new LedgerPointsCount(carol, thisMonth.minusMonths(11), 500, 2)));
+        rewardLeaderboard.reload();
+    }
+
+    @AfterEach
+    void tearDown() {
+        rewardLeaderboard.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test top ranks customers by the points of the window")
+    void testTop() {
+        assertEquals(List.of(new LeaderboardEntry(1, bob, 120), new LeaderboardEntry(2, alice, 100)),
+                rewardLeaderboard.top(10, 1));
+        assertEquals(List.of(new LeaderboardEntry(1, alice, 150), new LeaderboardEntry(2, bob, 120)),
+                rewardLeaderboard.top(10, 3));
+        assertEquals(List.of(new LeaderboardEntry(1, carol, 500)), rewardLeaderboard.top(1, 12));
+        assertEquals(3, rewardLeaderboard.top(100, 12).size());
+    }
+
+    @Test
+    @DisplayName("Test committed ledger points update the rankings already built")
+    void testAddAfterCommit() {
+        rewardLeaderboard.top(10, 1);
+        rewardLeaderboard.top(10, 3);
+
+        rewardLeaderboard.addAfterCommit(bob, thisMonth, 40, 2);
+        rewardLeaderboard.addAfterCommit(carol, thisMonth.minusMonths(1), 10, 1);
+
+        assertEquals(List.of(new LeaderboardEntry(1, bob, 160), new LeaderboardEntry(2, alice, 100)),
+                rewardLeaderboard.top(10, 1));
+        assertEquals(List.of(new LeaderboardEntry(1, bob, 160), new LeaderboardEntry(2, alice, 150),
+                new LeaderboardEntry(3, carol, 10)), rewardLeaderboard.top(10, 3));
+        assertEquals(new LeaderboardEntry(1, carol, 510), rewardLeaderboard.top(1, 12).get(0));
+    }
+
+    @Test
+    @DisplayName("Test points outside the last twelve months are not ranked and ties go by id")
+    void testAddAfterCommit_OutsideWindow() {
+        rewardLeaderboard.addAfterCommit(alice, thisMonth.minusMonths(12), 1000, 1);
+        rewardLeaderboard.addAfterCommit(alice, thisMonth.plusMonths(1), 1000, 1);
+        rewardLeaderboard.addAfterCommit(alice, thisMonth, 20, 2);
+
+        assertEquals(List.of(new LeaderboardEntry(1, alice, 120), new LeaderboardEntry(2, bob, 120)),
+                rewardLeaderboard.top(10, 1));
+        assertEquals(new LeaderboardEntry(1, carol, 500), rewardLeaderboard.top(1, 12).get(0));
+    }
+
+    @Test
+    @DisplayName("Test points committed while the ledger is loaded are counted once")
+    void testReload_WriteCommittedDuringLoad() {
+        when(rewardLedgerRepository.streamPointsFromMonth(thisMonth.minusMonths(11))).thenAnswer(invocation -> {
+            // committed after the load opened, one before the ledger is read and one after
+            rewardLeaderboard.addAfterCommit(bob, thisMonth, 40, 2);
+            return Stream.of(
+                    new LedgerPointsCount(alice, thisMonth, 100, 1),
+                    new LedgerPointsCount(bob, thisMonth, 160, 2))
+                    .peek(row -> {
+                        if (row.customerId().equals(bob)) {
+                            rewardLeaderboard.addAfterCommit(alice, thisMonth, 20, 2);
+                        }
+                    });
+        });
+
+        rewardLeaderboard.reload();
+
+        assertEquals(List.of(new LeaderboardEntry(1, bob, 160), new LeaderboardEntry(2, alice, 120)),
+                rewardLeaderboard.top(10, 1));
+    }
+
+    @Test
+    @DisplayName("Test the rankings move to the new month in the background once the calendar turns")
+    void testRollOver() throws Exception {
+        Instant nextMonth = thisMonth.plusMonths(1).atStartOfDay(clock.getZone()).toInstant();
+        doReturn(nextMonth).when(clock).instant();
+
+        // starts the roll over, the points of the new month are kept for its rankings
+        rewardLeaderboard.addAfterCommit(bob, thisMonth.plusMonths(1), 30, 1);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!rewardLeaderboard.top(10, 1).equals(List.of(new LeaderboardEntry(1, bob, 30)))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(new LeaderboardEntry(1, bob, 30)), rewardLeaderboard.top(10, 1));
+        assertEquals(List.of(new LeaderboardEntry(1, bob, 150), new LeaderboardEntry(2, alice, 100)),
+                rewardLeaderboard.top(10, 2));
+        // carol's points fell out of the last twelve months
+        assertEquals(List.of(new LeaderboardEntry(1, alice, 150), new LeaderboardEntry(2, bob, 150)),
+                rewardLeaderboard.top(10, 12));
+    }
+}
@@ -0,0 +1,156 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RescoreService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardProjector;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TieredPointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionEventLog;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs the event log and projector against the real H2 schema */
+@SpringBootTest(classes = RewardsystemApplication.class)
+class RewardProjectorTest {
+
+    @TempDir
+    private static Path directory;
+
+    @DynamicPropertySource
+    static void eventLog(DynamicPropertyRegistry registry) {
+        // a database of its own, other test contexts stay cached with theirs
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:projector");
+        registry.add("reward.event-log.enabled", () -> "true");
+        registry.add("reward.event-log.directory", directory::toString);
+        registry.add("reward.event-log.projector.poll-interval", () -> "50ms");
+        registry.add("reward.cache.maximum-size", () -> "0");
+    }
+
+    @Autowired
+    private RewardService rewardService;
+
+    @Autowired
+    private RewardProjector rewardProjector;
+
+    @Autowired
+    private TransactionEventLog transactionEventLog;
+
+    @Autowired
+    private RescoreService rescoreService;
+
+    @Autowired
+    private TieredPointsCalculator pointsCalculator;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final String tiers = "50:1,100:2";
+
+    @AfterEach
+    void tearDown() {
+        pointsCalculator.setTiers(tiers);
+    }
+
+    @Test
+    @DisplayName("Test transactions reach the ledger through the event log and a rebuild rescores them")
+    void testProjectAndRebuild() throws Exception {
+        UUID customerId = newCustomer();
+        long start = transactionEventLog.endOffset();
+
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+        rewardService.handleTransaction(customerId, new BigDecimal("80"), LocalDateTime.now());
+        rewardService.handleBulkTransactions(
+                customerId, List.of(new BulkSubTransaction(new BigDecimal("60"), LocalDate.now())));
+
+        assertEquals(start + 3, transactionEventLog.endOffset());
+        assertEquals(130, awaitPoints(customerId, 130));
+        assertEquals(0, rewardProjector.status().getLag());
+
+        pointsCalculator.setTiers("50:1,100:3");
+        rewardProjector.rebuild();
+
+        assertEquals(150, totalPoints(customerId));
+        assertEquals(transactionEventLog.endOffset(), rewardProjector.status().getPosition());
+    }
+
+    @Test
+    @DisplayName("Test events of a transaction rolled back after they were appended are skipped")
+    void testRolledBackAfterAppend() throws Exception {
+        UUID customerId = newCustomer();
+        long start = transactionEventLog.endOffset();
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+            // fails the commit after the event log appended
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("commit failed");
+                }
+            });
+        }));
+        assertEquals(start + 1, transactionEventLog.endOffset());
+
+        rewardService.handleTransaction(customerId, new BigDecimal("80"), LocalDateTime.now());
+        assertEquals(30, awaitPoints(customerId, 30));
+        assertEquals(0, rewardProjector.status().getLag());
+
+        rewardProjector.rebuild();
+        assertEquals(30, totalPoints(customerId));
+    }
+
+    @Test
+    @DisplayName("Test the rescore job is refused while the projector owns the ledger")
+    void testRescoreRefused() {
+        assertThrows(RewardServiceException.class, () -> rescoreService.start("50:1,100:3"));
+        assertEquals(tiers, pointsCalculator.getTiers());
+    }
+
+    private UUID newCustomer() {
+        Customer customer = new Customer();
+        customer.setName("xxx");
+        customer.setEmail("xxx@example.com");
+        customer.setPhoneNumber("1234567890");
+        return customerRepository.save(customer).getId();
+    }
+
+    private int awaitPoints(UUID customerId, int points) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        int total = totalPoints(customerId);
+        while (total != points && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            total = totalPoints(customerId);
+        }
+        return total;
+    }
+
+    private int totalPoints(UUID customerId) throws RewardServiceException {
+        return rewardService.getCustomerRewards(customerId, 1, false).getTotalPoints();
+    }
+}
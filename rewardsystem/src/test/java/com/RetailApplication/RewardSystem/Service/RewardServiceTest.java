@@ -1,31 +1,85 @@
 package com.RetailApplication.RewardSystem.Service;
 
 import org.junit.jupiter.api.BeforeEach;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
-import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionRequest;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransactionResult;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkTransactionStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
 import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardsBatchResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.MonthlyReward;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionStreamResponse;
 import com.poc.retailapp.rewardsystem.rewardsystem.entity.Customer;
+import com.poc.retailapp.rewardsystem.rewardsystem.entity.RewardLedger;
 import com.poc.retailapp.rewardsystem.rewardsystem.entity.Transaction;
 import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
 import com.poc.retailapp.rewardsystem.rewardsystem.repository.CustomerRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.LedgerPoints;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.RewardLedgerRepository;
 import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.CustomerRegistry;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.IdempotencyIndex;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardCache;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardLeaderboard;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardMetrics;
 import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
-
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TieredPointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionColumnStore;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionWriteBuffer;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -40,9 +94,67 @@ class RewardServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private RewardLedgerRepository rewardLedgerRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private RewardMetrics rewardMetrics;
+
+    @Mock
+    private RewardLeaderboard rewardLeaderboard;
+
+    @Mock
+    private IdempotencyIndex idempotencyIndex;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private PointsCalculator pointsCalculator = new TieredPointsCalculator("50:1,100:2");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // mid-month, so windows counted back from today do not depend on the day the tests run
+    private final LocalDateTime today = LocalDate.now().withDayOfMonth(15).atTime(12, 0);
+
+    private final Clock clock = mock(Clock.class);
+
+    @Spy
+    private RewardCache rewardCache = new RewardCache(100, 1000, Duration.ofMinutes(5), clock, meterRegistry);
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(false, new String[0]);
+
+    @Spy
+    private CustomerRegistry customerRegistry = new CustomerRegistry(100, Duration.ofMinutes(5), meterRegistry);
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        // the first ledger row of a month is inserted
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(true);
+        ReflectionTestUtils.setField(rewardService, "bulkChunkSize", 2);
+        ReflectionTestUtils.setField(rewardService, "streamCustomerCacheSize", 100);
+        ReflectionTestUtils.setField(customerRegistry, "customerRepository", customerRepository);
+        ReflectionTestUtils.setField(customerRegistry, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(rewardService, "clock", clock);
+        setToday(today);
+        when(customerRepository.getReferenceById(any())).thenAnswer(invocation -> {
+            Customer reference = new Customer();
+            reference.setId(invocation.getArgument(0));
+            return reference;
+        });
+        doAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null))
+                .when(transactionTemplate).execute(any());
     }
 
     @Test
@@ -60,7 +172,7 @@ class RewardServiceTest {
 
     @Test
     @DisplayName("Test getCustomerRewards success")
-    void testGetCustomerRewards() {
+    void testGetCustomerRewards() throws RewardServiceException {
         UUID customerId = UUID.randomUUID();
         Customer customer = new Customer();
         customer.setId(customerId);
@@ -72,23 +184,193 @@ class RewardServiceTest {
         transaction1.setId(UUID.randomUUID());
         transaction1.setCustomer(customer);
         transaction1.setAmount(new BigDecimal("120"));
-        transaction1.setTransactionDate(LocalDateTime.now().minusMonths(1));
+        transaction1.setTransactionDate(today.minusMonths(1));
 
         Transaction transaction2 = new Transaction();
         transaction2.setId(UUID.randomUUID());
         transaction2.setCustomer(customer);
         transaction2.setAmount(new BigDecimal("80"));
-        transaction2.setTransactionDate(LocalDateTime.now().minusMonths(2));
+        transaction2.setTransactionDate(today.minusMonths(2));
 
         when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
-        when(transactionRepository.findByCustomerIdAndTransactionDateAfter(eq(customerId), any(LocalDateTime.class)))
-                .thenReturn(Arrays.asList(transaction1, transaction2));
+        List<RewardLedger> ledgers = Arrays.asList(ledger(customerId, transaction1), ledger(customerId, transaction2));
+        when(rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(eq(customerId), any(LocalDate.class)))
+                .thenReturn(ledgers);
+        when(transactionRepository.findSummariesByCustomerIdAndTransactionDateAfter(eq(customerId), any(LocalDateTime.class)))
+                .thenReturn(Arrays.asList(summary(transaction1), summary(transaction2)));
 
         CustomerRewardResponse response = rewardService.getCustomerRewards(customerId, 3);
 
         assertNotNull(response);
         assertEquals(90 + 30, response.getTotalPoints());
         assertEquals(2, response.getRewards().size());
+        // the window starts on the first day of the month two months back, that day included
+        LocalDateTime firstDay = today.minusMonths(2).withDayOfMonth(1).toLocalDate().atStartOfDay();
+        verify(transactionRepository).findSummariesByCustomerIdAndTransactionDateAfter(
+                customerId, firstDay.minusNanos(1000));
+        verify(rewardMetrics).rewardQuery(2);
+    }
+
+    @Test
+    @DisplayName("Test getCustomerRewards without details serves every window from one ledger read")
+    void testGetCustomerRewards_WithoutDetails() throws RewardServiceException {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+
+        Transaction lastMonth = new Transaction();
+        lastMonth.setAmount(new BigDecimal("120"));
+        lastMonth.setTransactionDate(today.minusMonths(1));
+
+        Transaction threeMonthsAgo = new Transaction();
+        threeMonthsAgo.setAmount(new BigDecimal("70.00"));
+        threeMonthsAgo.setTransactionDate(today.minusMonths(3));
+
+        Transaction tooOld = new Transaction();
+        tooOld.setAmount(new BigDecimal("200"));
+        tooOld.setTransactionDate(today.minusMonths(12));
+
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        List<RewardLedger> ledgers = List.of(
+                ledger(customerId, threeMonthsAgo), ledger(customerId, lastMonth), ledger(customerId, tooOld));
+        when(rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(eq(customerId), any(LocalDate.class)))
+                .thenReturn(ledgers);
+
+        CustomerRewardResponse threeMonths = rewardService.getCustomerRewards(customerId, 3, false);
+        CustomerRewardResponse fourMonths = rewardService.getCustomerRewards(customerId, 4, false);
+        CustomerRewardResponse twelveMonths = rewardService.getCustomerRewards(customerId, 12, false);
+
+        assertEquals(90, threeMonths.getTotalPoints());
+        assertEquals(List.of(new MonthlyReward(YearMonth.from(lastMonth.getTransactionDate()), 90, 1, new BigDecimal("120"))),
+                threeMonths.getMonthly());
+        assertNull(threeMonths.getRewards());
+        assertEquals(90 + 20, fourMonths.getTotalPoints());
+        assertEquals(List.of(
+                new MonthlyReward(YearMonth.from(threeMonthsAgo.getTransactionDate()), 20, 1, new BigDecimal("70.00")),
+                new MonthlyReward(YearMonth.from(lastMonth.getTransactionDate()), 90, 1, new BigDecimal("120"))),
+                fourMonths.getMonthly());
+        assertEquals(90 + 20, twelveMonths.getTotalPoints());
+        verify(rewardLedgerRepository, times(1)).findByCustomerIdAndRewardMonthAfter(
+                customerId, YearMonth.from(today).minusMonths(12).atDay(1));
+        verifyNoInteractions(transactionRepository);
+        verify(rewardMetrics, times(3)).rewardQuery(0);
+    }
+
+    @Test
+    @DisplayName("Test getCustomerRewards windows move with the calendar month of the clock")
+    void testGetCustomerRewards_MonthTurns() throws RewardServiceException {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        Transaction thisMonth = new Transaction();
+        thisMonth.setAmount(new BigDecimal("120"));
+        thisMonth.setTransactionDate(today);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        List<RewardLedger> ledgers = List.of(ledger(customerId, thisMonth));
+        when(rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(eq(customerId), any(LocalDate.class)))
+                .thenReturn(ledgers);
+
+        assertEquals(90, rewardService.getCustomerRewards(customerId, 1, false).getTotalPoints());
+        assertEquals(90, rewardService.getCustomerRewards(customerId, 2, false).getTotalPoints());
+
+        setToday(today.plusMonths(1).withDayOfMonth(1).toLocalDate().atStartOfDay());
+
+        assertEquals(0, rewardService.getCustomerRewards(customerId, 1, false).getTotalPoints());
+        assertEquals(90, rewardService.getCustomerRewards(customerId, 2, false).getTotalPoints());
+        verify(rewardLedgerRepository, times(2)).findByCustomerIdAndRewardMonthAfter(eq(customerId), any(LocalDate.class));
+    }
+    @Test
+    @DisplayName("Test getCustomerRewards lists the window from the column store when it is enabled")
+    void testGetCustomerRewards_ColumnStore() throws RewardServiceException {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        Transaction transaction = new Transaction();
+        transaction.setAmount(new BigDecimal("120"));
+        transaction.setTransactionDate(today.minusDays(1));
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        List<RewardLedger> ledgers = List.of(ledger(customerId, transaction));
+        when(rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(eq(customerId), any(LocalDate.class)))
+                .thenReturn(ledgers);
+        TransactionColumnStore columnStore = mock(TransactionColumnStore.class);
+        when(columnStore.months()).thenReturn(12);
+        when(columnStore.forEach(eq(customerId), any(), any())).thenAnswer(invocation -> {
+            invocation.<TransactionColumnStore.Visitor>getArgument(2)
+                    .visit(UUID.randomUUID(), 12000, 90, transaction.getTransactionDate());
+            return 1;
+        });
+        ReflectionTestUtils.setField(rewardService, "transactionColumnStore", columnStore);
+
+        CustomerRewardResponse response = rewardService.getCustomerRewards(customerId, 3, true);
+
+        assertEquals(90, response.getTotalPoints());
+        assertEquals(1, response.getRewards().size());
+        assertEquals(new BigDecimal("120.00"), response.getRewards().get(0).getTransactionAmount());
+        verifyNoInteractions(transactionRepository);
+        verify(rewardMetrics).rewardQuery(1);
+
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+
+        verify(columnStore).addAfterCommit(argThat(rows -> rows.size() == 1 && rows.get(0).points() == 90));
+    }
+    @Test
+    @DisplayName("Test getCustomersRewards spreads the ledger months of every known customer")
+    void testGetCustomersRewards() {
+        UUID customerId1 = UUID.randomUUID();
+        UUID customerId2 = UUID.randomUUID();
+        UUID unknownCustomerId = UUID.randomUUID();
+        Customer customer1 = new Customer();
+        customer1.setId(customerId1);
+        Customer customer2 = new Customer();
+        customer2.setId(customerId2);
+        when(customerRepository.findAllById(anyList())).thenReturn(List.of(customer1, customer2));
+        LocalDate currentMonth = LocalDate.now().withDayOfMonth(1);
+        when(rewardLedgerRepository.sumPointsByCustomerIdInFromMonth(any(), eq(currentMonth.minusMonths(2))))
+                .thenReturn(List.of(
+                        new LedgerPoints(customerId1, currentMonth, 30),
+                        new LedgerPoints(customerId1, currentMonth.minusMonths(2), 90),
+                        new LedgerPoints(customerId2, currentMonth.minusMonths(1), 10)));
+
+        CustomerRewardsBatchResponse response = rewardService.getCustomersRewards(
+                List.of(customerId2, unknownCustomerId, customerId1, customerId2), 3);
+
+        assertEquals(currentMonth.minusMonths(2), response.getFirstMonth());
+        assertEquals(List.of(unknownCustomerId), response.getUnknownCustomerIds());
+        assertEquals(2, response.getCustomers().size());
+        assertEquals(customerId2, response.getCustomers().get(0).getCustomerId());
+        assertArrayEquals(new int[] {0, 10, 0}, response.getCustomers().get(0).getMonthlyPoints());
+        assertEquals(120, response.getCustomers().get(1).getTotalPoints());
+        assertArrayEquals(new int[] {90, 0, 30}, response.getCustomers().get(1).getMonthlyPoints());
+        verify(rewardLedgerRepository).sumPointsByCustomerIdInFromMonth(
+                argThat(ids -> ids.size() == 2 && !ids.contains(unknownCustomerId)), any());
+    }
+
+    @Test
+    @DisplayName("Test getCustomerRewards is cached until the customer writes a transaction")
+    void testGetCustomerRewards_Cached() throws RewardServiceException {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        CustomerRewardResponse first = rewardService.getCustomerRewards(customerId, 3, false);
+        CustomerRewardResponse second = rewardService.getCustomerRewards(customerId, 3, false);
+        rewardService.getCustomerRewards(customerId, 6, false);
+
+        assertSame(first, second);
+        // the customer is loaded once and then served by the registry, the ledger by its windows
+        verify(customerRepository, times(1)).findById(customerId);
+        verify(rewardLedgerRepository, times(1)).findByCustomerIdAndRewardMonthAfter(eq(customerId), any());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "customerRewards").tag("result", "hit")
+                .functionCounter().count());
+
+        rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now());
+        CustomerRewardResponse afterWrite = rewardService.getCustomerRewards(customerId, 3, false);
+
+        assertNotSame(first, afterWrite);
+        verify(rewardCache).evictAfterCommit(customerId);
+        verify(rewardMetrics).transactionsIngested(1, 90);
+        verify(rewardLeaderboard).addAfterCommit(customerId, LocalDate.now().withDayOfMonth(1), 90, 1);
     }
 
     @Test
@@ -104,67 +386,90 @@ class RewardServiceTest {
     }
 
     @Test
-    @DisplayName("Test getAllCustomerRewards success")
-    public void testGetAllCustomerRewards_ValidMonths() throws RewardServiceException {
-        UUID customerId1 = UUID.randomUUID();
-        Customer customer1 = new Customer();
-        customer1.setId(customerId1);
-        customer1.setName("xxx");
-        customer1.setEmail("xxx@example.com");
-        customer1.setPhoneNumber("1234567890");
+    @DisplayName("Test getCustomerRewardsPage lists one page and chains the next with a cursor")
+    void testGetCustomerRewardsPage() throws RewardServiceException {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
 
-        UUID customerId2 = UUID.randomUUID();
-        Customer customer2 = new Customer();
-        customer2.setId(customerId2);
-        customer2.setName("yyy");
-        customer2.setEmail("yyy@example.com");
-        customer2.setPhoneNumber("1234567890");
+        LocalDateTime date = LocalDateTime.now().minusDays(1);
+        List<TransactionSummary> firstPage = List.of(
+                new TransactionSummary(UUID.randomUUID(), new BigDecimal("120"), date),
+                new TransactionSummary(UUID.randomUUID(), new BigDecimal("80"), date),
+                new TransactionSummary(UUID.randomUUID(), new BigDecimal("60"), date));
+        when(transactionRepository.findSummaryPage(eq(customerId), any(LocalDateTime.class), eq(Limit.of(3))))
+                .thenReturn(firstPage);
 
-        List<Customer> customers = Arrays.asList(customer1, customer2);
+        CustomerRewardResponse first = rewardService.getCustomerRewardsPage(customerId, 3, null, 2);
 
-        when(customerRepository.findAll()).thenReturn(customers);
+        assertEquals(2, first.getRewards().size());
+        assertEquals(firstPage.get(1).id(), first.getRewards().get(1).getTransactionId());
+        assertNotNull(first.getNextCursor());
 
-        Transaction transaction1 = new Transaction();
-        transaction1.setId(UUID.randomUUID());
-        transaction1.setCustomer(customer1);
-        transaction1.setAmount(new BigDecimal("120"));
-        transaction1.setTransactionDate(LocalDateTime.now().minusMonths(1));
+        List<TransactionSummary> lastPage = List.of(firstPage.get(2));
+        when(transactionRepository.findSummaryPageAfter(
+                eq(customerId), any(LocalDateTime.class), eq(date), eq(firstPage.get(1).id()), eq(Limit.of(3))))
+                .thenReturn(lastPage);
 
-        Transaction transaction2 = new Transaction();
-        transaction2.setId(UUID.randomUUID());
-        transaction2.setCustomer(customer2);
-        transaction2.setAmount(new BigDecimal("80"));
-        transaction2.setTransactionDate(LocalDateTime.now().minusMonths(2));
+        CustomerRewardResponse last = rewardService.getCustomerRewardsPage(customerId, 3, first.getNextCursor(), 2);
 
-        when(customerRepository.findById(customerId1)).thenReturn(Optional.of(customer1));
-        when(customerRepository.findById(customerId2)).thenReturn(Optional.of(customer2));
-        when(transactionRepository.findByCustomerIdAndTransactionDateAfter(eq(customerId1), any(LocalDateTime.class)))
-                .thenReturn(List.of(transaction1));
-        when(transactionRepository.findByCustomerIdAndTransactionDateAfter(eq(customerId2), any(LocalDateTime.class)))
-                .thenReturn(List.of(transaction2));
+        assertEquals(1, last.getRewards().size());
+        assertEquals(10, last.getRewards().get(0).getPoints());
+        assertNull(last.getNextCursor());
+    }
 
-        List<CustomerRewardResponse> result = rewardService.getAllCustomerRewards(3);
+    @Test
+    @DisplayName("Test getCustomerRewardsPage fails for a malformed cursor")
+    void testGetCustomerRewardsPage_InvalidCursor() {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
 
-        verify(customerRepository, times(1)).findAll();
-        verify(transactionRepository, times(1)).findByCustomerIdAndTransactionDateAfter(eq(customerId1), any(LocalDateTime.class));
-        verify(transactionRepository, times(1)).findByCustomerIdAndTransactionDateAfter(eq(customerId2), any(LocalDateTime.class));
+        RewardServiceException exception = assertThrows(RewardServiceException.class,
+                () -> rewardService.getCustomerRewardsPage(customerId, 3, "not-a-cursor", 2));
 
-        assertEquals(2, result.size());
-        assertEquals("xxx", result.get(0).getCustomer().getName());
-        assertEquals(90, result.get(0).getTotalPoints());
-        assertEquals("yyy", result.get(1).getCustomer().getName());
-        assertEquals(30, result.get(1).getTotalPoints());
+        assertEquals("Invalid cursor", exception.getMessage());
     }
 
     @Test
-    @DisplayName("Test getAllCustomerRewards fails when no customers found")
-    public void testGetAllCustomerRewards_NoCustomers() throws RewardServiceException {
-        when(customerRepository.findAll()).thenReturn(Arrays.asList());
+    @DisplayName("Test streamCustomerRewards writes the report from the transaction stream")
+    void testStreamCustomerRewards() throws Exception {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        customer.setName("xxx");
+
+        Transaction lastMonth = new Transaction();
+        lastMonth.setId(UUID.randomUUID());
+        lastMonth.setAmount(new BigDecimal("120"));
+        lastMonth.setTransactionDate(today.minusMonths(1));
 
-        List<CustomerRewardResponse> result = rewardService.getAllCustomerRewards(3);
+        Transaction thisMonth = new Transaction();
+        thisMonth.setId(UUID.randomUUID());
+        thisMonth.setAmount(new BigDecimal("70"));
+        thisMonth.setTransactionDate(today);
 
-        verify(customerRepository).findAll();
-        assertTrue(result.isEmpty());
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        List<RewardLedger> ledgers = List.of(ledger(customerId, thisMonth), ledger(customerId, lastMonth));
+        when(rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(eq(customerId), any(LocalDate.class)))
+                .thenReturn(ledgers);
+        when(transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(
+                eq(customerId), any(LocalDateTime.class)))
+                .thenReturn(Stream.of(summary(lastMonth), summary(thisMonth)));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        rewardService.streamCustomerRewards(customerId, 3).writeTo(body);
+
+        CustomerRewardResponse response = objectMapper.readValue(body.toByteArray(), CustomerRewardResponse.class);
+        assertEquals("xxx", response.getCustomer().getName());
+        assertEquals(90 + 20, response.getTotalPoints());
+        assertEquals(List.of(90, 20), response.getMonthly().stream().map(MonthlyReward::getPoints).toList());
+        assertEquals(2, response.getRewards().size());
+        assertEquals(lastMonth.getId(), response.getRewards().get(0).getTransactionId());
+        verify(transactionTemplate).execute(any());
+        verify(rewardMetrics).rewardQuery(2);
     }
 
     @Test
@@ -181,6 +486,65 @@ class RewardServiceTest {
         rewardService.handleTransaction(customerId, amount, transactionDate);
 
         verify(transactionRepository, times(1)).save(any(Transaction.class));
+        verify(rewardLedgerRepository).addToMonth(
+                customerId, transactionDate.toLocalDate().withDayOfMonth(1), 90, 1, amount);
+        verify(jdbcTemplate).execute(any(ConnectionCallback.class));
+    }
+
+    @Test
+    @DisplayName("Test handleTransaction adds to the month a concurrent write inserted first")
+    void testHandleTransaction_LedgerMonthInsertedConcurrently() {
+        UUID customerId = UUID.randomUUID();
+        BigDecimal amount = new BigDecimal("120");
+        LocalDateTime transactionDate = LocalDateTime.now();
+        LocalDate rewardMonth = transactionDate.toLocalDate().withDayOfMonth(1);
+
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        when(rewardLedgerRepository.addToMonth(customerId, rewardMonth, 90, 1, amount)).thenReturn(0, 1);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(false);
+
+        rewardService.handleTransaction(customerId, amount, transactionDate);
+
+        verify(rewardLedgerRepository, times(2)).addToMonth(customerId, rewardMonth, 90, 1, amount);
+    }
+
+    @Test
+    @DisplayName("Test handleTransaction adds to an existing ledger month")
+    void testHandleTransaction_ExistingLedgerMonth() {
+        UUID customerId = UUID.randomUUID();
+        BigDecimal amount = new BigDecimal("70");
+        LocalDateTime transactionDate = LocalDateTime.now();
+
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        when(rewardLedgerRepository.addToMonth(any(), any(), anyInt(), anyInt(), any())).thenReturn(1);
+
+        rewardService.handleTransaction(customerId, amount, transactionDate);
+
+        verify(rewardLedgerRepository).addToMonth(
+                customerId, transactionDate.toLocalDate().withDayOfMonth(1), 20, 1, amount);
+        verify(jdbcTemplate, never()).execute(any(ConnectionCallback.class));
+    }
+
+    @Test
+    @DisplayName("Test handleTransaction skips a key already written")
+    void testHandleTransaction_DuplicateKey() {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        when(idempotencyIndex.findExisting(customerId, List.of("order-1")))
+                .thenReturn(Map.of("order-1", UUID.randomUUID()));
+
+        assertFalse(rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now(), "order-1"));
+        assertTrue(rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now(), "order-2"));
+
+        verify(transactionRepository, times(1)).save(argThat(transaction -> "order-2".equals(transaction.getIdempotencyKey())));
+        verify(idempotencyIndex).add(customerId, "order-2");
+        verify(rewardMetrics).duplicateTransactions(1);
     }
 
     @Test
@@ -208,10 +572,398 @@ class RewardServiceTest {
         BulkSubTransaction subTransaction2 = new BulkSubTransaction(new BigDecimal("80"), LocalDateTime.now().minusDays(2).toLocalDate());
         List<BulkSubTransaction> transactions = Arrays.asList(subTransaction1, subTransaction2);
 
-        BulkTransactionRequest response = rewardService.handleBulkTransactions(customerId, transactions);
+        BulkTransactionResponse response = rewardService.handleBulkTransactions(customerId, transactions);
 
         assertNotNull(response);
-        assertEquals(2, response.getTransactions().size());
-        verify(transactionRepository, times(2)).save(any(Transaction.class));
+        assertEquals(2, response.getAcceptedCount());
+        assertEquals(2, response.getResults().size());
+        verify(transactionRepository, times(1)).saveAll(anyList());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    @DisplayName("Test handleBulkTransactions reports invalid rows and writes the rest in chunks")
+    void testHandleBulkTransactions_InvalidRows() {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        LocalDate date = LocalDate.now().minusDays(1);
+        List<BulkSubTransaction> transactions = Arrays.asList(
+                new BulkSubTransaction(new BigDecimal("120"), date),
+                new BulkSubTransaction(new BigDecimal("-5"), date),
+                new BulkSubTransaction(new BigDecimal("80"), null),
+                new BulkSubTransaction(new BigDecimal("60"), date),
+                new BulkSubTransaction(new BigDecimal("70"), date));
+
+        List<Integer> progress = new ArrayList<>();
+        BulkTransactionResponse response =
+                rewardService.handleBulkTransactions(customerId, transactions, progress::add);
+
+        assertEquals(3, response.getAcceptedCount());
+        assertEquals(2, response.getRejectedCount());
+        // progress is reported after every chunk and once all rows are handled
+        assertEquals(List.of(4, 5), progress);
+        assertEquals(BulkTransactionStatus.ACCEPTED, response.getResults().get(0).getStatus());
+        assertNotNull(response.getResults().get(0).getTransactionId());
+        assertEquals(BulkTransactionStatus.REJECTED, response.getResults().get(1).getStatus());
+        assertEquals("Transaction amount must be greater than zero", response.getResults().get(1).getMessage());
+        assertEquals(BulkTransactionStatus.REJECTED, response.getResults().get(2).getStatus());
+        assertEquals(4, response.getResults().get(4).getIndex());
+        // chunk size is 2, so the three valid rows take two chunks
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(transactionRepository, times(2)).saveAll(anyList());
+        verify(entityManager, times(2)).clear();
+        verify(rewardMetrics).bulkBatch(5);
+        verify(rewardMetrics).bulkRowsRejected(2);
+        // 90 + 10 points in the first chunk, 20 in the second
+        verify(rewardMetrics).transactionsIngested(2, 100);
+        verify(rewardMetrics).transactionsIngested(1, 20);
+    }
+
+    @Test
+    @DisplayName("Test handleBulkTransactions retries a failed chunk row by row")
+    void testHandleBulkTransactions_ChunkFailure() {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        BigDecimal failingAmount = new BigDecimal("80");
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Transaction> chunk = invocation.getArgument(0);
+            if (chunk.stream().anyMatch(transaction -> transaction.getAmount().equals(failingAmount))) {
+                throw new IllegalStateException("constraint violation");
+            }
+            return chunk;
+        });
+
+        List<BulkSubTransaction> transactions = Arrays.asList(
+                new BulkSubTransaction(new BigDecimal("120"), LocalDate.now()),
+                new BulkSubTransaction(failingAmount, LocalDate.now()));
+
+        BulkTransactionResponse response = rewardService.handleBulkTransactions(customerId, transactions);
+
+        assertEquals(1, response.getAcceptedCount());
+        assertEquals(1, response.getRejectedCount());
+        assertEquals(BulkTransactionStatus.ACCEPTED, response.getResults().get(0).getStatus());
+        assertEquals("constraint violation", response.getResults().get(1).getMessage());
+        verify(transactionTemplate, times(3)).execute(any());
+        verify(rewardMetrics).transactionsIngested(1, 90);
+        verify(rewardMetrics).bulkRowsRejected(1);
+    }
+
+    @Test
+    @DisplayName("Test handleBulkTransactions reports repeated idempotency keys as duplicates")
+    void testHandleBulkTransactions_DuplicateKeys() {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        UUID written = UUID.randomUUID();
+        when(idempotencyIndex.findExisting(eq(customerId), any())).thenReturn(Map.of("order-1", written));
+
+        LocalDate date = LocalDate.now();
+        List<BulkSubTransaction> transactions = Arrays.asList(
+                new BulkSubTransaction(new BigDecimal("120"), date, "order-1"),
+                new BulkSubTransaction(new BigDecimal("80"), date, "order-2"),
+                new BulkSubTransaction(new BigDecimal("80"), date, "order-2"),
+                new BulkSubTransaction(new BigDecimal("60"), date, " "));
+
+        ReflectionTestUtils.setField(rewardService, "bulkChunkSize", 10);
+        BulkTransactionResponse response = rewardService.handleBulkTransactions(customerId, transactions);
+
+        assertEquals(1, response.getAcceptedCount());
+        assertEquals(2, response.getDuplicateCount());
+        assertEquals(1, response.getRejectedCount());
+        assertEquals(BulkTransactionStatus.DUPLICATE, response.getResults().get(0).getStatus());
+        assertEquals(written, response.getResults().get(0).getTransactionId());
+        assertEquals(BulkTransactionStatus.ACCEPTED, response.getResults().get(1).getStatus());
+        assertEquals(BulkTransactionStatus.DUPLICATE, response.getResults().get(2).getStatus());
+        assertEquals(response.getResults().get(1).getTransactionId(), response.getResults().get(2).getTransactionId());
+        assertEquals(BulkTransactionStatus.REJECTED, response.getResults().get(3).getStatus());
+        verify(transactionRepository, times(1)).saveAll(anyList());
+        verify(idempotencyIndex).add(customerId, "order-2");
+        verify(rewardMetrics).duplicateTransactions(2);
+    }
+
+    @Test
+    @DisplayName("Test handleBufferedTransactions writes several customers in one transaction")
+    void testHandleBufferedTransactions() {
+        UUID customerId1 = UUID.randomUUID();
+        UUID customerId2 = UUID.randomUUID();
+        UUID written = UUID.randomUUID();
+        when(idempotencyIndex.findExisting(eq(customerId2), any())).thenReturn(Map.of("order-9", written));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<BulkSubTransactionResult> results = rewardService.handleBufferedTransactions(List.of(
+                pending(customerId1, "120", now, "order-1"),
+                pending(customerId2, "80", now, "order-1"),
+                pending(customerId1, "60", now, "order-1"),
+                pending(customerId2, "70", now, "order-9"),
+                pending(customerId2, "90", now, null)));
+
+        assertEquals(
+                List.of(BulkTransactionStatus.ACCEPTED, BulkTransactionStatus.ACCEPTED, BulkTransactionStatus.DUPLICATE,
+                        BulkTransactionStatus.DUPLICATE, BulkTransactionStatus.ACCEPTED),
+                results.stream().map(BulkSubTransactionResult::getStatus).toList());
+        assertEquals(results.get(0).getTransactionId(), results.get(2).getTransactionId());
+        assertEquals(written, results.get(3).getTransactionId());
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(transactionRepository).saveAll(argThat(rows -> ((List<?>) rows).size() == 3));
+        verify(rewardMetrics).duplicateTransactions(2);
+    }
+
+    @Test
+    @DisplayName("Test handleBulkTransactions writes the ledger once per month")
+    void testHandleBulkTransactions_LedgerPerMonth() {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+
+        LocalDate month = LocalDate.of(2024, 5, 1);
+        List<BulkSubTransaction> transactions = Arrays.asList(
+                new BulkSubTransaction(new BigDecimal("120"), month.withDayOfMonth(3)),
+                new BulkSubTransaction(new BigDecimal("80"), month.withDayOfMonth(20)),
+                new BulkSubTransaction(new BigDecimal("60"), month.plusMonths(1)));
+
+        ReflectionTestUtils.setField(rewardService, "bulkChunkSize", 10);
+        rewardService.handleBulkTransactions(customerId, transactions);
+
+        verify(rewardLedgerRepository).addToMonth(customerId, month, 90 + 30, 2, new BigDecimal("200"));
+        verify(rewardLedgerRepository).addToMonth(customerId, month.plusMonths(1), 10, 1, new BigDecimal("60"));
+        verify(rewardLedgerRepository, times(2)).addToMonth(any(), any(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Test handleTransactionStream resolves each customer once and reports rejected lines")
+    void testHandleTransactionStream() throws IOException {
+        Customer customer = new Customer();
+        customer.setId(UUID.randomUUID());
+        UUID unknownCustomerId = UUID.randomUUID();
+        when(customerRepository.findAllById(anyList())).thenReturn(List.of(customer));
+        when(customerRepository.getReferenceById(customer.getId())).thenReturn(customer);
+
+        String date = LocalDate.now().toString();
+        String body = String.join("\n",
+                "{\"customerId\":\"" + customer.getId() + "\",\"amount\":120,\"transactionDate\":\"" + date + "\"}",
+                "",
+                "not json",
+                "{\"customerId\":\"" + unknownCustomerId + "\",\"amount\":80,\"transactionDate\":\"" + date + "\"}",
+                "{\"customerId\":\"" + customer.getId() + "\",\"amount\":-1,\"transactionDate\":\"" + date + "\"}",
+                "{\"customerId\":\"" + customer.getId() + "\",\"amount\":70,\"transactionDate\":\"" + date + "\"}");
+
+        TransactionStreamResponse response =
+                rewardService.handleTransactionStream(new BufferedReader(new StringReader(body)));
+
+        assertEquals(6, response.getLinesRead());
+        assertEquals(2, response.getAcceptedCount());
+        assertEquals(3, response.getRejectedCount());
+        assertEquals(List.of(3L, 4L, 5L),
+                response.getRejections().stream().map(rejection -> rejection.getLine()).toList());
+        assertEquals("Customer not found", response.getRejections().get(1).getMessage());
+        // both chunks share the resolved customers, so only the first one queries them
+        verify(customerRepository, times(1)).findAllById(anyList());
+        verify(transactionRepository, times(2)).saveAll(anyList());
+    }
+
+    private void setToday(LocalDateTime dateTime) {
+        when(clock.getZone()).thenReturn(ZoneId.systemDefault());
+        when(clock.instant()).thenReturn(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private TransactionSummary summary(Transaction transaction) {
+        return new TransactionSummary(transaction.getId(), transaction.getAmount(), transaction.getTransactionDate());
+    }
+
+    private static TransactionWriteBuffer.Pending pending(
+            UUID customerId, String amount, LocalDateTime transactionDate, String idempotencyKey) {
+        return new TransactionWriteBuffer.Pending(
+                customerId, new BigDecimal(amount), transactionDate, idempotencyKey, new CompletableFuture<>());
+    }
+
+    private RewardLedger ledger(UUID customerId, Transaction transaction) {
+        RewardLedger ledger = new RewardLedger();
+        ledger.setCustomerId(customerId);
+        ledger.setRewardMonth(transaction.getTransactionDate().toLocalDate().withDayOfMonth(1));
+        ledger.setPoints(rewardService.calculatePoints(transaction.getAmount()));
+        ledger.setTransactionCount(1);
+        ledger.setTotalAmount(transaction.getAmount());
+        return ledger;
+    }
+
+    /** Runs against the real H2 schema and counts the statements Hibernate prepares */
+    @Nested
+    @SpringBootTest(
+            classes = RewardsystemApplication.class,
+            properties = {
+                // a database of its own, other test contexts stay cached with theirs
+                "spring.datasource.url=jdbc:h2:mem:querycount",
+                "spring.jpa.properties.hibernate.generate_statistics=true"
+            })
+    class QueryCount {
+
+        @Autowired
+        private RewardService rewardService;
+
+        @Autowired
+        private CustomerRepository customerRepository;
+
+        @Autowired
+        private EntityManagerFactory entityManagerFactory;
+
+        @Autowired
+        private CustomerRegistry customerRegistry;
+
+        @Autowired
+        private RewardLedgerRepository rewardLedgerRepository;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        @Autowired
+        private TransactionRepository transactionRepository;
+
+        @Test
+        @DisplayName("Test getCustomerRewards runs a fixed number of statements whatever the number of transactions")
+        void testGetCustomerRewards_BoundedStatements() throws RewardServiceException {
+            Customer customer = new Customer();
+            customer.setName("xxx");
+            customer.setEmail("xxx@example.com");
+            customer.setPhoneNumber("1234567890");
+            UUID customerId = customerRepository.save(customer).getId();
+
+            List<BulkSubTransaction> transactions = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                transactions.add(new BulkSubTransaction(new BigDecimal(60 + i), LocalDate.now().minusDays(i)));
+            }
+            rewardService.handleBulkTransactions(customerId, transactions);
+
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            CustomerRewardResponse withDetails = rewardService.getCustomerRewards(customerId, 3, true);
+
+            assertEquals(50, withDetails.getRewards().size());
+            assertEquals(2, statistics.getPrepareStatementCount());
+            // transactions come as projections, the customer was registered by the bulk write
+            assertEquals(0, statistics.getEntityStatistics(Transaction.class.getName()).getLoadCount());
+            assertEquals(0, statistics.getEntityStatistics(Customer.class.getName()).getLoadCount());
+
+            statistics.clear();
+            CustomerRewardResponse summary = rewardService.getCustomerRewards(customerId, 3, false);
+
+            assertEquals(withDetails.getTotalPoints(), summary.getTotalPoints());
+            // the windows read for the details answer every other window of the month
+            assertEquals(0, statistics.getPrepareStatementCount());
+            int lastTwoMonths = withDetails.getMonthly().stream()
+                    .filter(month -> !month.getMonth().isBefore(YearMonth.now().minusMonths(1)))
+                    .mapToInt(MonthlyReward::getPoints).sum();
+            assertEquals(lastTwoMonths, rewardService.getCustomerRewards(customerId, 2, false).getTotalPoints());
+            assertEquals(0, statistics.getPrepareStatementCount());
+
+            statistics.clear();
+            CustomerRewardsBatchResponse batch = rewardService.getCustomersRewards(
+                    List.of(customerId, UUID.randomUUID()), 3);
+
+            assertEquals(withDetails.getTotalPoints(), batch.getCustomers().get(0).getTotalPoints());
+            // known customers come from the registry, one grouped query whatever their number;
+            // the unknown id is looked up once
+            assertEquals(2, statistics.getPrepareStatementCount());
+        }
+
+        @Test
+        @DisplayName("Test the customer registry sees customer updates once they commit")
+        void testCustomerRegistry_InvalidatedOnUpdate() {
+            Customer customer = new Customer();
+            customer.setName("xxx");
+            customer.setEmail("xxx@example.com");
+            customer.setPhoneNumber("1234567890");
+            customer = customerRepository.save(customer);
+            assertEquals("xxx", customerRegistry.find(customer.getId()).orElseThrow().name());
+
+            customer.setName("yyy");
+            customerRepository.save(customer);
+
+            assertEquals("yyy", customerRegistry.find(customer.getId()).orElseThrow().name());
+            customerRepository.delete(customer);
+            assertFalse(customerRegistry.exists(customer.getId()));
+        }
+
+        @Test
+        @DisplayName("Test two first writes of a customer's month racing each other both reach the ledger")
+        void testHandleTransaction_ConcurrentFirstWritesOfMonth() throws Exception {
+            Customer customer = new Customer();
+            customer.setName("xxx");
+            customer.setEmail("xxx@example.com");
+            customer.setPhoneNumber("1234567890");
+            UUID customerId = customerRepository.save(customer).getId();
+            LocalDateTime transactionDate = LocalDateTime.now();
+
+            CountDownLatch inserted = new CountDownLatch(1);
+            CountDownLatch commit = new CountDownLatch(1);
+            Thread first = Thread.ofPlatform().start(() -> transactionTemplate.executeWithoutResult(status -> {
+                rewardService.handleTransaction(customerId, new BigDecimal("120"), transactionDate);
+                inserted.countDown();
+                try {
+                    commit.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(inserted.await(10, TimeUnit.SECONDS));
+
+            // the second write finds no row to add to and waits on the first one's uncommitted insert
+            CompletableFuture<Void> second = CompletableFuture.runAsync(() ->
+                    rewardService.handleTransaction(customerId, new BigDecimal("120"), transactionDate));
+            Thread.sleep(200);
+            commit.countDown();
+            first.join();
+
+            second.get(10, TimeUnit.SECONDS);
+            List<RewardLedger> ledger = rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(
+                    customerId, transactionDate.toLocalDate().minusMonths(1));
+            assertEquals(1, ledger.size());
+            assertEquals(180, ledger.get(0).getPoints());
+            assertEquals(2, ledger.get(0).getTransactionCount());
+        }
+
+        @Test
+        @DisplayName("Test a write losing the insert race on its idempotency key reports a duplicate")
+        void testHandleTransaction_ConcurrentIdempotencyKey() throws Exception {
+            Customer customer = new Customer();
+            customer.setName("xxx");
+            customer.setEmail("xxx@example.com");
+            customer.setPhoneNumber("1234567890");
+            UUID customerId = customerRepository.save(customer).getId();
+
+            CountDownLatch inserted = new CountDownLatch(1);
+            CountDownLatch commit = new CountDownLatch(1);
+            Thread first = Thread.ofPlatform().start(() -> transactionTemplate.executeWithoutResult(status -> {
+                rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now(), "order-1");
+                // the insert reaches the database, the commit waits
+                transactionRepository.flush();
+                inserted.countDown();
+                try {
+                    commit.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(inserted.await(10, TimeUnit.SECONDS));
+
+            // the second write cannot see the first one's key and waits on its uncommitted insert
+            CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() ->
+                    rewardService.handleTransaction(customerId, new BigDecimal("120"), LocalDateTime.now(), "order-1"));
+            Thread.sleep(200);
+            commit.countDown();
+            first.join();
+
+            assertFalse(second.get(10, TimeUnit.SECONDS));
+            List<RewardLedger> ledger = rewardLedgerRepository.findByCustomerIdAndRewardMonthAfter(
+                    customerId, LocalDate.now().minusMonths(1));
+            assertEquals(90, ledger.get(0).getPoints());
+            assertEquals(1, ledger.get(0).getTransactionCount());
+        }
     }
 }
@@ -0,0 +1,169 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.RewardsystemApplication;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransaction;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerPointsSummary;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.CustomerRewardsBatchResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.LeaderboardEntry;
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.TransactionStreamResponse;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardLeaderboard;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs ingest and reads against three embedded H2 shards */
+@SpringBootTest(
+        classes = RewardsystemApplication.class,
+        properties = {
+            "reward.sharding.enabled=true",
+            "reward.sharding.urls=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1,"
+                    + "jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1,"
+                    + "jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1"
+        })
+class ShardedRewardServiceTest {
+
+    private static final int SHARDS = 3;
+
+    @Autowired
+    private RewardService rewardService;
+
+    @Autowired
+    private RewardLeaderboard rewardLeaderboard;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("Test every write lands on the customer's shard and reads gather every shard")
+    void testIngestAndReadAcrossShards() throws RewardServiceException, IOException {
+        List<UUID> customerIds = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            customerIds.add(newCustomer(shard));
+            customerIds.add(newCustomer(shard));
+        }
+        Map<UUID, Integer> expectedPoints = new HashMap<>();
+        StringBuilder upload = new StringBuilder();
+        for (UUID customerId : customerIds) {
+            assertTrue(rewardService.handleTransaction(
+                    customerId, new BigDecimal("120"), LocalDateTime.now(), "order-1"));
+            upload.append("{\"customerId\":\"").append(customerId)
+                    .append("\",\"amount\":120,\"transactionDate\":\"").append(LocalDate.now()).append("\"}\n");
+            expectedPoints.put(customerId, 90 + 90);
+        }
+        UUID bulkCustomerId = customerIds.get(1);
+        rewardService.handleBulkTransactions(bulkCustomerId, List.of(
+                new BulkSubTransaction(new BigDecimal("70"), LocalDate.now()),
+                new BulkSubTransaction(new BigDecimal("120"), LocalDate.now(), "order-1")));
+        expectedPoints.merge(bulkCustomerId, 20, Integer::sum);
+
+        // one chunk holding customers of every shard
+        TransactionStreamResponse streamed =
+                rewardService.handleTransactionStream(new BufferedReader(new StringReader(upload.toString())));
+        assertEquals(customerIds.size(), streamed.getAcceptedCount());
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int home = shard;
+            List<UUID> written = shardRouter.onShard(shard,
+                    () -> jdbcTemplate.queryForList("select customer_id from transaction", UUID.class));
+            assertFalse(written.isEmpty());
+            assertTrue(written.stream().allMatch(customerId -> shardRouter.shardOf(customerId) == home));
+            List<UUID> ledger = shardRouter.onShard(shard,
+                    () -> jdbcTemplate.queryForList("select customer_id from reward_ledger", UUID.class));
+            assertTrue(ledger.stream().allMatch(customerId -> shardRouter.shardOf(customerId) == home));
+        }
+
+        for (UUID customerId : customerIds) {
+            assertEquals(expectedPoints.get(customerId),
+                    rewardService.getCustomerRewards(customerId, 3).getTotalPoints());
+        }
+        CustomerRewardsBatchResponse batch = rewardService.getCustomersRewards(customerIds, 3);
+        assertTrue(batch.getUnknownCustomerIds().isEmpty());
+        for (CustomerPointsSummary summary : batch.getCustomers()) {
+            assertEquals((long) expectedPoints.get(summary.getCustomerId()), summary.getTotalPoints());
+        }
+
+        // the leaderboard reloads the ledger of every shard
+        rewardLeaderboard.reload();
+        List<UUID> ranked = rewardService.getTopCustomers(100, 1).getEntries().stream()
+                .map(LeaderboardEntry::getCustomerId)
+                .toList();
+        assertTrue(ranked.containsAll(customerIds));
+        assertEquals(bulkCustomerId, ranked.get(0));
+    }
+
+    @Test
+    @DisplayName("Test a customer is only found on its own shard")
+    void testCustomerOnOtherShard() {
+        UUID customerId = UUID.randomUUID();
+        int otherShard = (shardRouter.shardOf(customerId) + 1) % SHARDS;
+        shardRouter.onShard(otherShard, () -> jdbcTemplate.update(
+                "insert into customer (id, name, email, phone_number) values (?, ?, ?, ?)",
+                customerId, "Misplaced", "misplaced@example.com", "5550000000"));
+
+        assertThrows(RewardServiceException.class, () -> rewardService.getCustomerRewards(customerId, 3));
+    }
+
+    @Test
+    @DisplayName("Test every sample customer is seeded on its own shard only")
+    void testSampleCustomersOnOwnShard() {
+        List<UUID> sampleIds = List.of(
+                UUID.fromString("9d1b96e2-14b1-46a4-847e-df4677a05100"),
+                UUID.fromString("fd52c58f-74d4-4cfa-8e2d-6c8bafedf2b2"));
+        for (UUID customerId : sampleIds) {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                Integer found = shardRouter.onShard(shard, () -> jdbcTemplate.queryForObject(
+                        "select count(*) from customer where id = ?", Integer.class, customerId));
+                assertEquals(shard == shardRouter.shardOf(customerId) ? 1 : 0, found);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test switching shard inside a database transaction is refused")
+    void testSwitchInsideTransaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            assertEquals(1, shardRouter.onShard(0, () -> 1));
+            assertThrows(IllegalStateException.class, () -> shardRouter.onShard(1, () -> 1));
+        });
+    }
+
+    /** Inserts a customer on the given shard, with an id that hashes there */
+    private UUID newCustomer(int shard) {
+        UUID customerId;
+        do {
+            customerId = UUID.randomUUID();
+        } while (shardRouter.shardOf(customerId) != shard);
+        UUID id = customerId;
+        shardRouter.onShard(shard, () -> jdbcTemplate.update(
+                "insert into customer (id, name, email, phone_number) values (?, ?, ?, ?)",
+                id, "Shard " + shard, "shard" + shard + "@example.com", "5550000000"));
+        return customerId;
+    }
+}
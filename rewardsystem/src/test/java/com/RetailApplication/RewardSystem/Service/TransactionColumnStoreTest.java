@@ -0,0 +1,145 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionRepository;
+import com.poc.retailapp.rewardsystem.rewardsystem.repository.TransactionSummary;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.PointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TieredPointsCalculator;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionColumnStore;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TransactionColumnStoreTest {
+
+    @InjectMocks
+    private TransactionColumnStore transactionColumnStore =
+            new TransactionColumnStore(1000, 12, new SimpleMeterRegistry());
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private PointsCalculator pointsCalculator = new TieredPointsCalculator("50:1,100:2");
+
+    @Spy
+    private Clock clock = Clock.systemDefaultZone();
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(false, new String[0]);
+
+    private final UUID customerId = UUID.randomUUID();
+
+    // timestamps are held to the microsecond, like the database column
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    @DisplayName("Test a customer is loaded once and windows are listed in time order")
+    void testLoadAndRead() {
+        TransactionSummary old = new TransactionSummary(UUID.randomUUID(), new BigDecimal("120"), now.minusMonths(4));
+        TransactionSummary recent = new TransactionSummary(UUID.randomUUID(), new BigDecimal("80"), now.minusDays(3));
+        when(transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(eq(customerId), any()))
+                .thenAnswer(invocation -> Stream.of(old, recent));
+
+        List<UUID> visited = new ArrayList<>();
+        assertEquals(2, transactionColumnStore.forEach(customerId, now.minusMonths(6),
+                (transactionId, amountCents, points, transactionDate) -> visited.add(transactionId)));
+        assertEquals(List.of(old.id(), recent.id()), visited);
+        visited.clear();
+        int window = transactionColumnStore.forEach(customerId, now.minusMonths(1),
+                (transactionId, amountCents, points, transactionDate) -> {
+                    visited.add(transactionId);
+                    assertEquals(8000, amountCents);
+                    assertEquals(30, points);
+                    assertEquals(recent.transactionDate(), transactionDate);
+                });
+
+        assertEquals(List.of(recent.id()), visited);
+        assertEquals(1, window);
+        verify(transactionRepository, times(1)).streamSummariesByCustomerIdAndTransactionDateAfter(any(), any());
+    }
+
+    @Test
+    @DisplayName("Test written transactions are added to loaded customers only, once each")
+    void testAdd() {
+        UUID loadedId = UUID.randomUUID();
+        TransactionSummary loaded = new TransactionSummary(loadedId, new BigDecimal("120"), now.minusDays(2));
+        when(transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(eq(customerId), any()))
+                .thenAnswer(invocation -> Stream.of(loaded));
+        transactionColumnStore.forEach(customerId, now.minusMonths(1), ignored());
+
+        UUID otherCustomerId = UUID.randomUUID();
+        transactionColumnStore.addAfterCommit(List.of(
+                // already loaded, e.g. committed while the customer was loading
+                new TransactionColumnStore.Row(loadedId, customerId, loaded.transactionDate(), 12000, 90),
+                new TransactionColumnStore.Row(UUID.randomUUID(), customerId, now.minusDays(5), 6000, 10),
+                new TransactionColumnStore.Row(UUID.randomUUID(), customerId, now.minusYears(3), 6000, 10),
+                new TransactionColumnStore.Row(UUID.randomUUID(), otherCustomerId, now, 6000, 10)));
+
+        List<Long> cents = new ArrayList<>();
+        List<Integer> points = new ArrayList<>();
+        assertEquals(2, transactionColumnStore.forEach(customerId, now.minusMonths(1),
+                (transactionId, amountCents, transactionPoints, transactionDate) -> {
+                    cents.add(amountCents);
+                    points.add(transactionPoints);
+                }));
+        assertEquals(List.of(6000L, 12000L), cents);
+        assertEquals(List.of(10, 90), points);
+
+        when(transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(eq(otherCustomerId), any()))
+                .thenAnswer(invocation -> Stream.empty());
+        assertEquals(0, transactionColumnStore.forEach(otherCustomerId, now.minusMonths(1), ignored()));
+    }
+
+    @Test
+    @DisplayName("Test clear drops loaded customers")
+    void testClear() {
+        when(transactionRepository.streamSummariesByCustomerIdAndTransactionDateAfter(eq(customerId), any()))
+                .thenAnswer(invocation -> Stream.empty());
+        transactionColumnStore.forEach(customerId, now.minusMonths(1), ignored());
+        transactionColumnStore.clear();
+        transactionColumnStore.forEach(customerId, now.minusMonths(1), ignored());
+
+        verify(transactionRepository, times(2)).streamSummariesByCustomerIdAndTransactionDateAfter(any(), any());
+    }
+
+    private static TransactionColumnStore.Visitor ignored() {
+        return (transactionId, amountCents, points, transactionDate) -> {};
+    }
+}
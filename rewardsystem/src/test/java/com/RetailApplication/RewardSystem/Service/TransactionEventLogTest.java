@@ -0,0 +1,150 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionEvent;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionEventLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionEventLogTest {
+
+    @TempDir
+    private Path directory;
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @Test
+    @DisplayName("Test events are read back in order across segments")
+    void testAppendAndRead_AcrossSegments() throws IOException {
+        TransactionEventLog eventLog = new TransactionEventLog(directory, 3, false);
+        List<TransactionEvent> events = events(7);
+
+        assertEquals(2, eventLog.append(events.subList(0, 2)));
+        assertEquals(7, eventLog.append(events.subList(2, 7)));
+
+        assertEquals(3, eventLog.segmentCount());
+        assertEquals(events, eventLog.read(0, 100));
+        assertEquals(events.subList(2, 6), eventLog.read(2, 4));
+        assertTrue(eventLog.read(7, 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test a reopened log resumes appending after its last event")
+    void testReopen_ResumesAtEnd() throws IOException {
+        List<TransactionEvent> events = events(5);
+        new TransactionEventLog(directory, 4, false).append(events.subList(0, 3));
+
+        TransactionEventLog reopened = new TransactionEventLog(directory, 4, false);
+        assertEquals(3, reopened.endOffset());
+        reopened.append(events.subList(3, 5));
+
+        assertEquals(2, reopened.segmentCount());
+        assertEquals(events, new TransactionEventLog(directory, 4, false).read(0, 10));
+    }
+
+    @Test
+    @DisplayName("Test a torn record at the end of the log is dropped on reopen")
+    void testReopen_TornRecordDropped() throws IOException {
+        new TransactionEventLog(directory, 10, false).append(events(3));
+
+        try (FileChannel segment =
+                FileChannel.open(directory.resolve("00000000000000000000.log"), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 2L * TransactionEventLog.RECORD_SIZE + 40);
+        }
+
+        TransactionEventLog reopened = new TransactionEventLog(directory, 10, false);
+        assertEquals(2, reopened.endOffset());
+        assertEquals(2, reopened.read(0, 10).size());
+    }
+
+    @Test
+    @DisplayName("Test awaitEvents returns once an event is appended")
+    void testAwaitEvents() throws Exception {
+        TransactionEventLog eventLog = new TransactionEventLog(directory, 10, false);
+        assertFalse(eventLog.awaitEvents(0, Duration.ofMillis(10)));
+
+        Thread.ofVirtual().start(() -> eventLog.append(events(1)));
+
+        assertTrue(eventLog.awaitEvents(0, Duration.ofSeconds(5)));
+    }
+
+    @Test
+    @DisplayName("Test events appended before a commit are unsettled until the transaction completes")
+    void testAppendBeforeCommit() throws Exception {
+        TransactionEventLog eventLog = new TransactionEventLog(directory, 10, false);
+        eventLog.append(events(1));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            eventLog.appendBeforeCommit(events(2));
+            assertEquals(1, eventLog.endOffset());
+
+            List<TransactionSynchronization> synchronizations =
+                    TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+            assertEquals(3, eventLog.endOffset());
+            assertEquals(1, eventLog.settledOffset());
+            assertFalse(eventLog.awaitEvents(1, Duration.ofMillis(10)));
+
+            synchronizations.forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            assertEquals(3, eventLog.settledOffset());
+            assertTrue(eventLog.awaitEvents(1, Duration.ofMillis(10)));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Test events of a rolled back transaction are recorded as such and stay so on reopen")
+    void testAppendBeforeCommit_RolledBack() throws Exception {
+        TransactionEventLog eventLog = new TransactionEventLog(directory, 10, false);
+        eventLog.append(events(1));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            eventLog.appendBeforeCommit(events(2));
+            List<TransactionSynchronization> synchronizations =
+                    TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+            synchronizations.forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        eventLog.append(events(1));
+
+        assertEquals(4, eventLog.settledOffset());
+        assertFalse(eventLog.isRolledBack(0));
+        assertTrue(eventLog.isRolledBack(1));
+        assertTrue(eventLog.isRolledBack(2));
+        assertFalse(eventLog.isRolledBack(3));
+
+        TransactionEventLog reopened = new TransactionEventLog(directory, 10, false);
+        assertTrue(reopened.isRolledBack(2));
+        assertFalse(reopened.isRolledBack(3));
+    }
+
+    private List<TransactionEvent> events(int count) {
+        List<TransactionEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new TransactionEvent(
+                    UUID.randomUUID(), customerId, 5000L + i * 1234, LocalDateTime.of(2024, 3, 1 + i, 10, 0, 0, i)));
+        }
+        return events;
+    }
+}
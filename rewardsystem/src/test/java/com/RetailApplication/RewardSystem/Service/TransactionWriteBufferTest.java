@@ -0,0 +1,157 @@
+package com.RetailApplication.RewardSystem.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.poc.retailapp.rewardsystem.rewardsystem.dto.BulkSubTransactionResult;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.RewardServiceException;
+import com.poc.retailapp.rewardsystem.rewardsystem.exception.TooManyRequestsException;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.CustomerRegistry;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.RewardService;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.TransactionWriteBuffer;
+import com.poc.retailapp.rewardsystem.rewardsystem.service.ShardRouter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TransactionWriteBufferTest {
+
+    @InjectMocks
+    private TransactionWriteBuffer transactionWriteBuffer =
+            new TransactionWriteBuffer(4, 3, Duration.ofMillis(200), "commit", new SimpleMeterRegistry());
+
+    @Mock
+    private RewardService rewardService;
+
+    @Mock
+    private CustomerRegistry customerRegistry;
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(false, new String[0]);
+
+    private final UUID customerId = UUID.randomUUID();
+
+    private final List<Integer> groupSizes = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(customerRegistry.exists(customerId)).thenReturn(true);
+        // the second row of every group repeats an idempotency key
+        when(rewardService.handleBufferedTransactions(any())).thenAnswer(invocation -> {
+            List<TransactionWriteBuffer.Pending> group = invocation.getArgument(0);
+            groupSizes.add(group.size());
+            List<BulkSubTransactionResult> results = new ArrayList<>();
+            for (int i = 0; i < group.size(); i++) {
+                BulkSubTransactionResult result = new BulkSubTransactionResult(i);
+                if (i == 1) {
+                    result.duplicate(UUID.randomUUID());
+                } else {
+                    result.accept(UUID.randomUUID());
+                }
+                results.add(result);
+            }
+            return results;
+        });
+        transactionWriteBuffer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        transactionWriteBuffer.stop();
+    }
+
+    @Test
+    @DisplayName("Test a full group is written in one commit and each request gets its outcome")
+    void testGroupCommit() throws Exception {
+        CompletableFuture<Boolean> first = submit("120");
+        CompletableFuture<Boolean> second = submit("80");
+        CompletableFuture<Boolean> third = submit("60");
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.get(5, TimeUnit.SECONDS));
+        assertTrue(third.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(3), groupSizes);
+    }
+
+    @Test
+    @DisplayName("Test requests are refused with TooManyRequestsException once the buffer is full")
+    void testFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        reset(rewardService);
+        when(rewardService.handleBufferedTransactions(any())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            List<TransactionWriteBuffer.Pending> group = invocation.getArgument(0);
+            List<BulkSubTransactionResult> results = new ArrayList<>();
+            for (int i = 0; i < group.size(); i++) {
+                BulkSubTransactionResult result = new BulkSubTransactionResult(i);
+                result.accept(UUID.randomUUID());
+                results.add(result);
+            }
+            return results;
+        });
+
+        CompletableFuture<Boolean> writingNow = submit("120");
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Boolean>> queued = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            queued.add(submit("80"));
+        }
+        assertThrows(TooManyRequestsException.class, () -> submit("80"));
+
+        release.countDown();
+        assertTrue(writingNow.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Boolean> written : queued) {
+            assertTrue(written.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("Test a request queued as the buffer stops is still written")
+    void testSubmitRacingStop() throws Exception {
+        transactionWriteBuffer.stop();
+        // a request that saw the buffer running just before the writer thread exited
+        ReflectionTestUtils.setField(transactionWriteBuffer, "running", true);
+
+        CompletableFuture<Boolean> late = submit("120");
+
+        assertTrue(late.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1), groupSizes);
+        ReflectionTestUtils.setField(transactionWriteBuffer, "running", false);
+    }
+
+    @Test
+    @DisplayName("Test an unknown customer is refused before it is queued")
+    void testUnknownCustomer() {
+        assertThrows(RewardServiceException.class,
+                () -> transactionWriteBuffer.submit(UUID.randomUUID(), new BigDecimal("120"), LocalDateTime.now(), null));
+        verifyNoInteractions(rewardService);
+    }
+
+    private CompletableFuture<Boolean> submit(String amount) throws RewardServiceException {
+        return transactionWriteBuffer.submit(customerId, new BigDecimal(amount), LocalDateTime.now(), "order-1");
+    }
+}